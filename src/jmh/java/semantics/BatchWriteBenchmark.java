@@ -0,0 +1,120 @@
+package semantics;
+
+import org.neo4j.graphdb.GraphDatabaseService;
+import org.neo4j.graphdb.Transaction;
+import org.neo4j.kernel.internal.GraphDatabaseAPI;
+import org.neo4j.logging.NullLog;
+import org.neo4j.test.TestGraphDatabaseFactory;
+import org.openjdk.jmh.annotations.*;
+import org.openrdf.model.IRI;
+import org.openrdf.model.ValueFactory;
+import org.openrdf.model.impl.SimpleValueFactory;
+import org.openrdf.model.vocabulary.RDF;
+import org.openrdf.rio.RDFHandlerException;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The writer side of an import: one batch committed into an impermanent database, the transaction included.
+ * Every batch names new resources as well as resources written by earlier batches, so both node creation and
+ * the index lookups of existing nodes are measured, the node cache size deciding how many of those it saves.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(1)
+public class BatchWriteBenchmark {
+
+    private static final ValueFactory VF = SimpleValueFactory.getInstance();
+
+    @Param({"1000", "10000"})
+    public int batchSize;
+
+    @Param({"0", "100000"})
+    public int nodeCacheSize;
+
+    private GraphDatabaseService db;
+    private BenchmarkStatements data;
+    private GraphBatchCommitter committer;
+    private DirectStatementLoader loader;
+    private final CapturingSink captured = new CapturingSink();
+    private final Random random = new Random(42);
+    private long nextResource = 0;
+
+    @Setup(Level.Trial)
+    public void startDatabase() {
+        db = new TestGraphDatabaseFactory().newImpermanentDatabase();
+        db.execute("CREATE INDEX ON :Resource(uri)").close();
+        try (Transaction tx = db.beginTx()) {
+            db.schema().awaitIndexesOnline(1, TimeUnit.MINUTES);
+            tx.success();
+        }
+        data = new BenchmarkStatements(0, 0);
+        ImportSymbols symbols = new ImportSymbols(new NamespacePrefixes(), true);
+        UriNodeCache nodeCache = new UriNodeCache(nodeCacheSize);
+        committer = new GraphBatchCommitter((GraphDatabaseAPI) db, 0, 0, nodeCache, CommitPolicy.fixed(batchSize),
+                symbols, new ImportMetrics(0, null, nodeCache), null, NullLog.getInstance());
+        // the loader never flushes on its own, each invocation maps exactly one batch
+        loader = new DirectStatementLoader(db, CommitPolicy.fixed(Long.MAX_VALUE), symbols, true, captured,
+                NullLog.getInstance());
+    }
+
+    /**
+     * Maps the next batch outside of the measurement. Half of its resources are new, the others were written
+     * by the previous batch.
+     */
+    @Setup(Level.Invocation)
+    public void nextBatch() throws RDFHandlerException {
+        long first = nextResource;
+        nextResource += batchSize / 2;
+        for (int i = 0; i < batchSize; i++) {
+            IRI subject = BenchmarkStatements.resource(first + random.nextInt(batchSize));
+            IRI predicate = data.predicates[random.nextInt(data.predicates.length)];
+            int kind = random.nextInt(10);
+            if (kind == 0) {
+                loader.handleStatement(VF.createStatement(subject, RDF.TYPE,
+                        data.classes[random.nextInt(data.classes.length)]));
+            } else if (kind < 7) {
+                loader.handleStatement(VF.createStatement(subject, predicate,
+                        data.literals[random.nextInt(data.literals.length)]));
+            } else {
+                loader.handleStatement(VF.createStatement(subject, predicate,
+                        BenchmarkStatements.resource(first + random.nextInt(batchSize))));
+            }
+        }
+        loader.flush();
+    }
+
+    @Benchmark
+    public void writeBatch() throws RDFHandlerException {
+        committer.accept(captured.batch);
+    }
+
+    @TearDown(Level.Trial)
+    public void stopDatabase() throws RDFHandlerException {
+        committer.close();
+        db.shutdown();
+    }
+
+    private static class CapturingSink implements StatementBatchSink {
+
+        private StatementBatch batch;
+
+        @Override
+        public void accept(StatementBatch statementBatch) {
+            batch = statementBatch;
+        }
+
+        @Override
+        public void close() {
+        }
+
+        @Override
+        public long getCommittedTriples() {
+            return 0;
+        }
+    }
+}
@@ -0,0 +1,67 @@
+package semantics;
+
+import org.openrdf.model.IRI;
+import org.openrdf.model.Literal;
+import org.openrdf.model.Statement;
+import org.openrdf.model.ValueFactory;
+import org.openrdf.model.impl.SimpleValueFactory;
+import org.openrdf.model.vocabulary.RDF;
+import org.openrdf.model.vocabulary.XMLSchema;
+
+import java.util.Random;
+
+/**
+ * A fixed, seeded mix of the statements a typical document holds: a type, literal properties of the common
+ * datatypes and relationships to other resources, over a few namespaces and predicates.
+ */
+class BenchmarkStatements {
+
+    private static final ValueFactory VF = SimpleValueFactory.getInstance();
+    private static final String[] NAMESPACES = {"http://example.org/ontology#", "http://xmlns.com/foaf/0.1/",
+            "http://purl.org/dc/terms/", "http://schema.org/"};
+
+    final Statement[] statements;
+    final IRI[] predicates;
+    final IRI[] classes;
+    final Literal[] literals;
+
+    BenchmarkStatements(int count, int resources) {
+        Random random = new Random(42);
+        predicates = new IRI[NAMESPACES.length * 8];
+        for (int i = 0; i < predicates.length; i++) {
+            predicates[i] = VF.createIRI(NAMESPACES[i % NAMESPACES.length], "predicate" + i);
+        }
+        classes = new IRI[20];
+        for (int i = 0; i < classes.length; i++) {
+            classes[i] = VF.createIRI(NAMESPACES[0], "Class" + i);
+        }
+        literals = new Literal[]{
+                VF.createLiteral("a plain string literal"),
+                VF.createLiteral("a string with a 'quote'", "en"),
+                VF.createLiteral("42", XMLSchema.INTEGER),
+                VF.createLiteral("-7", XMLSchema.INT),
+                VF.createLiteral("3.14159", XMLSchema.DOUBLE),
+                VF.createLiteral("12.50", XMLSchema.DECIMAL),
+                VF.createLiteral("true", XMLSchema.BOOLEAN),
+                VF.createLiteral("2017-02-14", XMLSchema.DATE),
+                VF.createLiteral("not a number", XMLSchema.INTEGER)};
+        statements = new Statement[count];
+        for (int i = 0; i < count; i++) {
+            IRI subject = resource(random.nextInt(resources));
+            int kind = random.nextInt(10);
+            if (kind == 0) {
+                statements[i] = VF.createStatement(subject, RDF.TYPE, classes[random.nextInt(classes.length)]);
+            } else if (kind < 7) {
+                statements[i] = VF.createStatement(subject, predicates[random.nextInt(predicates.length)],
+                        literals[random.nextInt(literals.length)]);
+            } else {
+                statements[i] = VF.createStatement(subject, predicates[random.nextInt(predicates.length)],
+                        resource(random.nextInt(resources)));
+            }
+        }
+    }
+
+    static IRI resource(long number) {
+        return VF.createIRI("http://example.org/data/resource" + number);
+    }
+}
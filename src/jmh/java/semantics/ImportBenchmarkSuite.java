@@ -0,0 +1,208 @@
+package semantics;
+
+import org.codehaus.jackson.map.ObjectMapper;
+import org.codehaus.jackson.map.SerializationConfig;
+import org.neo4j.graphdb.GraphDatabaseService;
+import org.neo4j.graphdb.Result;
+import org.neo4j.graphdb.Transaction;
+import org.neo4j.kernel.api.exceptions.KernelException;
+import org.neo4j.kernel.impl.proc.Procedures;
+import org.neo4j.kernel.internal.GraphDatabaseAPI;
+import org.neo4j.kernel.internal.Version;
+import org.neo4j.test.TestGraphDatabaseFactory;
+import org.openrdf.rio.RDFFormat;
+
+import java.io.File;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+/**
+ * End to end benchmark of semantics.importRDF: every input document is imported into a new embedded database
+ * for each combination of commit size, shorten and typesToLabels, and the throughput, peak heap and store size
+ * of each import are written to a JSON report. The input is a directory holding one document per format, named
+ * by the default extension of the format (data.nt, data.ttl, data.rdf, data.jsonld, data.trig, data.nq), the
+ * formats without a document are skipped. Run it from Maven with
+ *
+ *     mvn -Pbenchmarks -DskipTests test-compile exec:exec@import-benchmark -Dimport.benchmark.args="--data DIR"
+ *
+ * Options: --data DIR, --report FILE (target/import-benchmark.json), --commitSizes 1000,10000,100000,
+ * --runs N (1) and --warmup N (1), the number of untimed imports before the first measured one. Imports run in
+ * the same JVM one after the other, the peak heap is the sum of the peaks of the heap pools during the import,
+ * an upper bound of the actual peak.
+ */
+public class ImportBenchmarkSuite {
+
+    private final File dataDir;
+    private final File reportFile;
+    private final long[] commitSizes;
+    private final int runs;
+    private final int warmup;
+    private final File workDir;
+
+    private ImportBenchmarkSuite(Map<String, String> options) {
+        dataDir = new File(options.getOrDefault("data", "."));
+        reportFile = new File(options.getOrDefault("report", "target/import-benchmark.json"));
+        commitSizes = Arrays.stream(options.getOrDefault("commitSizes", "1000,10000,100000").split(","))
+                .mapToLong(size -> Long.parseLong(size.trim())).toArray();
+        runs = Integer.parseInt(options.getOrDefault("runs", "1"));
+        warmup = Integer.parseInt(options.getOrDefault("warmup", "1"));
+        workDir = new File(reportFile.getAbsoluteFile().getParentFile(), "import-benchmark-db");
+    }
+
+    public static void main(String[] args) throws IOException, KernelException {
+        Map<String, String> options = new HashMap<>();
+        for (int i = 0; i + 1 < args.length; i += 2) {
+            if (!args[i].startsWith("--")) {
+                throw new IllegalArgumentException("Expected an --option, got " + args[i]);
+            }
+            options.put(args[i].substring(2), args[i + 1]);
+        }
+        new ImportBenchmarkSuite(options).run();
+        // the transactions of the imports run on a pool of non daemon threads
+        System.exit(0);
+    }
+
+    private void run() throws IOException, KernelException {
+        List<Map<String, Object>> results = new ArrayList<>();
+        boolean warmedUp = false;
+        for (RDFFormat format : RDFImport.availableParsers) {
+            File document = new File(dataDir, "data." + format.getDefaultFileExtension());
+            if (!document.isFile()) {
+                System.out.println("No " + document + ", skipping " + format.getName());
+                continue;
+            }
+            if (!warmedUp) {
+                for (int i = 0; i < warmup; i++) {
+                    importDocument(document, format, commitSizes[0], true, true);
+                }
+                warmedUp = true;
+            }
+            for (long commitSize : commitSizes) {
+                for (boolean shorten : new boolean[]{true, false}) {
+                    for (boolean typesToLabels : new boolean[]{true, false}) {
+                        for (int run = 0; run < runs; run++) {
+                            Map<String, Object> result = importDocument(document, format, commitSize, shorten,
+                                    typesToLabels);
+                            result.put("run", run);
+                            results.add(result);
+                            System.out.println(result);
+                        }
+                    }
+                }
+            }
+        }
+        Map<String, Object> report = new LinkedHashMap<>();
+        report.put("environment", environment());
+        report.put("results", results);
+        reportFile.getAbsoluteFile().getParentFile().mkdirs();
+        new ObjectMapper().configure(SerializationConfig.Feature.INDENT_OUTPUT, true).writeValue(reportFile, report);
+        System.out.println("Report written to " + reportFile);
+    }
+
+    private Map<String, Object> importDocument(File document, RDFFormat format, long commitSize, boolean shorten,
+                                               boolean typesToLabels) throws IOException, KernelException {
+        delete(workDir.toPath());
+        GraphDatabaseService db = new TestGraphDatabaseFactory().newEmbeddedDatabase(workDir);
+        Map<String, Object> result = new LinkedHashMap<>();
+        result.put("format", format.getName());
+        result.put("document", document.getName());
+        result.put("documentBytes", document.length());
+        result.put("commitSize", commitSize);
+        result.put("shorten", shorten);
+        result.put("typesToLabels", typesToLabels);
+        try {
+            ((GraphDatabaseAPI) db).getDependencyResolver().resolveDependency(Procedures.class)
+                    .registerProcedure(RDFImport.class);
+            db.execute("CREATE INDEX ON :Resource(uri)").close();
+            try (Transaction tx = db.beginTx()) {
+                db.schema().awaitIndexesOnline(1, TimeUnit.MINUTES);
+                tx.success();
+            }
+            Map<String, Object> params = new HashMap<>();
+            params.put("url", document.toURI().toString());
+            params.put("format", format.getName());
+            params.put("shorten", shorten);
+            params.put("typesToLabels", typesToLabels);
+            params.put("commitSize", commitSize);
+
+            System.gc();
+            List<MemoryPoolMXBean> heapPools = heapPools();
+            heapPools.forEach(MemoryPoolMXBean::resetPeakUsage);
+            long start = System.nanoTime();
+            Map<String, Object> imported;
+            try (Result rows = db.execute("CALL semantics.importRDF({url}, {format}, {shorten}, {typesToLabels}, " +
+                    "{commitSize}) YIELD terminationStatus, triplesLoaded, extraInfo " +
+                    "RETURN terminationStatus, triplesLoaded, extraInfo", params)) {
+                imported = rows.next();
+            }
+            long millis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+            long peakHeap = heapPools.stream().mapToLong(pool -> pool.getPeakUsage().getUsed()).sum();
+
+            long triples = (Long) imported.get("triplesLoaded");
+            result.put("status", imported.get("terminationStatus"));
+            result.put("extraInfo", imported.get("extraInfo"));
+            result.put("triplesLoaded", triples);
+            result.put("millis", millis);
+            result.put("triplesPerSecond", (millis > 0 ? triples * 1000 / millis : triples));
+            result.put("peakHeapBytes", peakHeap);
+        } finally {
+            db.shutdown();
+        }
+        long[] sizes = storeSizes(workDir.toPath());
+        result.put("storeBytes", sizes[0]);
+        result.put("transactionLogBytes", sizes[1]);
+        delete(workDir.toPath());
+        return result;
+    }
+
+    private static List<MemoryPoolMXBean> heapPools() {
+        List<MemoryPoolMXBean> pools = new ArrayList<>();
+        for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+            if (pool.getType() == MemoryType.HEAP && pool.isValid()) {
+                pools.add(pool);
+            }
+        }
+        return pools;
+    }
+
+    /**
+     * @return the size of the store files and of the transaction logs of the database directory
+     */
+    private static long[] storeSizes(Path dir) throws IOException {
+        long[] sizes = new long[2];
+        try (Stream<Path> files = Files.walk(dir)) {
+            files.filter(Files::isRegularFile).forEach(file -> {
+                int kind = (file.getFileName().toString().startsWith("neostore.transaction.db") ? 1 : 0);
+                sizes[kind] += file.toFile().length();
+            });
+        }
+        return sizes;
+    }
+
+    private static Map<String, Object> environment() {
+        Map<String, Object> environment = new LinkedHashMap<>();
+        environment.put("neo4j", Version.getNeo4jVersion());
+        environment.put("java", System.getProperty("java.version"));
+        environment.put("vm", System.getProperty("java.vm.name"));
+        environment.put("processors", Runtime.getRuntime().availableProcessors());
+        environment.put("maxHeapBytes", Runtime.getRuntime().maxMemory());
+        environment.put("timestamp", System.currentTimeMillis());
+        return environment;
+    }
+
+    private static void delete(Path dir) throws IOException {
+        if (!Files.exists(dir)) {
+            return;
+        }
+        try (Stream<Path> files = Files.walk(dir)) {
+            files.sorted(Comparator.reverseOrder()).forEach(file -> file.toFile().delete());
+        }
+    }
+}
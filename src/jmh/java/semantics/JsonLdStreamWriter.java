@@ -0,0 +1,123 @@
+package semantics;
+
+import org.codehaus.jackson.JsonEncoding;
+import org.codehaus.jackson.JsonFactory;
+import org.codehaus.jackson.JsonGenerator;
+import org.openrdf.model.BNode;
+import org.openrdf.model.IRI;
+import org.openrdf.model.Literal;
+import org.openrdf.model.Resource;
+import org.openrdf.model.Statement;
+import org.openrdf.model.Value;
+import org.openrdf.model.vocabulary.RDF;
+import org.openrdf.rio.RDFHandlerException;
+import org.openrdf.rio.helpers.AbstractRDFHandler;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Writes statements as expanded JSON-LD, one node object per run of statements about the same subject. The Rio
+ * JSON-LD writer builds the whole document in memory before writing it, this one only holds the current subject,
+ * so it can write documents of any size. A subject whose statements are not consecutive gets several node
+ * objects, which JSON-LD parsers merge. Statements are written in the default graph.
+ */
+class JsonLdStreamWriter extends AbstractRDFHandler {
+
+    private final JsonGenerator json;
+    private Resource subject = null;
+    private final List<String> types = new ArrayList<>();
+    private final Map<String, List<Value>> values = new LinkedHashMap<>();
+
+    JsonLdStreamWriter(OutputStream out) throws IOException {
+        json = new JsonFactory().createJsonGenerator(out, JsonEncoding.UTF8);
+    }
+
+    @Override
+    public void startRDF() throws RDFHandlerException {
+        try {
+            json.writeStartArray();
+        } catch (IOException e) {
+            throw new RDFHandlerException(e);
+        }
+    }
+
+    @Override
+    public void handleStatement(Statement st) throws RDFHandlerException {
+        if (!st.getSubject().equals(subject)) {
+            writeNode();
+            subject = st.getSubject();
+        }
+        if (st.getPredicate().equals(RDF.TYPE) && st.getObject() instanceof IRI) {
+            types.add(st.getObject().stringValue());
+        } else {
+            values.computeIfAbsent(st.getPredicate().stringValue(), p -> new ArrayList<>()).add(st.getObject());
+        }
+    }
+
+    @Override
+    public void endRDF() throws RDFHandlerException {
+        writeNode();
+        try {
+            json.writeEndArray();
+            json.close();
+        } catch (IOException e) {
+            throw new RDFHandlerException(e);
+        }
+    }
+
+    private void writeNode() throws RDFHandlerException {
+        if (subject == null) {
+            return;
+        }
+        try {
+            json.writeStartObject();
+            json.writeStringField("@id", id(subject));
+            if (!types.isEmpty()) {
+                json.writeArrayFieldStart("@type");
+                for (String type : types) {
+                    json.writeString(type);
+                }
+                json.writeEndArray();
+            }
+            for (Map.Entry<String, List<Value>> predicate : values.entrySet()) {
+                json.writeArrayFieldStart(predicate.getKey());
+                for (Value value : predicate.getValue()) {
+                    writeValue(value);
+                }
+                json.writeEndArray();
+            }
+            json.writeEndObject();
+            json.writeRaw('\n');
+        } catch (IOException e) {
+            throw new RDFHandlerException(e);
+        }
+        subject = null;
+        types.clear();
+        values.clear();
+    }
+
+    private void writeValue(Value value) throws IOException {
+        json.writeStartObject();
+        if (value instanceof Literal) {
+            Literal literal = (Literal) value;
+            json.writeStringField("@value", literal.getLabel());
+            if (literal.getLanguage().isPresent()) {
+                json.writeStringField("@language", literal.getLanguage().get());
+            } else {
+                json.writeStringField("@type", literal.getDatatype().stringValue());
+            }
+        } else {
+            json.writeStringField("@id", id((Resource) value));
+        }
+        json.writeEndObject();
+    }
+
+    private static String id(Resource resource) {
+        return (resource instanceof BNode ? "_:" + ((BNode) resource).getID() : resource.stringValue());
+    }
+}
@@ -0,0 +1,70 @@
+package semantics;
+
+import org.neo4j.logging.NullLog;
+import org.openjdk.jmh.annotations.*;
+import org.openrdf.rio.RDFHandlerException;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The parser side of an import, per statement and without a database: mapping a statement into a batch,
+ * shortening an IRI and converting a literal. Full batches are handed to a sink that drops them.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class StatementLoaderBenchmark {
+
+    @Param({"true", "false"})
+    public boolean shorten;
+
+    private BenchmarkStatements data;
+    private DirectStatementLoader loader;
+    private ImportSymbols symbols;
+    private int next = 0;
+
+    @Setup
+    public void setUp() {
+        data = new BenchmarkStatements(1 << 16, 10000);
+        symbols = new ImportSymbols(new NamespacePrefixes(), shorten);
+        loader = new DirectStatementLoader(null, CommitPolicy.fixed(10000), symbols, true, new DroppingSink(),
+                NullLog.getInstance());
+    }
+
+    @Benchmark
+    public void handleStatement() throws RDFHandlerException {
+        loader.handleStatement(data.statements[next++ & (data.statements.length - 1)]);
+    }
+
+    @Benchmark
+    public String shorten() {
+        return symbols.shorten(data.predicates[next++ % data.predicates.length]);
+    }
+
+    @Benchmark
+    public Object getObjectValue() {
+        return DirectStatementLoader.getObjectValue(data.literals[next++ % data.literals.length]);
+    }
+
+    private static class DroppingSink implements StatementBatchSink {
+
+        private long triples = 0;
+
+        @Override
+        public void accept(StatementBatch batch) {
+            triples += batch.getTriples();
+        }
+
+        @Override
+        public void close() {
+        }
+
+        @Override
+        public long getCommittedTriples() {
+            return triples;
+        }
+    }
+}
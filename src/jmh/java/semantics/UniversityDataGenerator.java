@@ -0,0 +1,406 @@
+package semantics;
+
+import org.openrdf.model.BNode;
+import org.openrdf.model.IRI;
+import org.openrdf.model.Resource;
+import org.openrdf.model.Statement;
+import org.openrdf.model.Value;
+import org.openrdf.model.ValueFactory;
+import org.openrdf.model.impl.SimpleValueFactory;
+import org.openrdf.model.vocabulary.OWL;
+import org.openrdf.model.vocabulary.RDF;
+import org.openrdf.model.vocabulary.RDFS;
+import org.openrdf.model.vocabulary.XMLSchema;
+import org.openrdf.rio.RDFFormat;
+import org.openrdf.rio.RDFHandler;
+import org.openrdf.rio.RDFHandlerException;
+import org.openrdf.rio.Rio;
+
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+/**
+ * Generates LUBM style university data, and the OWL ontology describing it, for tests at any scale. Each
+ * university has 15 to 25 departments of faculty, students, courses, publications and research groups, about
+ * 150 000 triples, so a scale of 7, 70 and 700 universities gives roughly 1M, 10M and 100M triples.
+ *
+ * The output only depends on the seed and the scale: each university is generated from a random of its own and
+ * every format receives the same statements, in the same order, written as they are generated. Nothing but the
+ * current subject is held in memory, whatever the scale. Run it from Maven with
+ *
+ *     mvn -Pbenchmarks -DskipTests test-compile exec:exec@generate-data -Dgenerate.args="--out DIR --scale 7"
+ *
+ * Options: --out DIR, --scale N (1), --seed N (0), --formats (all the import formats, by name or extension) and
+ * --violations F (0), the fraction of people and courses also given a property outside its domain, for the
+ * consistency checks. The data is written to DIR/data.ext and the ontology to DIR/ontology.ext, ext being the
+ * default extension of each format, as read by {@link ImportBenchmarkSuite}.
+ */
+public class UniversityDataGenerator {
+
+    static final String NS = "http://swat.cse.lehigh.edu/onto/univ-bench.owl#";
+
+    private static final ValueFactory VF = SimpleValueFactory.getInstance();
+    // universities the degrees are from, most of them are not generated, as in LUBM
+    private static final int DEGREE_UNIVERSITIES = 1000;
+
+    private final RDFHandler out;
+    private final long seed;
+    private final double violations;
+    private long statements = 0;
+
+    UniversityDataGenerator(RDFHandler handler, long seed, double violations) {
+        out = handler;
+        this.seed = seed;
+        this.violations = violations;
+    }
+
+    /**
+     * Writes the ontology: classes, a subclass hierarchy, object properties with their domain and range, and
+     * datatype properties with their domain.
+     */
+    void writeOntology() throws RDFHandlerException {
+        start();
+        statement(VF.createIRI(NS.substring(0, NS.length() - 1)), RDF.TYPE, OWL.ONTOLOGY);
+        String[][] classes = {
+                {"Organization", null}, {"University", "Organization"}, {"Department", "Organization"},
+                {"ResearchGroup", "Organization"}, {"Person", null}, {"Employee", "Person"},
+                {"Faculty", "Employee"}, {"Professor", "Faculty"}, {"FullProfessor", "Professor"},
+                {"AssociateProfessor", "Professor"}, {"AssistantProfessor", "Professor"}, {"Lecturer", "Faculty"},
+                {"Student", "Person"}, {"UndergraduateStudent", "Student"}, {"GraduateStudent", "Student"},
+                {"Work", null}, {"Course", "Work"}, {"GraduateCourse", "Course"}, {"Publication", "Work"},
+                {"Address", null}};
+        for (String[] c : classes) {
+            IRI iri = ub(c[0]);
+            statement(iri, RDF.TYPE, OWL.CLASS);
+            statement(iri, RDFS.LABEL, VF.createLiteral(c[0]));
+            statement(iri, RDFS.COMMENT, VF.createLiteral("The class of " + c[0] + " instances", "en"));
+            if (c[1] != null) {
+                statement(iri, RDFS.SUBCLASSOF, ub(c[1]));
+            }
+        }
+        String[][] objectProperties = {
+                {"subOrganizationOf", "Organization", "Organization", null},
+                {"worksFor", "Employee", "Organization", null}, {"headOf", "Professor", "Department", "worksFor"},
+                {"memberOf", "Person", "Organization", null}, {"teacherOf", "Faculty", "Course", null},
+                {"teachingAssistantOf", "GraduateStudent", "Course", null},
+                {"takesCourse", "Student", "Course", null}, {"advisor", "Student", "Professor", null},
+                {"publicationAuthor", "Publication", "Person", null},
+                {"degreeFrom", "Person", "University", null},
+                {"undergraduateDegreeFrom", "Person", "University", "degreeFrom"},
+                {"doctoralDegreeFrom", "Person", "University", "degreeFrom"},
+                {"address", "Organization", "Address", null}};
+        for (String[] p : objectProperties) {
+            IRI iri = ub(p[0]);
+            statement(iri, RDF.TYPE, OWL.OBJECTPROPERTY);
+            statement(iri, RDFS.LABEL, VF.createLiteral(p[0]));
+            statement(iri, RDFS.DOMAIN, ub(p[1]));
+            statement(iri, RDFS.RANGE, ub(p[2]));
+            if (p[3] != null) {
+                statement(iri, RDFS.SUBPROPERTYOF, ub(p[3]));
+            }
+        }
+        Object[][] datatypeProperties = {
+                {"name", null, XMLSchema.STRING}, {"emailAddress", "Person", XMLSchema.STRING},
+                {"telephone", "Person", XMLSchema.STRING}, {"age", "Person", XMLSchema.INTEGER},
+                {"researchInterest", "Faculty", XMLSchema.STRING}, {"credits", "Course", XMLSchema.INTEGER},
+                {"publicationYear", "Publication", XMLSchema.GYEAR}, {"street", "Address", XMLSchema.STRING},
+                {"city", "Address", XMLSchema.STRING}};
+        for (Object[] p : datatypeProperties) {
+            IRI iri = ub((String) p[0]);
+            statement(iri, RDF.TYPE, OWL.DATATYPEPROPERTY);
+            statement(iri, RDFS.LABEL, VF.createLiteral((String) p[0]));
+            if (p[1] != null) {
+                statement(iri, RDFS.DOMAIN, ub((String) p[1]));
+            }
+            statement(iri, RDFS.RANGE, (IRI) p[2]);
+        }
+        out.endRDF();
+    }
+
+    /**
+     * Writes the data of universities 0 to {@code scale - 1}.
+     */
+    void writeData(int scale) throws RDFHandlerException {
+        start();
+        for (int university = 0; university < scale; university++) {
+            writeUniversity(university, new Random(seed * 1_000_003L + university));
+        }
+        out.endRDF();
+    }
+
+    long getStatements() {
+        return statements;
+    }
+
+    private void writeUniversity(int u, Random random) throws RDFHandlerException {
+        IRI university = VF.createIRI("http://www.University" + u + ".edu");
+        statement(university, RDF.TYPE, ub("University"));
+        statement(university, ub("name"), VF.createLiteral("University" + u));
+        BNode address = VF.createBNode("address" + u);
+        statement(university, ub("address"), address);
+        statement(address, RDF.TYPE, ub("Address"));
+        statement(address, ub("street"), VF.createLiteral(random.nextInt(1000) + " College Avenue"));
+        statement(address, ub("city"), VF.createLiteral("City" + random.nextInt(500)));
+        int departments = between(random, 15, 25);
+        for (int d = 0; d < departments; d++) {
+            writeDepartment(university, "http://www.Department" + d + ".University" + u + ".edu", random);
+        }
+    }
+
+    private void writeDepartment(IRI university, String base, Random random) throws RDFHandlerException {
+        IRI department = VF.createIRI(base);
+        statement(department, RDF.TYPE, ub("Department"));
+        statement(department, ub("name"), VF.createLiteral(base.substring(11, base.indexOf('.', 11))));
+        statement(department, ub("subOrganizationOf"), university);
+
+        List<IRI> courses = new ArrayList<>();
+        List<IRI> graduateCourses = new ArrayList<>();
+        List<IRI> professors = new ArrayList<>();
+        int faculty = 0;
+        String[] ranks = {"FullProfessor", "AssociateProfessor", "AssistantProfessor", "Lecturer"};
+        int[][] rankSizes = {{7, 10}, {10, 14}, {8, 11}, {5, 7}};
+        for (int r = 0; r < ranks.length; r++) {
+            int count = between(random, rankSizes[r][0], rankSizes[r][1]);
+            for (int i = 0; i < count; i++) {
+                IRI member = VF.createIRI(base + "/" + ranks[r] + i);
+                writeFaculty(member, ranks[r], department, base, random, courses, graduateCourses);
+                if (r < 3) {
+                    professors.add(member);
+                }
+                if (r == 0 && i == 0) {
+                    statement(member, ub("headOf"), department);
+                }
+                faculty++;
+            }
+        }
+
+        int undergraduates = faculty * between(random, 8, 14);
+        for (int i = 0; i < undergraduates; i++) {
+            IRI student = VF.createIRI(base + "/UndergraduateStudent" + i);
+            writePerson(student, "UndergraduateStudent", i, base, random);
+            statement(student, ub("memberOf"), department);
+            for (int c = between(random, 2, 4); c > 0; c--) {
+                statement(student, ub("takesCourse"), pick(courses, random));
+            }
+            if (random.nextInt(5) == 0) {
+                statement(student, ub("advisor"), pick(professors, random));
+            }
+        }
+
+        int graduates = faculty * between(random, 3, 4);
+        for (int i = 0; i < graduates; i++) {
+            IRI student = VF.createIRI(base + "/GraduateStudent" + i);
+            writePerson(student, "GraduateStudent", i, base, random);
+            statement(student, ub("memberOf"), department);
+            statement(student, ub("undergraduateDegreeFrom"), degreeUniversity(random));
+            for (int c = between(random, 1, 3); c > 0; c--) {
+                statement(student, ub("takesCourse"), pick(graduateCourses, random));
+            }
+            statement(student, ub("advisor"), pick(professors, random));
+            if (random.nextInt(4) == 0) {
+                statement(student, ub("teachingAssistantOf"), pick(courses, random));
+            }
+        }
+
+        for (int i = between(random, 10, 20); i > 0; i--) {
+            IRI group = VF.createIRI(base + "/ResearchGroup" + i);
+            statement(group, RDF.TYPE, ub("ResearchGroup"));
+            statement(group, ub("subOrganizationOf"), department);
+        }
+    }
+
+    private void writeFaculty(IRI member, String rank, IRI department, String base, Random random,
+                              List<IRI> courses, List<IRI> graduateCourses) throws RDFHandlerException {
+        String name = member.getLocalName();
+        writePerson(member, rank, -1, base, random);
+        statement(member, ub("worksFor"), department);
+        statement(member, ub("researchInterest"), VF.createLiteral("Research" + random.nextInt(100)));
+        statement(member, ub("undergraduateDegreeFrom"), degreeUniversity(random));
+        statement(member, ub("doctoralDegreeFrom"), degreeUniversity(random));
+        for (int c = between(random, 1, 2); c > 0; c--) {
+            courses.add(course(member, VF.createIRI(base + "/Course" + courses.size()), "Course", random));
+        }
+        for (int c = between(random, 1, 2); c > 0; c--) {
+            graduateCourses.add(course(member, VF.createIRI(base + "/GraduateCourse" + graduateCourses.size()),
+                    "GraduateCourse", random));
+        }
+        int publications = (rank.equals("Lecturer") ? between(random, 0, 5) : between(random, 5, 15));
+        for (int p = 0; p < publications; p++) {
+            IRI publication = VF.createIRI(member.stringValue() + "/Publication" + p);
+            statement(publication, RDF.TYPE, ub("Publication"));
+            statement(publication, ub("name"), VF.createLiteral("Publication" + p + " of " + name));
+            statement(publication, ub("publicationYear"),
+                    VF.createLiteral(String.valueOf(1990 + random.nextInt(28)), XMLSchema.GYEAR));
+            statement(publication, ub("publicationAuthor"), member);
+        }
+    }
+
+    private IRI course(IRI teacher, IRI course, String type, Random random) throws RDFHandlerException {
+        statement(course, RDF.TYPE, ub(type));
+        statement(course, ub("name"), VF.createLiteral(course.getLocalName()));
+        statement(course, ub("credits"), VF.createLiteral(String.valueOf(between(random, 1, 6)), XMLSchema.INTEGER));
+        statement(teacher, ub("teacherOf"), course);
+        if (violations > 0 && random.nextDouble() < violations) {
+            // a course has no telephone, Person is the domain of the property
+            statement(course, ub("telephone"), VF.createLiteral(telephone(random)));
+        }
+        return course;
+    }
+
+    private void writePerson(IRI person, String type, int number, String base, Random random)
+            throws RDFHandlerException {
+        String name = person.getLocalName();
+        statement(person, RDF.TYPE, ub(type));
+        statement(person, ub("name"), VF.createLiteral(name));
+        statement(person, ub("emailAddress"),
+                VF.createLiteral(name + "@" + base.substring(11).replace(".edu", "") + ".edu"));
+        statement(person, ub("telephone"), VF.createLiteral(telephone(random)));
+        if (number < 0 || random.nextInt(2) == 0) {
+            statement(person, ub("age"), VF.createLiteral(String.valueOf(between(random, 18, 70)),
+                    XMLSchema.INTEGER));
+        }
+        if (violations > 0 && random.nextDouble() < violations) {
+            // only courses have credits
+            statement(person, ub("credits"), VF.createLiteral("3", XMLSchema.INTEGER));
+        }
+    }
+
+    private IRI degreeUniversity(Random random) {
+        return VF.createIRI("http://www.University" + random.nextInt(DEGREE_UNIVERSITIES) + ".edu");
+    }
+
+    private static String telephone(Random random) {
+        return String.format("%03d-%03d-%04d", random.nextInt(1000), random.nextInt(1000), random.nextInt(10000));
+    }
+
+    private static int between(Random random, int min, int max) {
+        return min + random.nextInt(max - min + 1);
+    }
+
+    private static IRI pick(List<IRI> values, Random random) {
+        return values.get(random.nextInt(values.size()));
+    }
+
+    private static IRI ub(String localName) {
+        return VF.createIRI(NS, localName);
+    }
+
+    private void start() throws RDFHandlerException {
+        out.startRDF();
+        out.handleNamespace("ub", NS);
+        out.handleNamespace("rdf", RDF.NAMESPACE);
+        out.handleNamespace("rdfs", RDFS.NAMESPACE);
+        out.handleNamespace("owl", OWL.NAMESPACE);
+        out.handleNamespace("xsd", XMLSchema.NAMESPACE);
+    }
+
+    private void statement(Resource subject, IRI predicate, Value object) throws RDFHandlerException {
+        out.handleStatement(VF.createStatement(subject, predicate, object));
+        statements++;
+    }
+
+    public static void main(String[] args) throws IOException {
+        Map<String, String> options = new HashMap<>();
+        for (int i = 0; i + 1 < args.length; i += 2) {
+            if (!args[i].startsWith("--")) {
+                throw new IllegalArgumentException("Expected an --option, got " + args[i]);
+            }
+            options.put(args[i].substring(2), args[i + 1]);
+        }
+        File dir = new File(options.getOrDefault("out", "target/generated-data"));
+        int scale = Integer.parseInt(options.getOrDefault("scale", "1"));
+        long seed = Long.parseLong(options.getOrDefault("seed", "0"));
+        double violations = Double.parseDouble(options.getOrDefault("violations", "0"));
+        List<RDFFormat> formats = new ArrayList<>();
+        for (RDFFormat format : RDFImport.availableParsers) {
+            if (!options.containsKey("formats") || Arrays.stream(options.get("formats").split(","))
+                    .anyMatch(name -> name.trim().equalsIgnoreCase(format.getName())
+                            || name.trim().equalsIgnoreCase(format.getDefaultFileExtension()))) {
+                formats.add(format);
+            }
+        }
+        dir.mkdirs();
+
+        long start = System.currentTimeMillis();
+        try (Outputs ontology = new Outputs(dir, "ontology", formats)) {
+            new UniversityDataGenerator(ontology, seed, 0).writeOntology();
+        }
+        UniversityDataGenerator generator;
+        try (Outputs data = new Outputs(dir, "data", formats)) {
+            generator = new UniversityDataGenerator(data, seed, violations);
+            generator.writeData(scale);
+        }
+        System.out.println(generator.getStatements() + " statements per format written to " + dir + " in " +
+                (System.currentTimeMillis() - start) + " ms");
+    }
+
+    /**
+     * Writes every statement to one file per format.
+     */
+    private static class Outputs implements RDFHandler, AutoCloseable {
+
+        private final List<OutputStream> streams = new ArrayList<>();
+        private final List<RDFHandler> writers = new ArrayList<>();
+
+        Outputs(File dir, String name, List<RDFFormat> formats) throws IOException {
+            for (RDFFormat format : formats) {
+                OutputStream stream = new BufferedOutputStream(new FileOutputStream(
+                        new File(dir, name + "." + format.getDefaultFileExtension())), 1 << 16);
+                streams.add(stream);
+                writers.add(format.equals(RDFFormat.JSONLD) ? new JsonLdStreamWriter(stream) :
+                        Rio.createWriter(format, stream));
+            }
+        }
+
+        @Override
+        public void startRDF() throws RDFHandlerException {
+            for (RDFHandler writer : writers) {
+                writer.startRDF();
+            }
+        }
+
+        @Override
+        public void endRDF() throws RDFHandlerException {
+            for (RDFHandler writer : writers) {
+                writer.endRDF();
+            }
+        }
+
+        @Override
+        public void handleNamespace(String prefix, String uri) throws RDFHandlerException {
+            for (RDFHandler writer : writers) {
+                writer.handleNamespace(prefix, uri);
+            }
+        }
+
+        @Override
+        public void handleStatement(Statement st) throws RDFHandlerException {
+            for (RDFHandler writer : writers) {
+                writer.handleStatement(st);
+            }
+        }
+
+        @Override
+        public void handleComment(String comment) throws RDFHandlerException {
+            for (RDFHandler writer : writers) {
+                writer.handleComment(comment);
+            }
+        }
+
+        @Override
+        public void close() throws IOException {
+            for (OutputStream stream : streams) {
+                stream.close();
+            }
+        }
+    }
+}
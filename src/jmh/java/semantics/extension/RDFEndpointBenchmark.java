@@ -0,0 +1,56 @@
+package semantics.extension;
+
+import org.neo4j.graphdb.GraphDatabaseService;
+import org.neo4j.test.TestGraphDatabaseFactory;
+import org.openjdk.jmh.annotations.*;
+import org.openrdf.model.Literal;
+import org.openrdf.model.impl.SimpleValueFactory;
+import semantics.NamespaceRegistry;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The per property work of the RDF export: building the IRI of a shortened name and the literal of a value.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class RDFEndpointBenchmark {
+
+    private static final String BASE_VOCAB_NS = "neo4j://vocabulary#";
+    private static final SimpleValueFactory VF = SimpleValueFactory.getInstance();
+
+    // a shortened name, a full IRI and a name of the default vocabulary
+    private final String[] names = {"foaf_name", "ns2_predicate7", "http://schema.org/price", "knows"};
+    private final Object[] values = {"a string value", 42L, 7, 3.14159d, 2.5f, true, new long[0]};
+
+    private GraphDatabaseService db;
+    private NamespaceRegistry.Namespaces namespaces;
+    private int next = 0;
+
+    @Setup
+    public void setUp() {
+        db = new TestGraphDatabaseFactory().newImpermanentDatabase();
+        db.execute("CREATE (:NamespacePrefixDefinition {`http://xmlns.com/foaf/0.1/`: 'foaf', " +
+                "`http://example.org/ontology#`: 'ns2'})").close();
+        namespaces = NamespaceRegistry.of(db).current();
+    }
+
+    @Benchmark
+    public String buildURI() {
+        return RDFEndpoint.buildURI(BASE_VOCAB_NS, names[next++ % names.length], namespaces);
+    }
+
+    @Benchmark
+    public Literal createTypedLiteral() {
+        return RDFEndpoint.createTypedLiteral(VF, values[next++ % values.length]);
+    }
+
+    @TearDown
+    public void tearDown() {
+        db.shutdown();
+    }
+}
@@ -0,0 +1,67 @@
+package semantics;
+
+import org.neo4j.logging.Log;
+
+import java.util.*;
+
+/**
+ * Sizes batches from what they cost rather than from a fixed triple count. A batch is committed as soon as
+ * it reaches the current target size or its estimated heap footprint reaches the memory budget. After each
+ * commit the target is scaled towards the configured commit time: slow commits shrink it, fast commits
+ * grow it as long as the batch stayed well inside the memory budget.
+ */
+class AdaptiveCommitPolicy implements CommitPolicy {
+
+    static final long MIN_COMMIT_SIZE = 100;
+    static final long MAX_COMMIT_SIZE = 1000000;
+    private static final double MAX_GROWTH = 2.0;
+
+    private final long memoryBudgetBytes;
+    private final long targetCommitMillis;
+    private final Log log;
+    private final List<Map<String, Object>> batchStats = new ArrayList<>();
+    private volatile long commitSize;
+
+    AdaptiveCommitPolicy(long initialCommitSize, long memoryBudgetBytes, long targetCommitMillis, Log l) {
+        this.commitSize = Math.min(Math.max(initialCommitSize, MIN_COMMIT_SIZE), MAX_COMMIT_SIZE);
+        this.memoryBudgetBytes = memoryBudgetBytes;
+        this.targetCommitMillis = Math.max(targetCommitMillis, 1);
+        log = l;
+    }
+
+    @Override
+    public boolean isFull(StatementBatch batch) {
+        return batch.getTriples() >= commitSize || batch.getEstimatedHeapBytes() >= memoryBudgetBytes;
+    }
+
+    @Override
+    public synchronized void committed(StatementBatch batch, long commitMillis) {
+        long previous = commitSize;
+        double scale = (double) targetCommitMillis / Math.max(commitMillis, 1);
+        if (scale > 1.0) {
+            // only grow when the heap allows it: a batch cut short by the budget must not grow any further
+            double heapRoom = (double) memoryBudgetBytes / Math.max(batch.getEstimatedHeapBytes(), 1);
+            scale = Math.min(Math.min(scale, heapRoom), MAX_GROWTH);
+        }
+        long next = (long) (batch.getTriples() * scale);
+        if (scale >= 1.0) {
+            next = Math.max(next, previous);
+        }
+        commitSize = Math.min(Math.max(next, MIN_COMMIT_SIZE), MAX_COMMIT_SIZE);
+
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("batch", (long) batchStats.size() + 1);
+        stats.put("triples", (long) batch.getTriples());
+        stats.put("heapEstimateBytes", batch.getEstimatedHeapBytes());
+        stats.put("commitMillis", commitMillis);
+        stats.put("nextCommitSize", commitSize);
+        batchStats.add(stats);
+        log.info("Adaptive commit: batch of " + batch.getTriples() + " triples (~" +
+                batch.getEstimatedHeapBytes() / 1024 + "KB) committed in " + commitMillis +
+                "ms, next commit size " + commitSize);
+    }
+
+    synchronized List<Map<String, Object>> getBatchStats() {
+        return new ArrayList<>(batchStats);
+    }
+}
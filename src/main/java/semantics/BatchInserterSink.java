@@ -0,0 +1,117 @@
+package semantics;
+
+import org.neo4j.graphdb.Label;
+import org.neo4j.unsafe.batchinsert.BatchInserter;
+import org.openrdf.rio.RDFHandlerException;
+
+import java.util.*;
+
+/**
+ * Writes statement batches straight into the store files through a {@link BatchInserter}, with no
+ * transactions and no index lookups. Node ids are resolved from an in-memory dictionary of every URI
+ * seen so far, which is only correct when the store was empty when the load started.
+ *
+ * The dictionary stays on the heap for the whole load, about 30 bytes plus the length of the URI per resource,
+ * see {@link UriDictionary}, on top of the page cache of the inserter.
+ */
+class BatchInserterSink implements StatementBatchSink {
+
+    private static final Label RESOURCE = Label.label("Resource");
+
+    private final BatchInserter inserter;
+    private final ImportSymbols symbols;
+    private final UriDictionary nodeIds = new UriDictionary();
+    private long committedTriples = 0;
+
+    BatchInserterSink(BatchInserter batchInserter, ImportSymbols importSymbols) {
+        inserter = batchInserter;
+        symbols = importSymbols;
+    }
+
+    @Override
+    public void accept(StatementBatch batch) throws RDFHandlerException {
+        int resourceCount = batch.getResourceCount();
+        List<Set<Label>> labels = new ArrayList<>(Collections.nCopies(resourceCount, null));
+        List<Map<String, Object>> props = new ArrayList<>(Collections.nCopies(resourceCount, null));
+        batch.forEachLabel((resource, label) -> {
+            if (labels.get(resource) == null) {
+                labels.set(resource, new HashSet<>());
+            }
+            labels.get(resource).add(symbols.label(label));
+        });
+        batch.forEachProp((resource, key, value) -> {
+            if (props.get(resource) == null) {
+                props.set(resource, new HashMap<>());
+            }
+            Map<String, Object> resourceProps = props.get(resource);
+            resourceProps.put(key, PropertyValues.merge(resourceProps.get(key), value));
+        });
+
+        long[] ids = new long[resourceCount];
+        for (int i = 0; i < resourceCount; i++) {
+            String uri = batch.getUri(i);
+            Long id = nodeIds.get(uri);
+            Set<Label> resourceLabels = labels.get(i);
+            Map<String, Object> resourceProps = props.get(i);
+            if (id == null) {
+                Map<String, Object> nodeProps = (resourceProps != null ? resourceProps : new HashMap<>());
+                nodeProps.put("uri", uri);
+                Set<Label> nodeLabels = (resourceLabels != null ? resourceLabels : new HashSet<>());
+                nodeLabels.add(RESOURCE);
+                id = inserter.createNode(nodeProps, nodeLabels.toArray(new Label[nodeLabels.size()]));
+                nodeIds.put(uri, id);
+            } else {
+                if (resourceLabels != null) {
+                    for (Label existing : inserter.getNodeLabels(id)) {
+                        resourceLabels.add(existing);
+                    }
+                    inserter.setNodeLabels(id, resourceLabels.toArray(new Label[resourceLabels.size()]));
+                }
+                if (resourceProps != null) {
+                    Map<String, Object> existing = inserter.getNodeProperties(id);
+                    for (Map.Entry<String, Object> prop : resourceProps.entrySet()) {
+                        inserter.setNodeProperty(id, prop.getKey(),
+                                PropertyValues.merge(existing.get(prop.getKey()), prop.getValue()));
+                    }
+                }
+            }
+            ids[i] = id;
+        }
+
+        batch.forEachEdge((subject, object, relType) ->
+                inserter.createRelationship(ids[subject], ids[object], symbols.relationshipType(relType), null));
+        committedTriples += batch.getTriples();
+    }
+
+    /**
+     * Writes the namespace prefix definitions, the node the procedures read prefixes from.
+     */
+    void writeNamespaces(Map<String, String> namespaces) {
+        inserter.createNode(new HashMap<>(namespaces), Label.label("NamespacePrefixDefinition"));
+    }
+
+    /**
+     * Nothing is buffered between batches, the store is only flushed by {@link #shutdown()}.
+     */
+    @Override
+    public void close() throws RDFHandlerException {
+    }
+
+    /**
+     * Schedules the :Resource(uri) index required by importRDF, so it is built when the database
+     * first starts on the loaded store, and flushes the store files.
+     */
+    void shutdown() {
+        inserter.createDeferredSchemaIndex(RESOURCE).on("uri").create();
+        inserter.shutdown();
+    }
+
+    @Override
+    public long getCommittedTriples() {
+        return committedTriples;
+    }
+
+    int getNodeCount() {
+        return nodeIds.size();
+    }
+}
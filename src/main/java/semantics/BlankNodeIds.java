@@ -0,0 +1,39 @@
+package semantics;
+
+/**
+ * Node ids of the blank nodes written by one import, indexed by the number a {@link CompactBNodeFactory} gave
+ * each blank node. The numbers are dense, so the table is a list of primitive pages rather than a map, and it
+ * is never evicted: blank nodes have no uri to look them up by, this table is the only way back to their node.
+ */
+class BlankNodeIds {
+
+    private static final int PAGE_BITS = 14;
+    private static final int PAGE_SIZE = 1 << PAGE_BITS;
+
+    // node id + 1, so that 0 means not written yet
+    private long[][] pages = new long[16][];
+
+    /**
+     * @return the node id of the blank node, -1 when it has not been written yet
+     */
+    synchronized long get(long number) {
+        int page = (int) (number >>> PAGE_BITS);
+        if (page >= pages.length || pages[page] == null) {
+            return -1;
+        }
+        return pages[page][(int) (number & (PAGE_SIZE - 1))] - 1;
+    }
+
+    synchronized void put(long number, long nodeId) {
+        int page = (int) (number >>> PAGE_BITS);
+        if (page >= pages.length) {
+            long[][] grown = new long[Math.max(pages.length * 2, page + 1)][];
+            System.arraycopy(pages, 0, grown, 0, pages.length);
+            pages = grown;
+        }
+        if (pages[page] == null) {
+            pages[page] = new long[PAGE_SIZE];
+        }
+        pages[page][(int) (number & (PAGE_SIZE - 1))] = nodeId + 1;
+    }
+}
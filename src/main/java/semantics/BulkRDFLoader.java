@@ -0,0 +1,85 @@
+package semantics;
+
+import org.neo4j.logging.FormattedLogProvider;
+import org.neo4j.logging.Log;
+import org.neo4j.unsafe.batchinsert.BatchInserter;
+import org.neo4j.unsafe.batchinsert.BatchInserters;
+import org.openrdf.rio.RDFFormat;
+import org.openrdf.rio.RDFParser;
+import org.openrdf.rio.Rio;
+
+import java.io.BufferedInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URL;
+
+/**
+ * Offline initial load of an RDF document into an empty store, for dumps too large for importRDF.
+ * The database must be stopped; the store is written directly through Neo4j's batch inserter,
+ * applying the same mapping as importRDF (URI shortening, types as labels, literals as properties).
+ *
+ * Usage, with the Neo4j lib directory and this plugin on the classpath:
+ * <pre>
+ * java semantics.BulkRDFLoader &lt;storeDir&gt; &lt;url&gt; &lt;format&gt; [shorten] [typesToLabels] [batchSize]
+ * </pre>
+ * Every URI of the document is held in memory until the load ends, size the heap for about 30 bytes plus the
+ * length of the URI per resource.
+ */
+public class BulkRDFLoader {
+
+    public static void main(String[] args) throws Exception {
+        if (args.length < 3) {
+            System.err.println("Usage: BulkRDFLoader <storeDir> <url> <format> [shorten] [typesToLabels] [batchSize]");
+            System.exit(1);
+        }
+        File storeDir = new File(args[0]);
+        boolean shortenUrls = args.length <= 3 || Boolean.parseBoolean(args[3]);
+        boolean typesToLabels = args.length <= 4 || Boolean.parseBoolean(args[4]);
+        long batchSize = (args.length > 5 ? Long.parseLong(args[5]) : 100000);
+        Log log = FormattedLogProvider.toOutputStream(System.out).getLog(BulkRDFLoader.class);
+
+        long start = System.currentTimeMillis();
+        long triples = load(storeDir, new URL(args[1]), getFormat(args[2]), shortenUrls, typesToLabels, batchSize, log);
+        log.info("Bulk load of " + triples + " triples finished in " + (System.currentTimeMillis() - start) + "ms");
+    }
+
+    static long load(File storeDir, URL documentUrl, RDFFormat format, boolean shortenUrls, boolean typesToLabels,
+                     long batchSize, Log log) throws IOException {
+        if (new File(storeDir, "neostore").exists()) {
+            throw new IOException("Bulk load requires an empty store, found an existing one in " + storeDir);
+        }
+        BatchInserter inserter = BatchInserters.inserter(storeDir);
+        ImportSymbols symbols = new ImportSymbols(new NamespacePrefixes(), shortenUrls);
+        BatchInserterSink sink = new BatchInserterSink(inserter, symbols);
+        DirectStatementLoader statementLoader = new DirectStatementLoader(null, CommitPolicy.fixed(batchSize),
+                symbols, typesToLabels, sink, log) {
+            @Override
+            protected void getExistingNamespaces() {
+                // the store is empty
+            }
+
+            @Override
+            protected void addNamespaceNode() {
+                sink.writeNamespaces(getNamespaces());
+            }
+        };
+        try (InputStream inputStream = new BufferedInputStream(documentUrl.openStream())) {
+            RDFParser rdfParser = Rio.createParser(format);
+            rdfParser.setRDFHandler(statementLoader);
+            rdfParser.parse(inputStream, documentUrl.toString());
+        } finally {
+            sink.shutdown();
+        }
+        log.info("Created " + sink.getNodeCount() + " resources");
+        return statementLoader.getIngestedTriples();
+    }
+
+    private static RDFFormat getFormat(String format) {
+        for (RDFFormat parser : RDFImport.availableParsers) {
+            if (parser.getName().equals(format))
+                return parser;
+        }
+        throw new IllegalArgumentException("Unrecognized serialization format: " + format);
+    }
+}
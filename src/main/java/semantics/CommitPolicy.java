@@ -0,0 +1,47 @@
+package semantics;
+
+import org.neo4j.logging.Log;
+
+/**
+ * Decides when the batch being filled by a {@link DirectStatementLoader} is handed over for commit.
+ */
+interface CommitPolicy {
+
+    /**
+     * Called on the parser thread after every triple.
+     */
+    boolean isFull(StatementBatch batch);
+
+    /**
+     * Called once the batch has been committed, possibly from a writer thread.
+     */
+    void committed(StatementBatch batch, long commitMillis);
+
+    /**
+     * The policy selected by the import settings: adaptive, starting from {@code commitSize}, or fixed.
+     */
+    static CommitPolicy forConfig(ImportConfig config, long commitSize, Log log) {
+        long initialSize = (commitSize > 0 ? commitSize : 5000);
+        if (config.isAdaptiveCommit()) {
+            return new AdaptiveCommitPolicy(initialSize, config.getMaxBatchHeapBytes(),
+                    config.getTargetCommitMillis(), log);
+        }
+        return fixed(initialSize);
+    }
+
+    /**
+     * Commits every {@code commitSize} triples, whatever the batch holds.
+     */
+    static CommitPolicy fixed(long commitSize) {
+        return new CommitPolicy() {
+            @Override
+            public boolean isFull(StatementBatch batch) {
+                return batch.getTriples() >= commitSize;
+            }
+
+            @Override
+            public void committed(StatementBatch batch, long commitMillis) {
+            }
+        };
+    }
+}
@@ -0,0 +1,80 @@
+package semantics;
+
+import org.openrdf.model.BNode;
+import org.openrdf.model.impl.SimpleValueFactory;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Value factory numbering the blank nodes of one import from 0, for {@code blankNodes: 'compact'}. The number
+ * travels with the blank node through the batches and is resolved to a node id by the import's
+ * {@link BlankNodeIds}, so blank nodes never get a uri, never enter the :Resource(uri) index and are never
+ * looked up in it. Labels are numbered once for the whole document, parsers using this factory must preserve
+ * blank node ids ({@link org.openrdf.rio.helpers.BasicParserSettings#PRESERVE_BNODE_IDS}).
+ */
+class CompactBNodeFactory extends SimpleValueFactory {
+
+    private final AtomicLong nextNumber = new AtomicLong();
+    private final Map<String, NumberedBNode> labelled = new ConcurrentHashMap<>();
+
+    /**
+     * A labelled blank node, _:label in the document.
+     */
+    @Override
+    public BNode createBNode(String nodeID) {
+        return labelled.computeIfAbsent(nodeID, label -> new NumberedBNode(nextNumber.getAndIncrement()));
+    }
+
+    /**
+     * An anonymous blank node.
+     */
+    @Override
+    public BNode createBNode() {
+        return new NumberedBNode(nextNumber.getAndIncrement());
+    }
+
+    /**
+     * A blank node known by its number in the import.
+     */
+    static final class NumberedBNode implements BNode {
+
+        private static final long serialVersionUID = 1L;
+
+        private final long number;
+
+        NumberedBNode(long number) {
+            this.number = number;
+        }
+
+        long getNumber() {
+            return number;
+        }
+
+        @Override
+        public String getID() {
+            return "b" + number;
+        }
+
+        @Override
+        public String stringValue() {
+            return getID();
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            return o instanceof BNode && getID().equals(((BNode) o).getID());
+        }
+
+        @Override
+        public int hashCode() {
+            return getID().hashCode();
+        }
+
+        @Override
+        public String toString() {
+            return "_:" + getID();
+        }
+    }
+}
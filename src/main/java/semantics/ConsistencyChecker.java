@@ -1,13 +1,10 @@
 package semantics;
-import org.neo4j.graphdb.GraphDatabaseService;
-import org.neo4j.graphdb.Result;
+import org.neo4j.kernel.internal.GraphDatabaseAPI;
 import org.neo4j.procedure.Context;
+import org.neo4j.procedure.Name;
 import org.neo4j.procedure.Procedure;
 
-import java.util.HashMap;
-import java.util.HashSet;
 import java.util.Map;
-import java.util.Set;
 import java.util.stream.Stream;
 
 /**
@@ -15,87 +12,24 @@ import java.util.stream.Stream;
  */
 public class ConsistencyChecker {
     @Context
-    public GraphDatabaseService db;
-
+    public GraphDatabaseAPI db;
+
+    /**
+     * Checks every node against the domains of the datatype and object properties of the ontology in the graph. The
+     * rules are read once, then the nodes are scanned in parallel, {@code parallelism} threads (the number of
+     * processors by default) each reading ranges of node ids, and every node is tested against all the rules of its
+     * properties and relationships in one pass. Violations are returned as they are found.
+     */
     @Procedure
-    public Stream<ConsistencyViolation> runConsistencyChecks() {
-
-        Result dp_d = check_DP_D();
-
-        return dp_d.stream().map(ConsistencyViolation::new);
-
-    }
-
-    private Result check_DP_D() {
-        Result cc1 = db.execute("MATCH (n:Class)<-[:DOMAIN]-(p:DatatypeProperty) \n" +
-                "RETURN DISTINCT n.uri as classUri, n.label as classLabel, p.uri as prop, p.label as propLabel");
-
-        Result detectedConsistencyViolations = null;
-        Map<String,Set<String>> propLabelPairs = new HashMap<>();
-        while (cc1.hasNext()){
-            Map<String, Object> record = cc1.next();
-            if(propLabelPairs.containsKey(record.get("propLabel"))){
-                propLabelPairs.get(record.get("propLabel")).add((String) record.get("classLabel"));
-            }else {
-                Set<String> labels = new HashSet<>();
-                labels.add((String) record.get("classLabel"));
-                propLabelPairs.put((String) record.get("propLabel"), labels);
-            }
+    public Stream<ConsistencyViolation> runConsistencyChecks(@Name(value = "props", defaultValue = "{}")
+                                                                     Map<String, Object> props) {
+        DomainRules rules = DomainRules.load(db);
+        if (rules.isEmpty()) {
+            return Stream.empty();
         }
-        Set<String> props = propLabelPairs.keySet();
-        StringBuffer sb = new StringBuffer();
-        sb.append("MATCH (x) WHERE ");
-        for (String prop : props) {
-            sb.append(" exists(x." + prop + ") AND (");
-            Set<String> labels = propLabelPairs.get(prop);
-            boolean first = true;
-            for(String label : labels){
-                if(!first) sb.append(" OR ");
-                sb.append("(NOT '" + label + "' IN labels(x))");
-                first = false;
-            }
-            sb.append(") RETURN id(x) as nodeUID, 'DPD' as checkFailed , " +
-                    "'Node labels [' + reduce(s = '', l IN Labels(x) | s + ' ' + l)  + '] should include " +
-                    labels + "' as extraInfo");
-            detectedConsistencyViolations = db.execute(sb.toString());
-        }
-        return detectedConsistencyViolations;
-    }
-
-    private Result check_OP_D() {
-        Result cc1 = db.execute("MATCH (n:Class)<-[:DOMAIN]-(p:DatatypeProperty) \n" +
-                "RETURN DISTINCT n.uri as classUri, n.label as classLabel, p.uri as prop, p.label as propLabel");
-
-        Result detectedConsistencyViolations = null;
-        Map<String,Set<String>> propLabelPairs = new HashMap<>();
-        while (cc1.hasNext()){
-            Map<String, Object> record = cc1.next();
-            if(propLabelPairs.containsKey(record.get("propLabel"))){
-                propLabelPairs.get(record.get("propLabel")).add((String) record.get("classLabel"));
-            }else {
-                Set<String> labels = new HashSet<>();
-                labels.add((String) record.get("classLabel"));
-                propLabelPairs.put((String) record.get("propLabel"), labels);
-            }
-        }
-        Set<String> props = propLabelPairs.keySet();
-        StringBuffer sb = new StringBuffer();
-        sb.append("MATCH (x) WHERE ");
-        for (String prop : props) {
-            sb.append(" exists(x." + prop + ") AND (");
-            Set<String> labels = propLabelPairs.get(prop);
-            boolean first = true;
-            for(String label : labels){
-                if(!first) sb.append(" OR ");
-                sb.append("(NOT '" + label + "' IN labels(x))");
-                first = false;
-            }
-            sb.append(") RETURN id(x) as nodeUID, 'DPD' as checkFailed , " +
-                    "'Node labels [' + reduce(s = '', l IN Labels(x) | s + ' ' + l)  + '] should include " +
-                    labels + "' as extraInfo");
-            detectedConsistencyViolations = db.execute(sb.toString());
-        }
-        return detectedConsistencyViolations;
+        int parallelism = (props.containsKey(ImportConfig.PARALLELISM) ? new ImportConfig(props).getParallelism() :
+                Runtime.getRuntime().availableProcessors());
+        return NodeScan.scan(db, parallelism, rules::check);
     }
 
     public static class ConsistencyViolation
@@ -104,12 +38,11 @@ public class ConsistencyChecker {
         public String checkFailed;
         public long nodeId;
 
-        public ConsistencyViolation( Map<String, Object> record)
+        public ConsistencyViolation(long nodeId, String checkFailed, String extraInfo)
         {
-            this.nodeId = (long) record.get("nodeUID");
-            this.checkFailed = (String) record.get("checkFailed");
-            this.extraInfo = (String) record.get("extraInfo");
+            this.nodeId = nodeId;
+            this.checkFailed = checkFailed;
+            this.extraInfo = extraInfo;
         }
     }
 }
-
@@ -1,9 +1,9 @@
 package semantics;
-import apoc.util.Util;
 import org.neo4j.graphdb.*;
 import org.neo4j.kernel.internal.GraphDatabaseAPI;
 import org.neo4j.logging.Log;
 import org.openrdf.model.*;
+import org.openrdf.model.datatypes.XMLDatatypeUtil;
 import org.openrdf.model.Resource;
 import org.openrdf.model.vocabulary.RDF;
 import org.openrdf.model.vocabulary.XMLSchema;
@@ -11,57 +11,89 @@ import org.openrdf.rio.RDFHandler;
 import org.openrdf.rio.RDFHandlerException;
 
 import java.util.*;
-import java.util.concurrent.Callable;
 
 /**
  * Created by CPR3 on 3/7/2017.
  */
-class DirectStatementLoader implements RDFHandler, Callable<Integer> {
+class DirectStatementLoader implements RDFHandler {
+
+    // open batches of graphs whose statements are interleaved, each up to the commit size
+    static final int MAX_OPEN_GRAPHS = 100;
 
-    private final boolean shortenUris;
-    private int ingestedTriples = 0;
     private int triplesParsed = 0;
+    private long triplesToSkip = 0;
     private GraphDatabaseService graphdb;
-    private long commitFreq;
-    private Map<String,Map<String,Object>> resourceProps = new HashMap<>();
-    private Map<String,Set<String>> resourceLabels = new HashMap<>();
-    private Set<Statement> statements = new HashSet<>();
-    private Map<String,String> namespaces =  new HashMap<>();
+    private final CommitPolicy commitPolicy;
+    // the open batch of each graph, in the order they were opened
+    private final Map<Long, StatementBatch> batches = new LinkedHashMap<>();
+    private final Set<Long> graphsWithAdditions = new HashSet<>();
+    private boolean documentOrder = false;
+    private final StatementBatchSink sink;
+    private final ImportSymbols symbols;
+    private final NamespacePrefixes namespaces;
     private final boolean labellise;
+    private NamedGraphs namedGraphs = null;
+    private String targetGraph = null;
+    private String skolemBase = null;
     Log log;
 
     public DirectStatementLoader(GraphDatabaseService db, long batchSize, boolean shortenUrls, boolean typesToLabels, Log l) {
+        this(db, CommitPolicy.fixed(batchSize), new ImportSymbols(new NamespacePrefixes(), shortenUrls), typesToLabels, l);
+    }
+
+    private DirectStatementLoader(GraphDatabaseService db, CommitPolicy policy, ImportSymbols importSymbols,
+                                  boolean typesToLabels, Log l) {
+        this(db, policy, importSymbols, typesToLabels, new GraphBatchCommitter((GraphDatabaseAPI) db, 0, 0,
+                new UriNodeCache(0), policy, importSymbols, new ImportMetrics(0, null, new UriNodeCache(0)), null, l), l);
+    }
+
+    public DirectStatementLoader(GraphDatabaseService db, long batchSize, boolean shortenUrls, boolean typesToLabels,
+                                 StatementBatchSink batchSink, Log l) {
+        this(db, CommitPolicy.fixed(batchSize), shortenUrls, typesToLabels, batchSink, l);
+    }
+
+    public DirectStatementLoader(GraphDatabaseService db, CommitPolicy policy, boolean shortenUrls,
+                                 boolean typesToLabels, StatementBatchSink batchSink, Log l) {
+        this(db, policy, new ImportSymbols(new NamespacePrefixes(), shortenUrls), typesToLabels, batchSink, l);
+    }
+
+    public DirectStatementLoader(GraphDatabaseService db, CommitPolicy policy, ImportSymbols importSymbols,
+                                 boolean typesToLabels, StatementBatchSink batchSink, Log l) {
         graphdb = db;
-        commitFreq = batchSize;
-        shortenUris = shortenUrls;
+        symbols = importSymbols;
+        namespaces = importSymbols.getPrefixes();
+        commitPolicy = policy;
         labellise =  typesToLabels;
+        sink = batchSink;
         log = l;
     }
 
     @Override
     public void startRDF() throws RDFHandlerException {
         getExistingNamespaces();
-        log.info("Found " + namespaces.size() + " namespaces in the DB: " + namespaces);
+        log.info("Found " + namespaces.size() + " namespaces in the DB: " + namespaces.asMap());
     }
 
-    private void getExistingNamespaces() {
-        Result nslist = graphdb.execute("MATCH (n:NamespacePrefixDefinition) \n" +
-                "UNWIND keys(n) AS namespace\n" +
-                "RETURN namespace, n[namespace] as prefix");
-        while (nslist.hasNext()){
-            Map<String, Object> ns = nslist.next();
-            namespaces.put((String)ns.get("namespace"),(String)ns.get("prefix"));
-        }
+    protected void getExistingNamespaces() {
+        namespaces.load(graphdb);
     }
 
     @Override
     public void endRDF() throws RDFHandlerException {
-        Util.inTx((GraphDatabaseAPI) graphdb, this);
-        ingestedTriples += triplesParsed;
+        flush();
+        sink.close();
         addNamespaceNode();
 
         log.info("Successfully committed " + triplesParsed + " triples. " +
-                "Total number of triples imported is " + ingestedTriples);
+                "Total number of triples imported is " + getIngestedTriples());
+    }
+
+    /**
+     * Stops the sink without waiting for the end of the document, used when parsing fails half way.
+     * Batches already handed over are still committed.
+     */
+    void close() throws RDFHandlerException {
+        sink.close();
     }
 
     @Override
@@ -69,175 +101,228 @@ class DirectStatementLoader implements RDFHandler, Callable<Integer> {
 
     }
 
-    private void addNamespaceNode() {
-        Map<String, Object> params = new HashMap<>();
-        params.put("props", namespaces);
-        graphdb.execute("MERGE (n:NamespacePrefixDefinition) SET n+={props}", params);
+    protected void addNamespaceNode() {
+        namespaces.save(graphdb);
     }
 
-    private void addStatement(Statement st) {
-        statements.add(st);
+    @Override
+    public void handleStatement(Statement st) throws RDFHandlerException {
+        if (triplesToSkip > 0) {
+            triplesToSkip--;
+            return;
+        }
+        StatementBatch batch = batchFor(st);
+        map(st, batch);
+        graphsWithAdditions.add(batch.getGraph());
+        counted(batch);
     }
 
-    private void initialise(String subjectUri) {
-        initialiseProps(subjectUri);
-        initialiseLabels(subjectUri);
+    /**
+     * Removes the statement from the graph, for delta imports. A batch removes its deletions before adding its
+     * statements, so a deletion following statements to add is left to the next batch.
+     */
+    void handleDeletion(Statement st) throws RDFHandlerException {
+        StatementBatch batch = batchFor(st);
+        if (graphsWithAdditions.contains(batch.getGraph())) {
+            flush(batch);
+            batch = batchFor(st);
+        }
+        StatementBatch deletions = batch.deletions();
+        map(st, deletions);
+        deletions.countTriple();
+        counted(batch);
     }
 
-    private Set<String> initialiseLabels(String subjectUri) {
-        Set<String> labels =  new HashSet<>();
-        labels.add("Resource");
-        resourceLabels.put(subjectUri, labels);
-        return labels;
+    /**
+     * Loads the statements of each named graph into the resources of that graph, see {@link NamedGraphs}, instead
+     * of flattening every graph into the default graph.
+     *
+     * @param intoGraph the graph receiving every statement of the document whatever its graph, or null
+     */
+    void useNamedGraphs(NamedGraphs graphs, String intoGraph) {
+        namedGraphs = graphs;
+        targetGraph = intoGraph;
     }
 
-    private HashMap<String, Object> initialiseProps(String subjectUri) {
-        HashMap<String, Object> props = new HashMap<>();
-        props.put("uri", subjectUri);
-        resourceProps.put(subjectUri,props);
-        return props;
+    /**
+     * Hands the batches to the sink in document order: the batch of a graph is flushed as soon as a statement of
+     * another graph comes, instead of being kept open until it is full. Needed by checkpoints, which count the
+     * committed statements from the start of the document. A document that does not group the statements of a
+     * graph then ends up in small batches.
+     */
+    void keepDocumentOrder() {
+        documentOrder = true;
     }
 
-    private void setProp(String subjectUri, String propName, String propValue){
-        Map<String, Object> props;
-
-        if(!resourceProps.containsKey(subjectUri)){
-            props = initialiseProps(subjectUri);
-            initialiseLabels(subjectUri);
-        } else {
-            props = resourceProps.get(subjectUri);
-        }
-        // we are overwriting multivalued properties.
-        // An array should be created. Check that all data types are compatible.
-        props.put(propName, propValue);
+    /**
+     * Replaces blank nodes with IRIs made of {@code base} and the blank node id. The ids only stay the same from one
+     * import of the document to the next when the parser names blank nodes with a {@link DocumentBNodeFactory}.
+     */
+    void skolemizeBlankNodes(String base) {
+        skolemBase = base;
     }
 
-    private void setLabel(String subjectUri, String label){
-        Set<String> labels;
-
-        if(!resourceLabels.containsKey(subjectUri)){
-            initialiseProps(subjectUri);
-            labels = initialiseLabels(subjectUri);
-        } else {
-            labels = resourceLabels.get(subjectUri);
+    /**
+     * @return the open batch of the graph of the statement. A graph whose statements are interleaved with those of
+     * other graphs keeps its batch open until it is full, unless the loader keeps the document order. When
+     * {@link #MAX_OPEN_GRAPHS} batches are open, the batch opened first is flushed to make room.
+     */
+    private StatementBatch batchFor(Statement st) throws RDFHandlerException {
+        long graph = NamedGraphs.DEFAULT_GRAPH;
+        if (namedGraphs != null) {
+            Resource context = st.getContext();
+            String graphUri = (targetGraph != null ? targetGraph : context != null ? context.stringValue() : null);
+            if (graphUri != null) {
+                graph = namedGraphs.getId(graphUri);
+            }
         }
-
-        labels.add(label);
-    }
-
-    private void addResource(String subjectUri){
-
-        if(!resourceLabels.containsKey(subjectUri)){
-            initialise(subjectUri);
+        StatementBatch batch = batches.get(graph);
+        if (batch == null) {
+            if (documentOrder || batches.size() >= MAX_OPEN_GRAPHS) {
+                Iterator<StatementBatch> open = batches.values().iterator();
+                if (open.hasNext()) {
+                    flush(open.next());
+                }
+            }
+            batch = new StatementBatch(graph);
+            batches.put(graph, batch);
         }
+        return batch;
     }
 
-    @Override
-    public void handleStatement(Statement st) {
+    private void map(Statement st, StatementBatch target) {
         IRI predicate = st.getPredicate();
         Resource subject = st.getSubject(); //includes blank nodes
         Value object = st.getObject();
-        String cypher;
         if (object instanceof Literal) {
-            setProp(subject.stringValue().replace("'", "\'"), shorten(predicate), getObjectValue((Literal)object));
+            target.setProp(resource(target, subject), shorten(predicate), getObjectValue((Literal)object));
         } else if (labellise && predicate.equals(RDF.TYPE) && !(object instanceof BNode)) {
-            setLabel(subject.stringValue().replace("'", "\'"),shorten((IRI)object));
+            target.setLabel(resource(target, subject),shorten((IRI)object));
 
         } else {
-            addResource(subject.stringValue().replace("'", "\'"));
-            addResource(object.stringValue().replace("'", "\'"));
-            addStatement(st);
-        }
-        triplesParsed++;
-        if (triplesParsed % commitFreq == 0) {
-            Util.inTx((GraphDatabaseAPI) graphdb, this);
-            ingestedTriples += triplesParsed;
-            log.info("Successful periodic commit of " + commitFreq + " triples. " +
-                    ingestedTriples + " triples ingested so far...");
-            triplesParsed = 0;
+            target.addEdge(resource(target, subject), shorten(predicate), resource(target, (Resource) object));
         }
     }
 
-    @Override
-    public void handleComment(String comment) throws RDFHandlerException {
-
-    }
-
-    private String shorten(IRI iri) {
-        if (shortenUris) {
-            String localName = iri.getLocalName();
-            String prefix = getPrefix(iri.getNamespace());
-            return prefix + "_" + localName;
-        } else
-        {
-            return iri.stringValue();
+    /**
+     * @return the id in the batch of an IRI, of a blank node numbered in the import, or of a blank node named by
+     * its label or by its skolem IRI
+     */
+    private int resource(StatementBatch target, Resource value) {
+        if (value instanceof CompactBNodeFactory.NumberedBNode) {
+            return target.addBlankNode(((CompactBNodeFactory.NumberedBNode) value).getNumber());
+        } else if (skolemBase != null && value instanceof BNode) {
+            String id = value.stringValue();
+            return target.addResource(skolemBase + (id.startsWith("genid-") ? id.substring(6) : id));
         }
+        return target.addResource(value.stringValue().replace("'", "\'"));
     }
 
-    private String getPrefix(String namespace) {
-        if (namespaces.containsKey(namespace)){
-            return namespaces.get(namespace);
-        } else{
-            namespaces.put(namespace, createPrefix(namespace));
-            return namespaces.get(namespace);
+    private void counted(StatementBatch batch) throws RDFHandlerException {
+        batch.countTriple();
+        triplesParsed++;
+        if (commitPolicy.isFull(batch)) {
+            flush(batch);
+            triplesParsed = 0;
         }
     }
 
-    private String createPrefix(String namespace) {
-        return "ns" + namespaces.size();
+    /**
+     * Drops the next statements of the document, typically committed by an earlier run of the import.
+     */
+    void skip(long statements) {
+        triplesToSkip = statements;
     }
 
-    private String getObjectValue(Literal object) {
-        IRI datatype = object.getDatatype();
-        if (datatype.equals(XMLSchema.DECIMAL) || datatype.equals(XMLSchema.DOUBLE) ||
-                datatype.equals(XMLSchema.FLOAT) || datatype.equals(XMLSchema.INT) ||
-                datatype.equals(XMLSchema.INTEGER) || datatype.equals(XMLSchema.LONG)) {
-            return object.stringValue();
-        } else if (datatype.equals(XMLSchema.BOOLEAN)) {
-            return object.stringValue();
-        } else {
-            return object.stringValue().replace("\\", "\\\\").replace("'", "\\'");
-            //not sure this is the best way to 'clean' the property value
+    /**
+     * Hands the open batches to the sink.
+     */
+    void flush() throws RDFHandlerException {
+        for (StatementBatch batch : new ArrayList<>(batches.values())) {
+            flush(batch);
+        }
+        if (batches.isEmpty()) {
+            // the sinks ignore an empty batch, a chunk loader marks the end of its chunk on its last batch
+            sink.accept(new StatementBatch());
         }
     }
 
-    public int getIngestedTriples() {
-        return ingestedTriples;
+    private void flush(StatementBatch batch) throws RDFHandlerException {
+        batches.remove(batch.getGraph());
+        graphsWithAdditions.remove(batch.getGraph());
+        sink.accept(batch);
     }
-    public Map<String,String> getNamespaces() {
 
-        return namespaces;
+    /**
+     * Hands a batch built elsewhere, typically by a {@link #forChunk} loader, to this loader's sink.
+     */
+    void commit(StatementBatch chunkBatch) throws RDFHandlerException {
+        sink.accept(chunkBatch);
     }
 
+    /**
+     * A loader for one part of the document, parsed concurrently with the others. It applies the same
+     * mapping and commit policy and shares this loader's symbols, namespace prefixes and named graphs, but sends
+     * its batches to {@code chunkSink} and leaves reading and saving the namespace definitions to this loader.
+     */
+    DirectStatementLoader forChunk(StatementBatchSink chunkSink) {
+        DirectStatementLoader chunkLoader = new DirectStatementLoader(graphdb, commitPolicy, symbols, labellise,
+                chunkSink, log) {
+            @Override
+            protected void getExistingNamespaces() {
+            }
+
+            @Override
+            protected void addNamespaceNode() {
+            }
+
+            @Override
+            public void endRDF() throws RDFHandlerException {
+                flush();
+            }
+        };
+        chunkLoader.useNamedGraphs(namedGraphs, targetGraph);
+        chunkLoader.skolemizeBlankNodes(skolemBase);
+        chunkLoader.documentOrder = documentOrder;
+        return chunkLoader;
+    }
 
     @Override
-    public Integer call() throws Exception {
-        int count = 0;
-        Map<String,Node> nodes = new HashMap<>();
-        for(String uri:resourceLabels.keySet()){
-            final Node node = (graphdb.findNode(Label.label("Resource"), "uri", uri)==null?
-                    graphdb.createNode(Label.label("Resource")):
-                    graphdb.findNode(Label.label("Resource"), "uri", uri));
-            resourceLabels.get(uri).forEach( l -> node.addLabel(Label.label(l)));
-            resourceProps.get(uri).forEach(node::setProperty);
-            nodes.put(uri, node);
-        }
+    public void handleComment(String comment) throws RDFHandlerException {
 
-        for(Statement st:statements){
-            nodes.get(st.getSubject().stringValue().replace("'", "\'")).createRelationshipTo(
-                    nodes.get(st.getObject().stringValue().replace("'", "\'")),
-                    RelationshipType.withName(shorten(st.getPredicate())));
-        }
+    }
 
-        //TODO do we clear all? keep cache?
-        statements.clear();
-        nodes.clear();
-        resourceLabels.clear();
-        resourceProps.clear();
+    private String shorten(IRI iri) {
+        return symbols.shorten(iri);
+    }
 
-        //TODO what to return here? number of nodes and rels?
-        return 0;
+    /**
+     * Maps a literal to a native property value: a long for xsd:integer and its derived types, a double for
+     * the other numeric types and a boolean for xsd:boolean. Lexically invalid or out of range numbers, and all
+     * other datatypes (dates included, Neo4j has no temporal property type), are stored as strings.
+     */
+    static Object getObjectValue(Literal object) {
+        IRI datatype = object.getDatatype();
+        try {
+            if (XMLDatatypeUtil.isIntegerDatatype(datatype)) {
+                return object.longValue();
+            } else if (XMLDatatypeUtil.isDecimalDatatype(datatype) || XMLDatatypeUtil.isFloatingPointDatatype(datatype)) {
+                return object.doubleValue();
+            } else if (datatype.equals(XMLSchema.BOOLEAN)) {
+                return object.booleanValue();
+            }
+        } catch (IllegalArgumentException e) {
+            // not a valid lexical form for its datatype, kept as a string
+        }
+        return object.stringValue().replace("\\", "\\\\").replace("'", "\\'");
+        //not sure this is the best way to 'clean' the property value
     }
 
+    public long getIngestedTriples() {
+        return sink.getCommittedTriples();
+    }
+    public Map<String,String> getNamespaces() {
 
+        return namespaces.asMap();
+    }
 }
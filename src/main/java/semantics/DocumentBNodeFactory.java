@@ -0,0 +1,41 @@
+package semantics;
+
+import org.openrdf.model.BNode;
+import org.openrdf.model.impl.SimpleValueFactory;
+
+import java.nio.charset.StandardCharsets;
+import java.util.UUID;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Value factory giving blank nodes ids that only depend on the document and on their position in it.
+ * Rio prefixes blank node labels with a random id on every parse, so a document parsed twice, or in
+ * several parts, would name the same blank node differently each time. Parsers using this factory must
+ * preserve blank node ids ({@link org.openrdf.rio.helpers.BasicParserSettings#PRESERVE_BNODE_IDS}).
+ */
+class DocumentBNodeFactory extends SimpleValueFactory {
+
+    private final String documentId;
+    private final AtomicLong nextAnonymous = new AtomicLong();
+
+    DocumentBNodeFactory(String documentUrl) {
+        documentId = "genid-" + UUID.nameUUIDFromBytes(documentUrl.getBytes(StandardCharsets.UTF_8))
+                .toString().replace("-", "");
+    }
+
+    /**
+     * A labelled blank node, _:label in the document.
+     */
+    @Override
+    public BNode createBNode(String nodeID) {
+        return super.createBNode(documentId + "-" + nodeID);
+    }
+
+    /**
+     * An anonymous blank node, numbered in document order, so only deterministic for a single parser.
+     */
+    @Override
+    public BNode createBNode() {
+        return super.createBNode(documentId + "_" + nextAnonymous.getAndIncrement());
+    }
+}
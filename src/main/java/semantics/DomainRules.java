@@ -0,0 +1,163 @@
+package semantics;
+
+import org.neo4j.graphdb.Direction;
+import org.neo4j.graphdb.GraphDatabaseService;
+import org.neo4j.graphdb.Label;
+import org.neo4j.graphdb.Node;
+import org.neo4j.graphdb.RelationshipType;
+import org.neo4j.graphdb.Result;
+import org.openrdf.model.IRI;
+import org.openrdf.model.impl.SimpleValueFactory;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.function.Consumer;
+
+/**
+ * The rdfs:domain rules of the ontology in the graph, (:Class)<-[:DOMAIN]-(:DatatypeProperty) and
+ * (:Class)<-[:DOMAIN]-(:ObjectProperty), read once and checked against one node at a time. A node with a property,
+ * or an outgoing relationship, of a property with domains must have the label of every domain class.
+ *
+ * The data can name a property or class by its rdfs:label, by its shortened prefix_localName when its namespace has
+ * a prefix, or by its full IRI, depending on how it was imported, so all three names are matched.
+ */
+class DomainRules {
+
+    static final String DATATYPE_PROPERTY_DOMAIN = "DPD";
+    static final String OBJECT_PROPERTY_DOMAIN = "OPD";
+
+    private final Map<String, Rule> propertyRules = new HashMap<>();
+    private final Map<String, Rule> relationshipRules = new HashMap<>();
+
+    /**
+     * The classes a node using the property must belong to, each class as the set of its names.
+     */
+    private static class Rule {
+        final String check;
+        final List<Set<String>> domains = new ArrayList<>();
+        final Set<String> domainNames = new TreeSet<>();
+
+        Rule(String check) {
+            this.check = check;
+        }
+
+        boolean isSatisfied(Set<String> labels) {
+            for (Set<String> domain : domains) {
+                boolean found = false;
+                for (String name : domain) {
+                    if (labels.contains(name)) {
+                        found = true;
+                        break;
+                    }
+                }
+                if (!found) {
+                    return false;
+                }
+            }
+            return true;
+        }
+    }
+
+    /**
+     * Reads the rules in the transaction of the caller.
+     */
+    static DomainRules load(GraphDatabaseService db) {
+        NamespaceRegistry.Namespaces namespaces = NamespaceRegistry.of(db).current();
+        DomainRules rules = new DomainRules();
+        Map<String, Rule> byProperty = new HashMap<>();
+        try (Result domains = db.execute("MATCH (c:Class)<-[:DOMAIN]-(p) " +
+                "WHERE p:DatatypeProperty OR p:ObjectProperty " +
+                "RETURN p.uri AS prop, p.label AS propLabel, p:DatatypeProperty AS datatype, " +
+                "c.uri AS classUri, c.label AS classLabel")) {
+            while (domains.hasNext()) {
+                Map<String, Object> record = domains.next();
+                String prop = (String) record.get("prop");
+                boolean datatype = (Boolean) record.get("datatype");
+                Rule rule = byProperty.get(prop);
+                if (rule == null) {
+                    rule = new Rule(datatype ? DATATYPE_PROPERTY_DOMAIN : OBJECT_PROPERTY_DOMAIN);
+                    byProperty.put(prop, rule);
+                    for (String name : names(prop, (String) record.get("propLabel"), namespaces)) {
+                        (datatype ? rules.propertyRules : rules.relationshipRules).put(name, rule);
+                    }
+                }
+                String classLabel = (String) record.get("classLabel");
+                rule.domains.add(names((String) record.get("classUri"), classLabel, namespaces));
+                rule.domainNames.add(classLabel != null ? classLabel : (String) record.get("classUri"));
+            }
+        }
+        return rules;
+    }
+
+    boolean isEmpty() {
+        return propertyRules.isEmpty() && relationshipRules.isEmpty();
+    }
+
+    /**
+     * Tests the node against every rule of its properties and outgoing relationships.
+     */
+    void check(Node node, Consumer<ConsistencyChecker.ConsistencyViolation> violations) {
+        Set<String> labels = null;
+        Set<Rule> failed = new HashSet<>();
+        for (String key : node.getPropertyKeys()) {
+            Rule rule = propertyRules.get(key);
+            if (rule != null) {
+                labels = (labels != null ? labels : labels(node));
+                if (!rule.isSatisfied(labels)) {
+                    failed.add(rule);
+                }
+            }
+        }
+        if (!relationshipRules.isEmpty()) {
+            for (RelationshipType type : node.getRelationshipTypes()) {
+                Rule rule = relationshipRules.get(type.name());
+                if (rule != null && node.hasRelationship(type, Direction.OUTGOING)) {
+                    labels = (labels != null ? labels : labels(node));
+                    if (!rule.isSatisfied(labels)) {
+                        failed.add(rule);
+                    }
+                }
+            }
+        }
+        for (Rule rule : failed) {
+            violations.accept(new ConsistencyChecker.ConsistencyViolation(node.getId(), rule.check,
+                    "Node labels " + new TreeSet<>(labels) + " should include " + rule.domainNames));
+        }
+    }
+
+    private static Set<String> labels(Node node) {
+        Set<String> labels = new HashSet<>();
+        for (Label label : node.getLabels()) {
+            labels.add(label.name());
+        }
+        return labels;
+    }
+
+    /**
+     * @return the names the data can give the term: its uri, its shortened name and its rdfs:label
+     */
+    private static Set<String> names(String uri, String label, NamespaceRegistry.Namespaces namespaces) {
+        Set<String> names = new HashSet<>();
+        if (uri != null) {
+            names.add(uri);
+            try {
+                IRI iri = SimpleValueFactory.getInstance().createIRI(uri);
+                String prefix = namespaces.getPrefix(iri.getNamespace());
+                if (prefix != null) {
+                    names.add(prefix + "_" + iri.getLocalName());
+                }
+            } catch (IllegalArgumentException e) {
+                // not an absolute IRI, only matched as is
+            }
+        }
+        if (label != null) {
+            names.add(label);
+        }
+        return names;
+    }
+}
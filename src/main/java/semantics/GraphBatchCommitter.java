@@ -0,0 +1,464 @@
+package semantics;
+
+import apoc.util.Util;
+import org.neo4j.graphdb.*;
+import org.neo4j.kernel.impl.core.ThreadToStatementContextBridge;
+import org.neo4j.kernel.internal.GraphDatabaseAPI;
+import org.neo4j.logging.Log;
+import org.openrdf.rio.RDFHandlerException;
+
+import java.util.*;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Writes statement batches to the graph, one transaction per batch.
+ *
+ * With no writer threads every batch is committed on the caller's behalf before {@link #accept} returns.
+ * With one or more writer threads batches are put on a bounded queue and committed in the background,
+ * so parsing of the next batch overlaps with the commit of the previous one and a full queue blocks the parser.
+ * Concurrent writers, of this committer or of committers sharing its {@link UriLockStripes}, first create the
+ * resources of their batch that do not exist yet, holding the stripes of those URIs only, so that two transactions
+ * never create the same resource twice. The batch is then written without the stripes, in parallel with the
+ * batches of the other writers, and written again when its transaction is chosen as the victim of a deadlock.
+ * The {@link ImportCheckpoint} of a checkpointed import is updated in the transaction of each batch.
+ * The deletions of a batch, for delta imports, are applied in its transaction before its statements are added.
+ */
+class GraphBatchCommitter implements StatementBatchSink {
+
+    private static final StatementBatch END_OF_INPUT = new StatementBatch();
+    private static final Label RESOURCE = Label.label("Resource");
+    private static final Label BNODE = Label.label("BNode");
+    private static final int MAX_ATTEMPTS = 10;
+
+    private final GraphDatabaseAPI graphdb;
+    private final Log log;
+    private final BlockingQueue<StatementBatch> queue;
+    private final List<Thread> writers = new ArrayList<>();
+    private final UriLockStripes stripes;
+    private final ThreadToStatementContextBridge transactions;
+    private final AtomicLong committedTriples = new AtomicLong();
+    private final UriNodeCache nodeCache;
+    private final BlankNodeIds blankNodeIds = new BlankNodeIds();
+    private final CommitPolicy commitPolicy;
+    private final ImportSymbols symbols;
+    private final ImportMetrics metrics;
+    private final ImportCheckpoint checkpoint;
+    private volatile Throwable failure;
+    private boolean closed = false;
+
+    GraphBatchCommitter(GraphDatabaseAPI db, int writerThreads, int queueCapacity, UriNodeCache cache,
+                        CommitPolicy policy, ImportSymbols importSymbols, ImportMetrics importMetrics,
+                        ImportCheckpoint importCheckpoint, Log l) {
+        this(db, writerThreads, queueCapacity, cache, policy, importSymbols, importMetrics, importCheckpoint,
+                (writerThreads > 1 ? new UriLockStripes() : null), l);
+    }
+
+    /**
+     * @param uriLocks stripes shared with the other committers writing concurrently, null when there are none
+     */
+    GraphBatchCommitter(GraphDatabaseAPI db, int writerThreads, int queueCapacity, UriNodeCache cache,
+                        CommitPolicy policy, ImportSymbols importSymbols, ImportMetrics importMetrics,
+                        ImportCheckpoint importCheckpoint, UriLockStripes uriLocks, Log l) {
+        graphdb = db;
+        stripes = uriLocks;
+        transactions = db.getDependencyResolver().resolveDependency(ThreadToStatementContextBridge.class);
+        nodeCache = cache;
+        commitPolicy = policy;
+        symbols = importSymbols;
+        metrics = importMetrics;
+        checkpoint = importCheckpoint;
+        log = l;
+        if (writerThreads > 0) {
+            queue = new ArrayBlockingQueue<>(Math.max(queueCapacity, 1));
+            for (int i = 0; i < writerThreads; i++) {
+                Thread writer = new Thread(this::drain, "rdf-import-writer-" + i);
+                writer.setDaemon(true);
+                writers.add(writer);
+                writer.start();
+            }
+        } else {
+            queue = null;
+        }
+    }
+
+    @Override
+    public void accept(StatementBatch batch) throws RDFHandlerException {
+        if (batch.isEmpty()) {
+            return;
+        }
+        if (metrics.isCancelled()) {
+            throw new RDFHandlerException("The import was cancelled");
+        }
+        long handOverStart = System.nanoTime();
+        try {
+            if (queue == null) {
+                long start = System.currentTimeMillis();
+                commit(batch);
+                committed(batch, System.currentTimeMillis() - start);
+                return;
+            }
+            checkFailure();
+            try {
+                queue.put(batch);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new RDFHandlerException("Interrupted while waiting for the import writers", e);
+            }
+        } finally {
+            metrics.batchParsed(batch, System.nanoTime() - handOverStart);
+        }
+    }
+
+    @Override
+    public void close() throws RDFHandlerException {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        if (queue != null) {
+            try {
+                for (int i = 0; i < writers.size(); i++) {
+                    queue.put(END_OF_INPUT);
+                }
+                for (Thread writer : writers) {
+                    writer.join();
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new RDFHandlerException("Interrupted while waiting for the import writers", e);
+            }
+        }
+        checkFailure();
+    }
+
+    @Override
+    public long getCommittedTriples() {
+        return committedTriples.get();
+    }
+
+    private void checkFailure() throws RDFHandlerException {
+        if (failure != null) {
+            throw new RDFHandlerException("Import writer failed: " + failure.getMessage(), failure);
+        }
+    }
+
+    private void drain() {
+        try {
+            StatementBatch batch;
+            while ((batch = queue.take()) != END_OF_INPUT) {
+                if (failure != null) {
+                    // keep draining so that the parser is never left blocked on a full queue
+                    continue;
+                }
+                try {
+                    long start = System.currentTimeMillis();
+                    commit(batch);
+                    committed(batch, System.currentTimeMillis() - start);
+                } catch (Throwable t) {
+                    log.error("Import writer failed to commit a batch of " + batch.getTriples() + " triples", t);
+                    failure = t;
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Writes the batch in a transaction of its own, creating its new resources beforehand when other writers run
+     * concurrently.
+     */
+    private void commit(StatementBatch batch) {
+        if (stripes != null) {
+            createResources(batch);
+        }
+        for (int attempt = 1; ; attempt++) {
+            Map<String, Long> createdNodes = new HashMap<>();
+            Map<Long, Long> createdBlankNodes = new HashMap<>();
+            try {
+                inTx(() -> write(batch, createdNodes, createdBlankNodes));
+            } catch (RuntimeException e) {
+                if (stripes == null || attempt == MAX_ATTEMPTS || !isTransient(e)) {
+                    throw e;
+                }
+                log.debug("Writing a batch of " + batch.getTriples() + " triples again after: " + e.getMessage());
+                continue;
+            }
+            // only published once committed, other writers trust cached ids without checking the index
+            publish(createdNodes, createdBlankNodes);
+            if (checkpoint != null) {
+                checkpoint.committed();
+            }
+            return;
+        }
+    }
+
+    /**
+     * Creates the resources of the batch found neither in the cache nor in the index, with their uri and graph
+     * only, holding the stripes of their URIs until the nodes are committed and published.
+     */
+    private void createResources(StatementBatch batch) {
+        long graph = batch.getGraph();
+        boolean[] filterGraphs = new boolean[1];
+        BitSet missing = new BitSet(batch.getResourceCount());
+        inTx(() -> {
+            filterGraphs[0] = (graph != NamedGraphs.DEFAULT_GRAPH || NamedGraphs.exist(graphdb));
+            for (int i = 0; i < batch.getResourceCount(); i++) {
+                if ((batch.isBlankNode(i) ? findBlankNode(batch.getBlankNode(i)) :
+                        findResource(batch.getUri(i), graph, filterGraphs[0])) == null) {
+                    missing.set(i);
+                }
+            }
+        });
+        if (missing.isEmpty()) {
+            return;
+        }
+        List<ReentrantLock> held = stripes.lock(batch, missing);
+        try {
+            Map<String, Long> createdNodes = new HashMap<>();
+            Map<Long, Long> createdBlankNodes = new HashMap<>();
+            // created by another writer while this one waited for the stripes, if found this time
+            inTx(() -> {
+                for (int i = missing.nextSetBit(0); i >= 0; i = missing.nextSetBit(i + 1)) {
+                    if (batch.isBlankNode(i)) {
+                        findOrCreateBlankNode(batch.getBlankNode(i), graph, createdBlankNodes);
+                    } else {
+                        findOrCreateResource(batch.getUri(i), graph, filterGraphs[0], createdNodes);
+                    }
+                }
+            });
+            publish(createdNodes, createdBlankNodes);
+        } finally {
+            UriLockStripes.unlock(held);
+        }
+    }
+
+    /**
+     * Runs the work in a new transaction, on another thread when this one already has a transaction, the
+     * transaction of the procedure the import runs in.
+     */
+    private void inTx(Runnable work) {
+        if (transactions.hasTransaction()) {
+            Util.inTx(graphdb, () -> {
+                work.run();
+                return null;
+            });
+            return;
+        }
+        try (Transaction tx = graphdb.beginTx()) {
+            work.run();
+            tx.success();
+        }
+    }
+
+    private void publish(Map<String, Long> createdNodes, Map<Long, Long> createdBlankNodes) {
+        nodeCache.putAll(createdNodes);
+        for (Map.Entry<Long, Long> blankNode : createdBlankNodes.entrySet()) {
+            blankNodeIds.put(blankNode.getKey(), blankNode.getValue());
+        }
+    }
+
+    /**
+     * @return whether the failure, or one of its causes, is a deadlock or another failure worth retrying
+     */
+    private static boolean isTransient(Throwable failure) {
+        for (Throwable cause = failure; cause != null; cause = cause.getCause()) {
+            if (cause instanceof TransientFailureException) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private void committed(StatementBatch batch, long commitMillis) {
+        commitPolicy.committed(batch, commitMillis);
+        metrics.batchCommitted(batch, commitMillis);
+        long total = committedTriples.addAndGet(batch.getTriples());
+        log.info("Successful periodic commit of " + batch.getTriples() + " triples. " +
+                total + " triples ingested so far...");
+    }
+
+    private void write(StatementBatch batch, Map<String, Long> createdNodes, Map<Long, Long> createdBlankNodes) {
+        long lookupStart = System.nanoTime();
+        long graph = batch.getGraph();
+        // without named graphs a uri has a single node, whose graph is not worth reading
+        boolean filterGraphs = (graph != NamedGraphs.DEFAULT_GRAPH || NamedGraphs.exist(graphdb));
+        StatementBatch deletions = (batch.hasDeletions() ? batch.deletions() : null);
+        Node[] deletedFrom = new Node[deletions != null ? deletions.getResourceCount() : 0];
+        for (int i = 0; i < deletedFrom.length; i++) {
+            deletedFrom[i] = (deletions.isBlankNode(i) ? findBlankNode(deletions.getBlankNode(i)) :
+                    findResource(deletions.getUri(i), graph, filterGraphs));
+        }
+        Node[] nodes = new Node[batch.getResourceCount()];
+        for (int i = 0; i < nodes.length; i++) {
+            nodes[i] = (batch.isBlankNode(i) ? findOrCreateBlankNode(batch.getBlankNode(i), graph, createdBlankNodes) :
+                    findOrCreateResource(batch.getUri(i), graph, filterGraphs, createdNodes));
+        }
+        metrics.lookups(System.nanoTime() - lookupStart);
+        if (deletions != null) {
+            delete(deletions, deletedFrom);
+        }
+        batch.forEachLabel((resource, label) -> nodes[resource].addLabel(symbols.label(label)));
+        batch.forEachProp((resource, key, value) ->
+                nodes[resource].setProperty(key, PropertyValues.merge(nodes[resource].getProperty(key, null), value)));
+        batch.forEachEdge((subject, object, relType) ->
+                nodes[subject].createRelationshipTo(nodes[object], symbols.relationshipType(relType)));
+        for (Node node : deletedFrom) {
+            // a resource the delta left without statements is gone, as it would be after a full reload
+            if (node != null && isBare(node)) {
+                nodeCache.remove(cacheKey((String) node.getProperty("uri"), graph));
+                node.delete();
+            }
+        }
+        if (checkpoint != null) {
+            checkpoint.record(graphdb, batch);
+        }
+    }
+
+    /**
+     * Removes the deleted labels, property values and relationships of the resources that exist. Statements about
+     * a resource that is not in the graph are ignored.
+     */
+    private void delete(StatementBatch deletions, Node[] nodes) {
+        deletions.forEachLabel((resource, label) -> {
+            if (nodes[resource] != null) {
+                nodes[resource].removeLabel(symbols.label(label));
+            }
+        });
+        deletions.forEachProp((resource, key, value) -> {
+            Node node = nodes[resource];
+            if (node == null) {
+                return;
+            }
+            Object remaining = PropertyValues.remove(node.getProperty(key, null), value);
+            if (remaining != null) {
+                node.setProperty(key, remaining);
+            } else {
+                node.removeProperty(key);
+            }
+        });
+        deletions.forEachEdge((subject, object, relType) -> {
+            if (nodes[subject] != null && nodes[object] != null) {
+                deleteRelationships(nodes[subject], nodes[object], symbols.relationshipType(relType));
+            }
+        });
+    }
+
+    /**
+     * Walks the relationships of the end with the fewest of them, a hub can have millions of the type.
+     */
+    private static void deleteRelationships(Node subject, Node object, RelationshipType type) {
+        if (subject.getDegree(type, Direction.OUTGOING) <= object.getDegree(type, Direction.INCOMING)) {
+            for (Relationship rel : subject.getRelationships(Direction.OUTGOING, type)) {
+                if (rel.getEndNode().equals(object)) {
+                    rel.delete();
+                }
+            }
+        } else {
+            for (Relationship rel : object.getRelationships(Direction.INCOMING, type)) {
+                if (rel.getStartNode().equals(subject)) {
+                    rel.delete();
+                }
+            }
+        }
+    }
+
+    /**
+     * @return true when the node is only a :Resource with its uri, and its graph
+     */
+    private static boolean isBare(Node node) {
+        if (node.hasRelationship()) {
+            return false;
+        }
+        for (Label label : node.getLabels()) {
+            if (!label.name().equals(RESOURCE.name()) && !NamedGraphs.isGraphLabel(label)) {
+                return false;
+            }
+        }
+        for (String key : node.getPropertyKeys()) {
+            if (!key.equals("uri") && !key.equals(NamedGraphs.GRAPH_PROPERTY)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private Node findOrCreateResource(String uri, long graph, boolean filterGraphs, Map<String, Long> createdNodes) {
+        Node node = findResource(uri, graph, filterGraphs);
+        if (node == null) {
+            if (graph == NamedGraphs.DEFAULT_GRAPH) {
+                node = graphdb.createNode(RESOURCE);
+            } else {
+                node = graphdb.createNode(RESOURCE, symbols.label(NamedGraphs.label(graph).name()));
+                node.setProperty(NamedGraphs.GRAPH_PROPERTY, graph);
+            }
+            node.setProperty("uri", uri);
+            createdNodes.put(cacheKey(uri, graph), node.getId());
+        }
+        return node;
+    }
+
+    /**
+     * Blank nodes numbered in the import are :BNode nodes with no uri, found through the import's {@link BlankNodeIds}
+     * only. The id is published once the node is committed, like the ids of the resources.
+     */
+    private Node findOrCreateBlankNode(long number, long graph, Map<Long, Long> createdBlankNodes) {
+        Node node = findBlankNode(number);
+        if (node == null) {
+            if (graph == NamedGraphs.DEFAULT_GRAPH) {
+                node = graphdb.createNode(BNODE);
+            } else {
+                node = graphdb.createNode(BNODE, symbols.label(NamedGraphs.label(graph).name()));
+                node.setProperty(NamedGraphs.GRAPH_PROPERTY, graph);
+            }
+            createdBlankNodes.put(number, node.getId());
+        }
+        return node;
+    }
+
+    private Node findBlankNode(long number) {
+        long nodeId = blankNodeIds.get(number);
+        return (nodeId >= 0 ? graphdb.getNodeById(nodeId) : null);
+    }
+
+    /**
+     * @param filterGraphs false when the database has no named graphs, the first node of the uri is then taken
+     * @return the :Resource node of the uri in the graph, null when there is none
+     */
+    private Node findResource(String uri, long graph, boolean filterGraphs) {
+        String key = cacheKey(uri, graph);
+        Long cachedId = nodeCache.get(key);
+        if (cachedId != null) {
+            try {
+                return graphdb.getNodeById(cachedId);
+            } catch (NotFoundException e) {
+                // deleted since it was cached, fall back to the index
+                nodeCache.remove(key);
+            }
+        }
+        Node node = null;
+        // the uri has one node per graph it appears in
+        try (ResourceIterator<Node> candidates = graphdb.findNodes(RESOURCE, "uri", uri)) {
+            while (node == null && candidates.hasNext()) {
+                Node candidate = candidates.next();
+                if (!filterGraphs || NamedGraphs.graphOf(candidate) == graph) {
+                    node = candidate;
+                }
+            }
+        }
+        if (node != null) {
+            nodeCache.put(key, node.getId());
+        }
+        return node;
+    }
+
+    /**
+     * The uri itself in the default graph. An IRI cannot start with a digit, so the keys of the graphs never clash.
+     */
+    private static String cacheKey(String uri, long graph) {
+        return (graph == NamedGraphs.DEFAULT_GRAPH ? uri : graph + " " + uri);
+    }
+}
@@ -0,0 +1,75 @@
+package semantics;
+
+import org.neo4j.graphdb.GraphDatabaseService;
+import org.neo4j.graphdb.Node;
+import org.neo4j.graphdb.Relationship;
+import org.neo4j.graphdb.ResourceIterator;
+import org.neo4j.graphdb.event.LabelEntry;
+import org.neo4j.graphdb.event.TransactionData;
+import org.neo4j.graphdb.event.TransactionEventHandler;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Bumps the version of the indexed hierarchies a transaction changes, in the transaction itself, so the version
+ * committed with the change and a {@link HierarchyIndex} built before it is no longer used. A hierarchy changes when
+ * a relationship of its type is created or deleted, or one of its labels is added to or removed from a node.
+ *
+ * Transactions are only looked at when there is an indexed hierarchy, then the cost is a pass over their
+ * relationships and labels.
+ */
+class HierarchyChanges extends TransactionEventHandler.Adapter<Object> {
+
+    private final GraphDatabaseService db;
+
+    HierarchyChanges(GraphDatabaseService graphdb) {
+        db = graphdb;
+    }
+
+    @Override
+    public Object beforeCommit(TransactionData data) {
+        List<Node> hierarchies = new ArrayList<>();
+        try (ResourceIterator<Node> nodes = db.findNodes(HierarchyIndex.INDEXED_HIERARCHY)) {
+            nodes.forEachRemaining(hierarchies::add);
+        }
+        if (hierarchies.isEmpty()) {
+            return null;
+        }
+        Set<String> types = new HashSet<>();
+        for (Relationship rel : data.createdRelationships()) {
+            types.add(rel.getType().name());
+        }
+        for (Relationship rel : data.deletedRelationships()) {
+            types.add(rel.getType().name());
+        }
+        Set<String> labels = new HashSet<>();
+        for (LabelEntry entry : data.assignedLabels()) {
+            labels.add(entry.label().name());
+        }
+        for (LabelEntry entry : data.removedLabels()) {
+            labels.add(entry.label().name());
+        }
+        for (Node hierarchy : hierarchies) {
+            if (data.isDeleted(hierarchy) || !changes(hierarchy, types, labels)) {
+                continue;
+            }
+            hierarchy.setProperty(HierarchyIndex.VERSION, (Long) hierarchy.getProperty(HierarchyIndex.VERSION) + 1);
+        }
+        return null;
+    }
+
+    private static boolean changes(Node hierarchy, Set<String> types, Set<String> labels) {
+        if (types.contains(hierarchy.getProperty(HierarchyIndex.TYPE))) {
+            return true;
+        }
+        for (String label : (String[]) hierarchy.getProperty(HierarchyIndex.LABELS)) {
+            if (labels.contains(label)) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
@@ -0,0 +1,39 @@
+package semantics;
+
+import org.neo4j.kernel.extension.KernelExtensionFactory;
+import org.neo4j.kernel.impl.spi.KernelContext;
+import org.neo4j.kernel.internal.GraphDatabaseAPI;
+import org.neo4j.kernel.lifecycle.Lifecycle;
+import org.neo4j.kernel.lifecycle.LifecycleAdapter;
+
+/**
+ * Registers {@link HierarchyChanges} when the database starts, before any transaction can change an indexed
+ * hierarchy. Loaded by the database from META-INF/services.
+ */
+public class HierarchyChangesExtension extends KernelExtensionFactory<HierarchyChangesExtension.Dependencies> {
+
+    public interface Dependencies {
+        GraphDatabaseAPI graphdatabaseAPI();
+    }
+
+    public HierarchyChangesExtension() {
+        super("semantics.hierarchyChanges");
+    }
+
+    @Override
+    public Lifecycle newInstance(KernelContext context, Dependencies dependencies) {
+        GraphDatabaseAPI db = dependencies.graphdatabaseAPI();
+        HierarchyChanges changes = new HierarchyChanges(db);
+        return new LifecycleAdapter() {
+            @Override
+            public void start() {
+                db.registerTransactionEventHandler(changes);
+            }
+
+            @Override
+            public void stop() {
+                db.unregisterTransactionEventHandler(changes);
+            }
+        };
+    }
+}
@@ -0,0 +1,380 @@
+package semantics;
+
+import apoc.util.Util;
+import org.neo4j.graphdb.Direction;
+import org.neo4j.graphdb.GraphDatabaseService;
+import org.neo4j.graphdb.Label;
+import org.neo4j.graphdb.Node;
+import org.neo4j.graphdb.Relationship;
+import org.neo4j.graphdb.RelationshipType;
+import org.neo4j.graphdb.ResourceIterator;
+import org.neo4j.graphdb.Result;
+import org.neo4j.kernel.internal.GraphDatabaseAPI;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.stream.Stream;
+
+/**
+ * Reachability index of a hierarchy, the (sub)-[:SCO]->(super) relationships between the nodes of some labels, so
+ * subsumption is tested and descendants are found without walking the hierarchy.
+ *
+ * Every node of the hierarchy gets a number in {@code hierarchyPost_<type>_<labels>}, its rank in a post-order walk
+ * from the roots down, and in {@code hierarchyIntervals_<type>_<labels>} the [low, high] ranges, flattened in a long
+ * array, that hold the numbers of the node and all of its descendants. In a tree a node has one interval, multiple
+ * inheritance adds one per branch that is not numbered under it. The nodes of a cycle share their number. A node is
+ * below another when its number is in one of the intervals of the other, and the descendants of a node are range
+ * lookups on the number, index seeks with an index on it, e.g. on :Class(hierarchyPost_SCO_Class). Each hierarchy
+ * has properties of its own, so a node in two hierarchies, a punned class and property or a class that is also a
+ * category, keeps both numbers.
+ *
+ * A (:IndexedHierarchy) node records the type and labels of each hierarchy, the version of the hierarchy, bumped by
+ * {@link HierarchyChanges} in every transaction that adds or removes one of its relationships or labels, and the
+ * version the index was built from. The index is only used while the two match, {@link #rebuild} is run by the
+ * ontology import and can be run again with semantics.indexHierarchy.
+ */
+public class HierarchyIndex {
+
+    static final String POST = "hierarchyPost";
+    static final String INTERVALS = "hierarchyIntervals";
+    static final Label INDEXED_HIERARCHY = Label.label("IndexedHierarchy");
+    static final String TYPE = "type";
+    static final String LABELS = "labels";
+    static final String VERSION = "version";
+    static final String INDEXED_VERSION = "indexedVersion";
+
+    private final Set<String> labels;
+    private final String post;
+    private final String intervals;
+
+    private HierarchyIndex(String type, String[] labelNames) {
+        labels = new LinkedHashSet<>(Arrays.asList(labelNames));
+        String suffix = "_" + type + "_" + String.join("_", labelNames);
+        post = POST + suffix;
+        intervals = INTERVALS + suffix;
+    }
+
+    /**
+     * Numbers the nodes with the labels, reading the hierarchy in one transaction and writing the numbers
+     * {@code batchSize} nodes per transaction. Nodes whose numbers did not change are not written. The index is
+     * not used while it is rebuilt, and stays unused if the hierarchy changes before the rebuild is over.
+     *
+     * @return the number of nodes in the hierarchy
+     */
+    static long rebuild(GraphDatabaseAPI db, RelationshipType type, long batchSize, Label... labels) {
+        String[] labelNames = labelNames(labels);
+        HierarchyIndex index = new HierarchyIndex(type.name(), labelNames);
+        Map<Long, Integer> positions = new HashMap<>();
+        List<Long> nodeIds = new ArrayList<>();
+        List<int[]> subclassOf = new ArrayList<>();
+        long builtFrom = Util.inTx(db, () -> {
+            Node hierarchy = findHierarchy(db, type.name(), labelNames);
+            if (hierarchy == null) {
+                hierarchy = db.createNode(INDEXED_HIERARCHY);
+                hierarchy.setProperty(TYPE, type.name());
+                hierarchy.setProperty(LABELS, labelNames);
+                hierarchy.setProperty(VERSION, 0L);
+            }
+            hierarchy.setProperty(INDEXED_VERSION, -1L);
+            for (Label label : labels) {
+                try (ResourceIterator<Node> nodes = db.findNodes(label)) {
+                    nodes.forEachRemaining(node -> {
+                        if (positions.putIfAbsent(node.getId(), nodeIds.size()) == null) {
+                            nodeIds.add(node.getId());
+                        }
+                    });
+                }
+            }
+            for (long nodeId : nodeIds) {
+                for (Relationship rel : db.getNodeById(nodeId).getRelationships(Direction.OUTGOING, type)) {
+                    Integer parent = positions.get(rel.getEndNode().getId());
+                    if (parent != null) {
+                        subclassOf.add(new int[]{positions.get(nodeId), parent});
+                    }
+                }
+            }
+            return (Long) hierarchy.getProperty(VERSION);
+        });
+        long[][] numbers = number(nodeIds.size(), subclassOf);
+
+        for (int from = 0; from < nodeIds.size(); from += batchSize) {
+            int start = from;
+            int end = (int) Math.min(nodeIds.size(), from + batchSize);
+            Util.inTx(db, () -> {
+                for (int i = start; i < end; i++) {
+                    Node node = db.getNodeById(nodeIds.get(i));
+                    if (!Long.valueOf(numbers[i][0]).equals(node.getProperty(index.post, null))) {
+                        node.setProperty(index.post, numbers[i][0]);
+                    }
+                    long[] intervals = Arrays.copyOfRange(numbers[i], 1, numbers[i].length);
+                    Object stored = node.getProperty(index.intervals, null);
+                    if (!(stored instanceof long[] && Arrays.equals((long[]) stored, intervals))) {
+                        node.setProperty(index.intervals, intervals);
+                    }
+                }
+                return null;
+            });
+        }
+        Util.inTx(db, () -> {
+            Node hierarchy = findHierarchy(db, type.name(), labelNames);
+            if (hierarchy != null) {
+                hierarchy.setProperty(INDEXED_VERSION, builtFrom);
+            }
+            return null;
+        });
+        return nodeIds.size();
+    }
+
+    /**
+     * @return the index of the hierarchy of the type the node is in, null when there is none or its hierarchy
+     * changed since it was built
+     */
+    public static HierarchyIndex of(GraphDatabaseService db, RelationshipType type, Node node) {
+        try (ResourceIterator<Node> hierarchies = db.findNodes(INDEXED_HIERARCHY, TYPE, type.name())) {
+            while (hierarchies.hasNext()) {
+                Node hierarchy = hierarchies.next();
+                HierarchyIndex index = new HierarchyIndex(type.name(), (String[]) hierarchy.getProperty(LABELS));
+                if (index.contains(node)) {
+                    return (hierarchy.getProperty(INDEXED_VERSION).equals(hierarchy.getProperty(VERSION)) ?
+                            index : null);
+                }
+            }
+        }
+        return null;
+    }
+
+    /**
+     * @return whether the node is the ancestor or below it, null when either is not in the hierarchy
+     */
+    public Boolean isBelow(Node node, Node ancestor) {
+        if (!(contains(node) && contains(ancestor))) {
+            return null;
+        }
+        return contains((long[]) ancestor.getProperty(intervals), (Long) node.getProperty(post));
+    }
+
+    /**
+     * @return the nodes below the ancestor, with one range lookup per interval of the ancestor and label of the
+     * hierarchy, null when the ancestor is not in the hierarchy
+     */
+    public Stream<Node> descendants(GraphDatabaseService db, Node ancestor) {
+        if (!contains(ancestor)) {
+            return null;
+        }
+        long[] ranges = (long[]) ancestor.getProperty(intervals);
+        Set<Node> descendants = new HashSet<>();
+        for (String label : labels) {
+            String cypher = String.format("MATCH (n:`%s`) WHERE n.`%s` >= {low} AND n.`%s` <= {high} RETURN n",
+                    label.replace("`", "``"), post, post);
+            for (int i = 0; i < ranges.length; i += 2) {
+                Map<String, Object> params = new HashMap<>();
+                params.put("low", ranges[i]);
+                params.put("high", ranges[i + 1]);
+                try (Result result = db.execute(cypher, params)) {
+                    result.<Node>columnAs("n").forEachRemaining(descendants::add);
+                }
+            }
+        }
+        descendants.remove(ancestor);
+        return descendants.stream();
+    }
+
+    /**
+     * @return whether the node has a label of the hierarchy and its numbers
+     */
+    private boolean contains(Node node) {
+        for (Label label : node.getLabels()) {
+            if (labels.contains(label.name())) {
+                return node.getProperty(post, null) instanceof Long &&
+                        node.getProperty(intervals, null) instanceof long[];
+            }
+        }
+        return false;
+    }
+
+    private static Node findHierarchy(GraphDatabaseService db, String type, String[] labelNames) {
+        try (ResourceIterator<Node> hierarchies = db.findNodes(INDEXED_HIERARCHY, TYPE, type)) {
+            while (hierarchies.hasNext()) {
+                Node hierarchy = hierarchies.next();
+                if (Arrays.equals((String[]) hierarchy.getProperty(LABELS), labelNames)) {
+                    return hierarchy;
+                }
+            }
+        }
+        return null;
+    }
+
+    /**
+     * @return the distinct names of the labels, sorted so a hierarchy has the same name whatever their order
+     */
+    private static String[] labelNames(Label... labels) {
+        Set<String> names = new TreeSet<>();
+        for (Label label : labels) {
+            names.add(label.name());
+        }
+        return names.toArray(new String[names.size()]);
+    }
+
+    private static boolean contains(long[] intervals, long post) {
+        for (int i = 0; i < intervals.length; i += 2) {
+            if (intervals[i] <= post && post <= intervals[i + 1]) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Numbers the strongly connected components of the hierarchy with Tarjan's algorithm, walking down from the
+     * roots first so the subtree of a node is numbered contiguously before it. Components are numbered after all
+     * the components below them, so the intervals of the children are complete when a component unions them.
+     *
+     * @return per node, its number followed by its intervals
+     */
+    private static long[][] number(int size, List<int[]> subclassOf) {
+        // children of each node, parent -> child edges in compressed rows
+        int[] childStart = new int[size + 1];
+        boolean[] hasParent = new boolean[size];
+        for (int[] edge : subclassOf) {
+            childStart[edge[1] + 1]++;
+            hasParent[edge[0]] = true;
+        }
+        for (int i = 0; i < size; i++) {
+            childStart[i + 1] += childStart[i];
+        }
+        int[] children = new int[subclassOf.size()];
+        int[] fill = Arrays.copyOf(childStart, size);
+        for (int[] edge : subclassOf) {
+            children[fill[edge[1]]++] = edge[0];
+        }
+
+        int[] component = new int[size];
+        int[] index = new int[size];
+        int[] low = new int[size];
+        Arrays.fill(index, -1);
+        boolean[] onStack = new boolean[size];
+        int[] stack = new int[size];
+        int[] calls = new int[size];
+        int[] next = new int[size];
+        int stackSize = 0;
+        int components = 0;
+        int counter = 0;
+        int[] order = new int[size];
+        int roots = 0;
+        for (int i = 0; i < size; i++) {
+            if (!hasParent[i]) {
+                order[roots++] = i;
+            }
+        }
+        for (int i = 0, rest = roots; i < size; i++) {
+            if (hasParent[i]) {
+                order[rest++] = i;
+            }
+        }
+        for (int start : order) {
+            if (index[start] != -1) {
+                continue;
+            }
+            int depth = 0;
+            calls[depth] = start;
+            next[depth] = childStart[start];
+            index[start] = low[start] = counter++;
+            stack[stackSize++] = start;
+            onStack[start] = true;
+            while (depth >= 0) {
+                int node = calls[depth];
+                if (next[depth] < childStart[node + 1]) {
+                    int child = children[next[depth]++];
+                    if (index[child] == -1) {
+                        index[child] = low[child] = counter++;
+                        stack[stackSize++] = child;
+                        onStack[child] = true;
+                        calls[++depth] = child;
+                        next[depth] = childStart[child];
+                    } else if (onStack[child]) {
+                        low[node] = Math.min(low[node], index[child]);
+                    }
+                    continue;
+                }
+                if (--depth >= 0) {
+                    low[calls[depth]] = Math.min(low[calls[depth]], low[node]);
+                }
+                if (low[node] == index[node]) {
+                    int member;
+                    do {
+                        member = stack[--stackSize];
+                        onStack[member] = false;
+                        component[member] = components;
+                    } while (member != node);
+                    components++;
+                }
+            }
+        }
+
+        // members of each component, components are numbered children first
+        int[] memberStart = new int[components + 1];
+        for (int i = 0; i < size; i++) {
+            memberStart[component[i] + 1]++;
+        }
+        for (int c = 0; c < components; c++) {
+            memberStart[c + 1] += memberStart[c];
+        }
+        int[] members = new int[size];
+        int[] memberFill = Arrays.copyOf(memberStart, components);
+        for (int i = 0; i < size; i++) {
+            members[memberFill[component[i]]++] = i;
+        }
+        long[][] intervals = new long[components][];
+        for (int c = 0; c < components; c++) {
+            List<long[]> ranges = new ArrayList<>();
+            ranges.add(new long[]{c, c});
+            for (int m = memberStart[c]; m < memberStart[c + 1]; m++) {
+                int member = members[m];
+                for (int e = childStart[member]; e < childStart[member + 1]; e++) {
+                    int childComponent = component[children[e]];
+                    if (childComponent != c) {
+                        long[] childIntervals = intervals[childComponent];
+                        for (int i = 0; i < childIntervals.length; i += 2) {
+                            ranges.add(new long[]{childIntervals[i], childIntervals[i + 1]});
+                        }
+                    }
+                }
+            }
+            intervals[c] = merge(ranges);
+        }
+
+        long[][] numbers = new long[size][];
+        for (int i = 0; i < size; i++) {
+            long[] componentIntervals = intervals[component[i]];
+            numbers[i] = new long[componentIntervals.length + 1];
+            numbers[i][0] = component[i];
+            System.arraycopy(componentIntervals, 0, numbers[i], 1, componentIntervals.length);
+        }
+        return numbers;
+    }
+
+    /**
+     * @return the ranges sorted and coalesced, flattened to low, high pairs
+     */
+    private static long[] merge(List<long[]> ranges) {
+        ranges.sort((a, b) -> Long.compare(a[0], b[0]));
+        long[] merged = new long[ranges.size() * 2];
+        int size = 0;
+        for (long[] range : ranges) {
+            if (size > 0 && range[0] <= merged[size - 1] + 1) {
+                merged[size - 1] = Math.max(merged[size - 1], range[1]);
+            } else {
+                merged[size++] = range[0];
+                merged[size++] = range[1];
+            }
+        }
+        return Arrays.copyOf(merged, size);
+    }
+}
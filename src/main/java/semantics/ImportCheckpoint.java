@@ -0,0 +1,224 @@
+package semantics;
+
+import apoc.util.Util;
+import org.neo4j.graphdb.GraphDatabaseService;
+import org.neo4j.graphdb.Label;
+import org.neo4j.graphdb.Node;
+import org.neo4j.graphdb.NotFoundException;
+import org.neo4j.kernel.internal.GraphDatabaseAPI;
+import org.neo4j.logging.Log;
+import org.openrdf.rio.RDFFormat;
+
+import java.io.BufferedInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * Progress of a checkpointed import, kept in an :ImportCheckpoint node keyed by the document url.
+ * The node is updated in the transaction of every committed batch, together with the namespace prefix
+ * definitions used so far, so it always matches the graph. It is deleted when the import completes.
+ * Batches must be committed in document order.
+ *
+ * A resumed import skips the triples committed by the earlier run. N-Triples and N-Quads are line
+ * oriented: the document is read from the last recorded byte offset and the remaining committed lines
+ * are skipped without parsing them. Other formats are parsed from the start and the committed statements
+ * are dropped. Blank nodes are named by a {@link DocumentBNodeFactory} in both runs, so they resolve to
+ * the same nodes.
+ */
+class ImportCheckpoint {
+
+    static final Label LABEL = Label.label("ImportCheckpoint");
+
+    private final String url;
+    private final NamespacePrefixes prefixes;
+    private int savedPrefixes = -1;
+    private long triples;
+    private long offset;
+    private long triplesAtOffset;
+    private Long nodeId = null;
+    private Long pendingNodeId = null;
+    private long pendingTriples;
+    private long pendingOffset;
+    private long pendingTriplesAtOffset;
+    private int pendingPrefixes = -1;
+
+    private ImportCheckpoint(String documentUrl, NamespacePrefixes namespacePrefixes, long committedTriples,
+                             long inputOffset, long committedAtOffset) {
+        url = documentUrl;
+        prefixes = namespacePrefixes;
+        triples = committedTriples;
+        offset = inputOffset;
+        triplesAtOffset = committedAtOffset;
+    }
+
+    /**
+     * A checkpoint for a new import of the document, discarding the one left by an earlier run.
+     */
+    static ImportCheckpoint start(GraphDatabaseAPI db, String url, NamespacePrefixes prefixes) {
+        clear(db, url);
+        return new ImportCheckpoint(url, prefixes, 0, 0, 0);
+    }
+
+    /**
+     * The checkpoint left by an earlier run of the document, or a new one when it completed or never ran.
+     */
+    static ImportCheckpoint resume(GraphDatabaseAPI db, String url, NamespacePrefixes prefixes, Log log) {
+        ImportCheckpoint checkpoint = Util.inTx(db, () -> {
+            Node node = db.findNode(LABEL, "url", url);
+            if (node == null) {
+                return null;
+            }
+            ImportCheckpoint existing = new ImportCheckpoint(url, prefixes, (Long) node.getProperty("triples", 0L),
+                    (Long) node.getProperty("offset", 0L), (Long) node.getProperty("triplesAtOffset", 0L));
+            existing.nodeId = node.getId();
+            return existing;
+        });
+        if (checkpoint == null) {
+            log.info("No checkpoint found for " + url + ", importing it from the start");
+            return new ImportCheckpoint(url, prefixes, 0, 0, 0);
+        }
+        log.info("Resuming the import of " + url + " after " + checkpoint.triples + " committed triples");
+        return checkpoint;
+    }
+
+    /**
+     * Deletes the checkpoint of the document, if any.
+     */
+    static void clear(GraphDatabaseAPI db, String url) {
+        Util.inTx(db, () -> {
+            Node node = db.findNode(LABEL, "url", url);
+            if (node != null) {
+                node.delete();
+            }
+            return null;
+        });
+    }
+
+    /**
+     * Adds a batch to the checkpoint, in the transaction that commits the batch. The progress counted here is
+     * only kept once {@link #committed} is called, a transaction retried after a deadlock records its batch again.
+     */
+    void record(GraphDatabaseService db, StatementBatch batch) {
+        pendingTriples = triples + batch.getTriples();
+        pendingOffset = offset;
+        pendingTriplesAtOffset = triplesAtOffset;
+        if (batch.getInputOffset() >= 0) {
+            pendingOffset = batch.getInputOffset();
+            pendingTriplesAtOffset = pendingTriples;
+        }
+        Node node = null;
+        pendingNodeId = nodeId;
+        if (nodeId != null) {
+            try {
+                node = db.getNodeById(nodeId);
+            } catch (NotFoundException e) {
+                // deleted by hand while importing
+            }
+        }
+        if (node == null) {
+            node = db.createNode(LABEL);
+            node.setProperty("url", url);
+            pendingNodeId = node.getId();
+        }
+        node.setProperty("triples", pendingTriples);
+        node.setProperty("offset", pendingOffset);
+        node.setProperty("triplesAtOffset", pendingTriplesAtOffset);
+        node.setProperty("updated", System.currentTimeMillis());
+        // the batch was shortened with these prefixes, a resumed run must reuse them
+        pendingPrefixes = prefixes.size();
+        if (pendingPrefixes != savedPrefixes) {
+            prefixes.save(db);
+        }
+    }
+
+    /**
+     * Keeps the progress recorded by the transaction that just committed.
+     */
+    void committed() {
+        nodeId = pendingNodeId;
+        triples = pendingTriples;
+        offset = pendingOffset;
+        triplesAtOffset = pendingTriplesAtOffset;
+        savedPrefixes = pendingPrefixes;
+    }
+
+    /**
+     * Positions the document stream right after the last committed triple, or makes the loader drop the
+     * committed triples when the format is not line oriented.
+     */
+    InputStream skipCommitted(InputStream in, RDFFormat format, DirectStatementLoader statementLoader)
+            throws IOException {
+        if (triples == 0) {
+            return in;
+        }
+        if (!isLineOriented(format)) {
+            statementLoader.skip(triples);
+            return in;
+        }
+        InputStream buffered = new BufferedInputStream(in);
+        skipBytes(buffered, offset);
+        skipStatementLines(buffered, triples - triplesAtOffset);
+        return buffered;
+    }
+
+    /**
+     * @return byte offset of the first statement not committed yet in a local line oriented document
+     */
+    long getResumeOffset(File file) throws IOException {
+        if (triples == 0) {
+            return 0;
+        }
+        try (InputStream in = new BufferedInputStream(new FileInputStream(file))) {
+            skipBytes(in, offset);
+            return offset + skipStatementLines(in, triples - triplesAtOffset);
+        }
+    }
+
+    private static boolean isLineOriented(RDFFormat format) {
+        return format.equals(RDFFormat.NTRIPLES) || format.equals(RDFFormat.NQUADS);
+    }
+
+    private static void skipBytes(InputStream in, long bytes) throws IOException {
+        while (bytes > 0) {
+            long skipped = in.skip(bytes);
+            if (skipped <= 0) {
+                if (in.read() < 0) {
+                    throw new IOException("The document is shorter than its checkpoint, it may have changed");
+                }
+                skipped = 1;
+            }
+            bytes -= skipped;
+        }
+    }
+
+    /**
+     * Skips lines holding one statement each, blank and comment lines are skipped along the way.
+     *
+     * @return number of bytes skipped
+     */
+    private static long skipStatementLines(InputStream in, long statements) throws IOException {
+        long bytes = 0;
+        boolean leadingSpace = true;
+        boolean statementLine = false;
+        while (statements > 0) {
+            int b = in.read();
+            if (b < 0) {
+                break;
+            }
+            bytes++;
+            if (b == '\n') {
+                if (statementLine) {
+                    statements--;
+                }
+                leadingSpace = true;
+                statementLine = false;
+            } else if (leadingSpace && b != ' ' && b != '\t' && b != '\r') {
+                leadingSpace = false;
+                statementLine = (b != '#');
+            }
+        }
+        return bytes;
+    }
+}
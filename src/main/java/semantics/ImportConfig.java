@@ -0,0 +1,237 @@
+package semantics;
+
+import apoc.util.Util;
+import org.openrdf.model.ValueFactory;
+
+import java.util.Collections;
+import java.util.Map;
+
+/**
+ * Optional settings of an RDF import, read from the {@code props} map passed to the procedures.
+ */
+class ImportConfig {
+
+    static final String PIPELINED = "pipelined";
+    static final String WRITER_THREADS = "writerThreads";
+    static final String QUEUE_CAPACITY = "queueCapacity";
+    static final String NODE_CACHE_SIZE = "nodeCacheSize";
+    static final String COMMIT_MODE = "commitMode";
+    static final String MAX_BATCH_HEAP_MB = "maxBatchHeapMb";
+    static final String TARGET_COMMIT_MILLIS = "targetCommitMillis";
+    static final String COMMIT_MODE_ADAPTIVE = "adaptive";
+    static final String PARALLELISM = "parallelism";
+    static final String CHUNK_SIZE_MB = "chunkSizeMb";
+    static final String CHECKPOINT = "checkpoint";
+    static final String RESUME = "resume";
+    static final String NAMED_GRAPHS = "namedGraphs";
+    static final String GRAPH = "graph";
+    static final String BLANK_NODES = "blankNodes";
+    static final String BLANK_NODES_COMPACT = "compact";
+    static final String BLANK_NODES_SKOLEMIZE = "skolemize";
+    static final String SKOLEM_BASE = "skolemBase";
+    static final String DEFAULT_SKOLEM_BASE = "http://neo4j.com/.well-known/genid/";
+    static final String LIMIT = "limit";
+    static final String NODE_LIMIT = "nodeLimit";
+    static final String SAMPLING = "sampling";
+    static final String COMMIT_SIZE = "commitSize";
+    static final String DIFF = "diff";
+
+    private final boolean pipelined;
+    private final int writerThreads;
+    private final int queueCapacity;
+    private final int nodeCacheSize;
+    private final boolean adaptiveCommit;
+    private final long maxBatchHeapBytes;
+    private final long targetCommitMillis;
+    private final int parallelism;
+    private final long chunkSizeBytes;
+    private final boolean checkpoint;
+    private final boolean resume;
+    private final boolean namedGraphs;
+    private final String graph;
+    private final String blankNodes;
+    private final String skolemBase;
+    private final long limit;
+    private final int nodeLimit;
+    private final boolean sampling;
+    private final long commitSize;
+    private final boolean diff;
+
+    ImportConfig(Map<String, Object> props) {
+        Map<String, Object> p = (props != null ? props : Collections.emptyMap());
+        pipelined = Util.toBoolean(p.get(PIPELINED));
+        writerThreads = (int) (p.containsKey(WRITER_THREADS) ? Util.toLong(p.get(WRITER_THREADS)) : 1);
+        queueCapacity = (int) (p.containsKey(QUEUE_CAPACITY) ? Util.toLong(p.get(QUEUE_CAPACITY)) : 2L * writerThreads);
+        nodeCacheSize = (int) (p.containsKey(NODE_CACHE_SIZE) ? Util.toLong(p.get(NODE_CACHE_SIZE)) : 100000);
+        adaptiveCommit = COMMIT_MODE_ADAPTIVE.equalsIgnoreCase(String.valueOf(p.get(COMMIT_MODE)));
+        maxBatchHeapBytes = (p.containsKey(MAX_BATCH_HEAP_MB) ? Util.toLong(p.get(MAX_BATCH_HEAP_MB)) : 64) * 1024 * 1024;
+        targetCommitMillis = (p.containsKey(TARGET_COMMIT_MILLIS) ? Util.toLong(p.get(TARGET_COMMIT_MILLIS)) : 1000);
+        parallelism = (int) (p.containsKey(PARALLELISM) ? Util.toLong(p.get(PARALLELISM)) : 1);
+        chunkSizeBytes = (p.containsKey(CHUNK_SIZE_MB) ? Util.toLong(p.get(CHUNK_SIZE_MB)) * 1024 * 1024 :
+                ParallelNTriplesLoader.DEFAULT_CHUNK_SIZE);
+        resume = Util.toBoolean(p.get(RESUME));
+        checkpoint = resume || Util.toBoolean(p.get(CHECKPOINT));
+        graph = (p.get(GRAPH) != null ? String.valueOf(p.get(GRAPH)) : null);
+        namedGraphs = graph != null || Util.toBoolean(p.get(NAMED_GRAPHS));
+        blankNodes = String.valueOf(p.get(BLANK_NODES));
+        skolemBase = (p.get(SKOLEM_BASE) != null ? String.valueOf(p.get(SKOLEM_BASE)) : DEFAULT_SKOLEM_BASE);
+        limit = (p.containsKey(LIMIT) ? Util.toLong(p.get(LIMIT)) : 1000);
+        nodeLimit = (int) (p.containsKey(NODE_LIMIT) ? Util.toLong(p.get(NODE_LIMIT)) : 300);
+        sampling = Util.toBoolean(p.get(SAMPLING));
+        commitSize = (p.containsKey(COMMIT_SIZE) ? Util.toLong(p.get(COMMIT_SIZE)) : 10000);
+        diff = Util.toBoolean(p.get(DIFF));
+    }
+
+    boolean isPipelined() {
+        return pipelined;
+    }
+
+    /**
+     * Number of background writer threads, 0 when batches are committed on the parser thread.
+     * Checkpointing needs batches committed in document order, so it allows a single writer.
+     */
+    int getWriterThreads() {
+        if (!pipelined) {
+            return 0;
+        }
+        return (checkpoint ? 1 : Math.max(writerThreads, 1));
+    }
+
+    int getQueueCapacity() {
+        return Math.max(queueCapacity, 1);
+    }
+
+    /**
+     * Maximum number of URIs kept in the import's node id cache, 0 disables it.
+     */
+    int getNodeCacheSize() {
+        return nodeCacheSize;
+    }
+
+    /**
+     * True with {@code commitMode: 'adaptive'}: commitSize is then only the initial batch size.
+     */
+    boolean isAdaptiveCommit() {
+        return adaptiveCommit;
+    }
+
+    long getMaxBatchHeapBytes() {
+        return maxBatchHeapBytes;
+    }
+
+    long getTargetCommitMillis() {
+        return targetCommitMillis;
+    }
+
+    /**
+     * Number of parser threads for local N-Triples and N-Quads files, 1 parses them like any other document.
+     */
+    int getParallelism() {
+        return parallelism;
+    }
+
+    long getChunkSizeBytes() {
+        return chunkSizeBytes;
+    }
+
+    /**
+     * True when the progress of the import is recorded after every commit, so that it can be resumed.
+     */
+    boolean isCheckpoint() {
+        return checkpoint;
+    }
+
+    /**
+     * True when the import continues from the checkpoint of an earlier run of the same document.
+     */
+    boolean isResume() {
+        return resume;
+    }
+
+    /**
+     * True when the statements of each named graph of a TriG or N-Quads document are loaded into the resources of
+     * that graph, with {@code namedGraphs: true} or a {@code graph}. By default every graph is flattened into the
+     * default graph, one node per resource.
+     */
+    boolean isNamedGraphs() {
+        return namedGraphs;
+    }
+
+    /**
+     * @return the IRI of the named graph receiving every statement of the document, or null
+     */
+    String getGraph() {
+        return graph;
+    }
+
+    /**
+     * True with {@code blankNodes: 'compact'}: blank nodes are :BNode nodes numbered in the import, with no uri and
+     * out of the :Resource(uri) index. A checkpointed import must find the blank nodes of its earlier run through
+     * the index, so it keeps naming them by their label.
+     */
+    boolean isCompactBlankNodes() {
+        return BLANK_NODES_COMPACT.equalsIgnoreCase(blankNodes) && !checkpoint;
+    }
+
+    /**
+     * True with {@code blankNodes: 'skolemize'}: blank nodes become :Resource nodes with a skolem IRI, made of
+     * {@link #getSkolemBase} and an id depending only on the document and the blank node.
+     */
+    boolean isSkolemize() {
+        return BLANK_NODES_SKOLEMIZE.equalsIgnoreCase(blankNodes);
+    }
+
+    String getSkolemBase() {
+        return skolemBase;
+    }
+
+    /**
+     * @return the value factory naming the blank nodes of the document, null to leave them to the parser. A parser
+     * given a factory must preserve blank node ids.
+     */
+    ValueFactory getBNodeFactory(String documentUrl) {
+        if (isCompactBlankNodes()) {
+            return new CompactBNodeFactory();
+        } else if (checkpoint || isSkolemize()) {
+            return new DocumentBNodeFactory(documentUrl);
+        }
+        return null;
+    }
+
+    /**
+     * @return the number of triples a preview reads, or samples with {@link #isSampling}
+     */
+    long getLimit() {
+        return limit;
+    }
+
+    /**
+     * @return the number of nodes a preview shows at most
+     */
+    int getNodeLimit() {
+        return nodeLimit;
+    }
+
+    /**
+     * True when a preview samples {@link #getLimit} triples across the whole document instead of reading its first
+     * triples.
+     */
+    boolean isSampling() {
+        return sampling;
+    }
+
+    /**
+     * @return the number of writes per transaction of an ontology import
+     */
+    long getCommitSize() {
+        return Math.max(commitSize, 1);
+    }
+
+    /**
+     * True when an ontology import only writes the terms that changed since the ontology was last imported, and
+     * deletes the terms the new release no longer has.
+     */
+    boolean isDiff() {
+        return diff;
+    }
+}
@@ -0,0 +1,166 @@
+package semantics;
+
+import org.neo4j.graphdb.Transaction;
+import org.neo4j.kernel.internal.GraphDatabaseAPI;
+import org.neo4j.logging.Log;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * An importRDF call submitted by importRDFAsync, queued and run by {@link ImportJobs}.
+ * A running job is cancelled between two batches: batches already committed stay in the graph.
+ */
+class ImportJob implements Runnable {
+
+    enum State { QUEUED, RUNNING, DONE, FAILED, CANCELLED, REJECTED }
+
+    private final long id;
+    private final GraphDatabaseAPI db;
+    private final Log log;
+    private final String url;
+    private final String format;
+    private final boolean shortenUrls;
+    private final boolean typesToLabels;
+    private final long commitSize;
+    private final Map<String, Object> props;
+
+    private final long submittedMillis = System.currentTimeMillis();
+    private volatile long startedMillis = 0;
+    private volatile long finishedMillis = 0;
+    private volatile State state = State.QUEUED;
+    private volatile ImportMetrics metrics;
+    private volatile RDFImport.ImportResults results;
+    private boolean cancelRequested = false;
+
+    ImportJob(long jobId, GraphDatabaseAPI graphdb, Log l, String url, String format, boolean shortenUrls,
+              boolean typesToLabels, long commitSize, Map<String, Object> props) {
+        id = jobId;
+        db = graphdb;
+        log = l;
+        this.url = url;
+        this.format = format;
+        this.shortenUrls = shortenUrls;
+        this.typesToLabels = typesToLabels;
+        this.commitSize = commitSize;
+        this.props = (props != null ? new HashMap<>(props) : new HashMap<>());
+    }
+
+    @Override
+    public void run() {
+        synchronized (this) {
+            if (state != State.QUEUED) {
+                return;
+            }
+            state = State.RUNNING;
+            startedMillis = System.currentTimeMillis();
+        }
+        log.info("Starting import job " + id + " of " + url);
+        RDFImport importer = new RDFImport();
+        importer.db = db;
+        importer.log = log;
+        RDFImport.ImportResults importResults;
+        try (Transaction tx = db.beginTx()) {
+            importResults = importer.runImport(url, format, shortenUrls, typesToLabels, commitSize, props, this);
+            tx.success();
+        } catch (RuntimeException e) {
+            importResults = new RDFImport.ImportResults();
+            importResults.setTerminationKO(e.getMessage());
+            log.error("Import job " + id + " failed", e);
+        }
+        results = importResults;
+        synchronized (this) {
+            if (cancelRequested) {
+                state = State.CANCELLED;
+            } else {
+                state = (importResults.terminationStatus.equals("OK") ? State.DONE : State.FAILED);
+            }
+            finishedMillis = System.currentTimeMillis();
+        }
+        log.info("Import job " + id + " of " + url + " finished: " + state);
+    }
+
+    /**
+     * Called by the import once it has set up its metrics, which also carry the cancellation.
+     */
+    synchronized void started(ImportMetrics importMetrics) {
+        metrics = importMetrics;
+        if (cancelRequested) {
+            importMetrics.cancel();
+        }
+    }
+
+    /**
+     * @return false when the job had already finished
+     */
+    synchronized boolean cancel() {
+        if (state == State.QUEUED) {
+            cancelRequested = true;
+            state = State.CANCELLED;
+            finishedMillis = System.currentTimeMillis();
+            return true;
+        } else if (state == State.RUNNING) {
+            cancelRequested = true;
+            if (metrics != null) {
+                metrics.cancel();
+            }
+            return true;
+        }
+        return false;
+    }
+
+    synchronized void rejected(String reason) {
+        state = State.REJECTED;
+        finishedMillis = System.currentTimeMillis();
+        RDFImport.ImportResults importResults = new RDFImport.ImportResults();
+        importResults.setTerminationKO(reason);
+        results = importResults;
+    }
+
+    boolean isFinished() {
+        State current = state;
+        return current != State.QUEUED && current != State.RUNNING;
+    }
+
+    long getId() {
+        return id;
+    }
+
+    String getUrl() {
+        return url;
+    }
+
+    String getFormat() {
+        return format;
+    }
+
+    State getState() {
+        return state;
+    }
+
+    long getSubmittedMillis() {
+        return submittedMillis;
+    }
+
+    long getStartedMillis() {
+        return startedMillis;
+    }
+
+    long getFinishedMillis() {
+        return finishedMillis;
+    }
+
+    /**
+     * @return the metrics of the import once started, null while queued
+     */
+    ImportMetrics getMetrics() {
+        return metrics;
+    }
+
+    /**
+     * @return the results of the import once finished, null before
+     */
+    RDFImport.ImportResults getResults() {
+        return results;
+    }
+}
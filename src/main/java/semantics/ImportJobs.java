@@ -0,0 +1,199 @@
+package semantics;
+
+import org.neo4j.graphdb.DependencyResolver;
+import org.neo4j.graphdb.config.Setting;
+import org.neo4j.graphdb.event.ErrorState;
+import org.neo4j.graphdb.event.KernelEventHandler;
+import org.neo4j.kernel.configuration.Config;
+import org.neo4j.kernel.configuration.Settings;
+import org.neo4j.kernel.internal.GraphDatabaseAPI;
+import org.neo4j.logging.Log;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * The asynchronous imports of a database. Jobs run on a small pool of worker threads, one by default, so imports
+ * submitted together are queued instead of competing for the page cache and the commit lock. The pool is sized
+ * from the neo4j.conf of the database when its first job is submitted:
+ * <pre>
+ * semantics.import.jobs.workers=1
+ * semantics.import.jobs.queueSize=100
+ * </pre>
+ * A job submitted while the queue is full is rejected. When the database shuts down, its queued jobs are
+ * cancelled and the running ones are cancelled and waited for, so no job writes to a database that is gone.
+ */
+class ImportJobs {
+
+    // read as strings, so an invalid value gets the message of positiveIntSetting rather than failing the database
+    static final Setting<String> WORKERS_SETTING =
+            Settings.setting("semantics.import.jobs.workers", Settings.STRING, Settings.NO_DEFAULT);
+    static final Setting<String> QUEUE_SIZE_SETTING =
+            Settings.setting("semantics.import.jobs.queueSize", Settings.STRING, Settings.NO_DEFAULT);
+    private static final int FINISHED_KEPT = 100;
+    private static final long SHUTDOWN_WAIT_SECONDS = 60;
+
+    // by the dependency resolver of the database, the procedures of a call may get a facade of their own
+    private static final Map<DependencyResolver, ImportJobs> JOBS = new ConcurrentHashMap<>();
+
+    private final DependencyResolver database;
+    private final AtomicLong nextId = new AtomicLong();
+    private final Map<Long, ImportJob> jobs = new LinkedHashMap<>();
+    private final ThreadPoolExecutor executor;
+
+    private ImportJobs(DependencyResolver resolver, int workers, int queueSize) {
+        database = resolver;
+        AtomicInteger threadCount = new AtomicInteger();
+        executor = new ThreadPoolExecutor(workers, workers, 60, TimeUnit.SECONDS,
+                new LinkedBlockingQueue<>(queueSize), runnable -> {
+                    Thread thread = new Thread(runnable, "rdf-import-job-" + threadCount.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                });
+        executor.allowCoreThreadTimeOut(true);
+    }
+
+    /**
+     * @return the jobs of the database, starting its pool on first use
+     * @throws IllegalArgumentException when a setting of the pool is not a positive integer
+     */
+    static ImportJobs of(GraphDatabaseAPI db) {
+        DependencyResolver resolver = db.getDependencyResolver();
+        ImportJobs importJobs = JOBS.get(resolver);
+        if (importJobs != null) {
+            return importJobs;
+        }
+        synchronized (JOBS) {
+            importJobs = JOBS.get(resolver);
+            if (importJobs == null) {
+                Map<String, String> params = resolver.resolveDependency(Config.class).getParams();
+                importJobs = new ImportJobs(resolver, positiveIntSetting(params, WORKERS_SETTING, 1),
+                        positiveIntSetting(params, QUEUE_SIZE_SETTING, 100));
+                db.registerKernelEventHandler(importJobs.new Shutdown());
+                JOBS.put(resolver, importJobs);
+            }
+            return importJobs;
+        }
+    }
+
+    ImportJob submit(GraphDatabaseAPI db, Log log, String url, String format, boolean shortenUrls,
+                     boolean typesToLabels, long commitSize, Map<String, Object> props) {
+        ImportJob job = new ImportJob(nextId.incrementAndGet(), db, log, url, format, shortenUrls, typesToLabels,
+                commitSize, props);
+        synchronized (jobs) {
+            jobs.put(job.getId(), job);
+            forgetFinished();
+        }
+        try {
+            executor.execute(job);
+        } catch (RejectedExecutionException e) {
+            job.rejected(executor.isShutdown() ? "The database is shutting down" :
+                    "Too many imports waiting, " + executor.getQueue().size() + " jobs already queued");
+        }
+        return job;
+    }
+
+    ImportJob get(long id) {
+        synchronized (jobs) {
+            return jobs.get(id);
+        }
+    }
+
+    /**
+     * @return every job still known, oldest first
+     */
+    List<ImportJob> list() {
+        synchronized (jobs) {
+            return new ArrayList<>(jobs.values());
+        }
+    }
+
+    /**
+     * @return the job, or null when it is unknown
+     */
+    ImportJob cancel(long id) {
+        ImportJob job = get(id);
+        if (job != null && job.cancel()) {
+            // frees the queue slot of a job cancelled before it started
+            executor.remove(job);
+        }
+        return job;
+    }
+
+    private void forgetFinished() {
+        int finished = 0;
+        for (ImportJob job : jobs.values()) {
+            if (job.isFinished()) {
+                finished++;
+            }
+        }
+        for (Iterator<ImportJob> it = jobs.values().iterator(); it.hasNext() && finished > FINISHED_KEPT; ) {
+            if (it.next().isFinished()) {
+                it.remove();
+                finished--;
+            }
+        }
+    }
+
+    private static int positiveIntSetting(Map<String, String> params, Setting<String> poolSetting, int defaultValue) {
+        String key = poolSetting.name();
+        String value = params.get(key);
+        if (value == null) {
+            return defaultValue;
+        }
+        try {
+            int setting = Integer.parseInt(value.trim());
+            if (setting > 0) {
+                return setting;
+            }
+        } catch (NumberFormatException e) {
+            // reported below
+        }
+        throw new IllegalArgumentException("Invalid value '" + value + "' for " + key +
+                " in neo4j.conf, expected a positive integer");
+    }
+
+    /**
+     * Stops the jobs before the database shuts down: a running job stops at its next batch.
+     */
+    private class Shutdown implements KernelEventHandler {
+
+        @Override
+        public void beforeShutdown() {
+            JOBS.remove(database);
+            executor.shutdown();
+            for (ImportJob job : list()) {
+                cancel(job.getId());
+            }
+            try {
+                executor.awaitTermination(SHUTDOWN_WAIT_SECONDS, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+
+        @Override
+        public void kernelPanic(ErrorState error) {
+        }
+
+        @Override
+        public Object getResource() {
+            return null;
+        }
+
+        @Override
+        public ExecutionOrder orderComparedTo(KernelEventHandler other) {
+            return ExecutionOrder.DOESNT_MATTER;
+        }
+    }
+}
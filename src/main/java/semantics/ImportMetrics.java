@@ -0,0 +1,218 @@
+package semantics;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Live counters of one import, updated by the parser and the writers and read at any time by
+ * {@link ImportMonitor}. Time is split between parsing, waiting for the commit stage to accept a batch,
+ * index lookups and commits, which tells whether a slow import is bound by the parser, the
+ * :Resource(uri) index or the transaction log. Cancelling an import is also signalled through its metrics.
+ */
+class ImportMetrics {
+
+    static final String RUNNING = "RUNNING";
+
+    private static final long[] LATENCY_BUCKETS_MILLIS = {10, 50, 100, 250, 500, 1000, 5000, Long.MAX_VALUE};
+
+    private final long id;
+    private final String url;
+    private final UriNodeCache nodeCache;
+    private final long startMillis = System.currentTimeMillis();
+    private volatile long endMillis = 0;
+    private volatile String status = RUNNING;
+    private volatile boolean cancelled = false;
+
+    private final AtomicLong bytesRead = new AtomicLong();
+    private final AtomicLong triplesParsed = new AtomicLong();
+    private final AtomicLong batchesParsed = new AtomicLong();
+    private final AtomicLong handOverNanos = new AtomicLong();
+    private volatile long lastBatchHeapBytes = 0;
+    private final AtomicLong triplesCommitted = new AtomicLong();
+    private final AtomicLong batchesCommitted = new AtomicLong();
+    private final AtomicLong commitMillis = new AtomicLong();
+    private final AtomicLong lookupNanos = new AtomicLong();
+    private final AtomicLongArray commitLatencies = new AtomicLongArray(LATENCY_BUCKETS_MILLIS.length);
+
+    ImportMetrics(long importId, String documentUrl, UriNodeCache cache) {
+        id = importId;
+        url = documentUrl;
+        nodeCache = cache;
+    }
+
+    /**
+     * Counts the bytes read from the document through the returned stream.
+     */
+    InputStream count(InputStream in) {
+        return new FilterInputStream(in) {
+            @Override
+            public int read() throws IOException {
+                int b = super.read();
+                if (b >= 0) {
+                    bytesRead.incrementAndGet();
+                }
+                return b;
+            }
+
+            @Override
+            public int read(byte[] bytes, int offset, int length) throws IOException {
+                int read = super.read(bytes, offset, length);
+                if (read > 0) {
+                    bytesRead.addAndGet(read);
+                }
+                return read;
+            }
+        };
+    }
+
+    /**
+     * @param nanos time the parser waited for the batch to be taken, the whole commit when writing inline
+     */
+    void batchParsed(StatementBatch batch, long nanos) {
+        triplesParsed.addAndGet(batch.getTriples());
+        batchesParsed.incrementAndGet();
+        handOverNanos.addAndGet(nanos);
+        lastBatchHeapBytes = batch.getEstimatedHeapBytes();
+    }
+
+    void lookups(long nanos) {
+        lookupNanos.addAndGet(nanos);
+    }
+
+    void batchCommitted(StatementBatch batch, long millis) {
+        triplesCommitted.addAndGet(batch.getTriples());
+        batchesCommitted.incrementAndGet();
+        commitMillis.addAndGet(millis);
+        int bucket = 0;
+        while (millis > LATENCY_BUCKETS_MILLIS[bucket]) {
+            bucket++;
+        }
+        commitLatencies.incrementAndGet(bucket);
+    }
+
+    /**
+     * Asks the import to stop before its next batch.
+     */
+    void cancel() {
+        cancelled = true;
+    }
+
+    boolean isCancelled() {
+        return cancelled;
+    }
+
+    void finished(String terminationStatus) {
+        endMillis = System.currentTimeMillis();
+        status = terminationStatus;
+    }
+
+    long getId() {
+        return id;
+    }
+
+    String getUrl() {
+        return url;
+    }
+
+    String getStatus() {
+        return status;
+    }
+
+    long getElapsedMillis() {
+        return (endMillis > 0 ? endMillis : System.currentTimeMillis()) - startMillis;
+    }
+
+    long getBytesRead() {
+        return bytesRead.get();
+    }
+
+    long getTriplesParsed() {
+        return triplesParsed.get();
+    }
+
+    long getBatchesParsed() {
+        return batchesParsed.get();
+    }
+
+    long getTriplesCommitted() {
+        return triplesCommitted.get();
+    }
+
+    long getBatchesCommitted() {
+        return batchesCommitted.get();
+    }
+
+    long getLastBatchHeapBytes() {
+        return lastBatchHeapBytes;
+    }
+
+    /**
+     * Time the parser was not waiting on the commit stage. With parallel parsing it is wall clock time,
+     * not the sum over the parser threads.
+     */
+    long getParseMillis() {
+        return Math.max(getElapsedMillis() - getHandOverMillis(), 0);
+    }
+
+    long getHandOverMillis() {
+        return handOverNanos.get() / 1000000;
+    }
+
+    long getLookupMillis() {
+        return lookupNanos.get() / 1000000;
+    }
+
+    long getCommitMillis() {
+        return commitMillis.get();
+    }
+
+    /**
+     * @return triples parsed per second of parse time
+     */
+    double getParseRate() {
+        return perSecond(getTriplesParsed(), getParseMillis());
+    }
+
+    /**
+     * @return triples committed per second since the start of the import
+     */
+    double getTriplesPerSecond() {
+        return perSecond(getTriplesCommitted(), getElapsedMillis());
+    }
+
+    long getNodeCacheHits() {
+        return nodeCache.getHits();
+    }
+
+    long getNodeCacheMisses() {
+        return nodeCache.getMisses();
+    }
+
+    double getNodeCacheHitRate() {
+        long hits = getNodeCacheHits();
+        long lookups = hits + getNodeCacheMisses();
+        return (lookups > 0 ? (double) hits / lookups : 0.0);
+    }
+
+    /**
+     * @return number of commits per latency bucket, keyed by the bucket's upper bound
+     */
+    Map<String, Long> getCommitLatencyHistogram() {
+        Map<String, Long> histogram = new LinkedHashMap<>();
+        for (int i = 0; i < LATENCY_BUCKETS_MILLIS.length; i++) {
+            String bound = (LATENCY_BUCKETS_MILLIS[i] == Long.MAX_VALUE ?
+                    ">" + LATENCY_BUCKETS_MILLIS[i - 1] + "ms" : "<=" + LATENCY_BUCKETS_MILLIS[i] + "ms");
+            histogram.put(bound, commitLatencies.get(i));
+        }
+        return histogram;
+    }
+
+    private static double perSecond(long count, long millis) {
+        return (millis > 0 ? count * 1000.0 / millis : 0.0);
+    }
+}
@@ -0,0 +1,248 @@
+package semantics;
+
+import org.neo4j.graphdb.DependencyResolver;
+import org.neo4j.graphdb.event.ErrorState;
+import org.neo4j.graphdb.event.KernelEventHandler;
+import org.neo4j.kernel.internal.GraphDatabaseAPI;
+
+import javax.management.InstanceAlreadyExistsException;
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import javax.management.StandardMBean;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Registry of the imports of a database, running or among the last few finished, read by the
+ * semantics.importStatus procedure and exposed over JMX as {@value #OBJECT_NAME},database=&lt;store directory&gt;.
+ */
+public class ImportMonitor implements ImportMonitorMBean {
+
+    static final String OBJECT_NAME = "semantics:type=RDFImport";
+    private static final int FINISHED_KEPT = 10;
+    private static final ImportMetrics NONE = new ImportMetrics(0, null, new UriNodeCache(0));
+
+    // by the dependency resolver of the database, as ImportJobs: the procedures of a call may get a facade of their own
+    private static final Map<DependencyResolver, ImportMonitor> MONITORS = new ConcurrentHashMap<>();
+
+    static {
+        NONE.finished("NONE");
+    }
+
+    private final DependencyResolver database;
+    private final AtomicLong nextId = new AtomicLong();
+    private final List<ImportMetrics> imports = new ArrayList<>();
+    private ObjectName name = null;
+
+    private ImportMonitor(DependencyResolver resolver) {
+        database = resolver;
+    }
+
+    /**
+     * @return the monitor of the database, registering its MBean on first use
+     */
+    static ImportMonitor of(GraphDatabaseAPI db) {
+        DependencyResolver resolver = db.getDependencyResolver();
+        ImportMonitor monitor = MONITORS.get(resolver);
+        if (monitor != null) {
+            return monitor;
+        }
+        synchronized (MONITORS) {
+            monitor = MONITORS.get(resolver);
+            if (monitor == null) {
+                monitor = new ImportMonitor(resolver);
+                monitor.register(db.getStoreDir());
+                db.registerKernelEventHandler(monitor.new Shutdown());
+                MONITORS.put(resolver, monitor);
+            }
+            return monitor;
+        }
+    }
+
+    ImportMetrics started(String url, UriNodeCache nodeCache) {
+        ImportMetrics metrics = new ImportMetrics(nextId.incrementAndGet(), url, nodeCache);
+        synchronized (imports) {
+            imports.add(metrics);
+            int finished = 0;
+            for (Iterator<ImportMetrics> it = imports.iterator(); it.hasNext(); ) {
+                if (!it.next().getStatus().equals(ImportMetrics.RUNNING)) {
+                    finished++;
+                }
+            }
+            for (Iterator<ImportMetrics> it = imports.iterator(); it.hasNext() && finished > FINISHED_KEPT; ) {
+                if (!it.next().getStatus().equals(ImportMetrics.RUNNING)) {
+                    it.remove();
+                    finished--;
+                }
+            }
+        }
+        return metrics;
+    }
+
+    /**
+     * @return the running and recently finished imports, oldest first
+     */
+    List<ImportMetrics> getImports() {
+        synchronized (imports) {
+            return new ArrayList<>(imports);
+        }
+    }
+
+    private ImportMetrics latest() {
+        synchronized (imports) {
+            return (imports.isEmpty() ? NONE : imports.get(imports.size() - 1));
+        }
+    }
+
+    private void register(String storeDir) {
+        try {
+            MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            ObjectName objectName = new ObjectName(OBJECT_NAME + ",database=" + ObjectName.quote(storeDir));
+            StandardMBean mbean = new StandardMBean(this, ImportMonitorMBean.class);
+            try {
+                server.registerMBean(mbean, objectName);
+            } catch (InstanceAlreadyExistsException e) {
+                // left behind by an earlier copy of the plugin, or a database of the same directory not shut down
+                server.unregisterMBean(objectName);
+                server.registerMBean(mbean, objectName);
+            }
+            name = objectName;
+        } catch (JMException | SecurityException e) {
+            // monitoring is best effort, importStatus works without JMX
+        }
+    }
+
+    private void unregister() {
+        if (name == null) {
+            return;
+        }
+        try {
+            ManagementFactory.getPlatformMBeanServer().unregisterMBean(name);
+        } catch (JMException | SecurityException e) {
+            // already replaced by a newer database of the same directory
+        }
+    }
+
+    @Override
+    public String getUrl() {
+        return latest().getUrl();
+    }
+
+    @Override
+    public String getStatus() {
+        return latest().getStatus();
+    }
+
+    @Override
+    public long getElapsedMillis() {
+        return latest().getElapsedMillis();
+    }
+
+    @Override
+    public long getBytesRead() {
+        return latest().getBytesRead();
+    }
+
+    @Override
+    public long getTriplesParsed() {
+        return latest().getTriplesParsed();
+    }
+
+    @Override
+    public long getTriplesCommitted() {
+        return latest().getTriplesCommitted();
+    }
+
+    @Override
+    public long getBatchesCommitted() {
+        return latest().getBatchesCommitted();
+    }
+
+    @Override
+    public double getParseRate() {
+        return latest().getParseRate();
+    }
+
+    @Override
+    public double getTriplesPerSecond() {
+        return latest().getTriplesPerSecond();
+    }
+
+    @Override
+    public long getParseMillis() {
+        return latest().getParseMillis();
+    }
+
+    @Override
+    public long getHandOverMillis() {
+        return latest().getHandOverMillis();
+    }
+
+    @Override
+    public long getLookupMillis() {
+        return latest().getLookupMillis();
+    }
+
+    @Override
+    public long getCommitMillis() {
+        return latest().getCommitMillis();
+    }
+
+    @Override
+    public long getLastBatchHeapBytes() {
+        return latest().getLastBatchHeapBytes();
+    }
+
+    @Override
+    public double getNodeCacheHitRate() {
+        return latest().getNodeCacheHitRate();
+    }
+
+    @Override
+    public Map<String, Long> getCommitLatencyHistogram() {
+        return latest().getCommitLatencyHistogram();
+    }
+
+    @Override
+    public int getRunningImports() {
+        int running = 0;
+        for (ImportMetrics metrics : getImports()) {
+            if (metrics.getStatus().equals(ImportMetrics.RUNNING)) {
+                running++;
+            }
+        }
+        return running;
+    }
+
+    /**
+     * Forgets the imports of the database and removes its MBean when it shuts down.
+     */
+    private class Shutdown implements KernelEventHandler {
+
+        @Override
+        public void beforeShutdown() {
+            MONITORS.remove(database);
+            unregister();
+        }
+
+        @Override
+        public void kernelPanic(ErrorState error) {
+        }
+
+        @Override
+        public Object getResource() {
+            return null;
+        }
+
+        @Override
+        public ExecutionOrder orderComparedTo(KernelEventHandler other) {
+            return ExecutionOrder.DOESNT_MATTER;
+        }
+    }
+}
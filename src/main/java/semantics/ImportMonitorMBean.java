@@ -0,0 +1,44 @@
+package semantics;
+
+import java.util.Map;
+
+/**
+ * JMX view of the most recent RDF import of a database, running or finished, registered as
+ * {@value ImportMonitor#OBJECT_NAME},database=&lt;store directory&gt;.
+ */
+public interface ImportMonitorMBean {
+
+    String getUrl();
+
+    String getStatus();
+
+    long getElapsedMillis();
+
+    long getBytesRead();
+
+    long getTriplesParsed();
+
+    long getTriplesCommitted();
+
+    long getBatchesCommitted();
+
+    double getParseRate();
+
+    double getTriplesPerSecond();
+
+    long getParseMillis();
+
+    long getHandOverMillis();
+
+    long getLookupMillis();
+
+    long getCommitMillis();
+
+    long getLastBatchHeapBytes();
+
+    double getNodeCacheHitRate();
+
+    Map<String, Long> getCommitLatencyHistogram();
+
+    int getRunningImports();
+}
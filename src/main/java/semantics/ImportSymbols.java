@@ -0,0 +1,73 @@
+package semantics;
+
+import org.neo4j.graphdb.Label;
+import org.neo4j.graphdb.RelationshipType;
+import org.openrdf.model.IRI;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Function;
+
+/**
+ * The property keys, labels and relationship types of one import. A document uses a few hundred distinct
+ * predicates and types across millions of triples, so each IRI is shortened once and each {@link Label} or
+ * {@link RelationshipType} is created once, instead of once per triple. Shared by the parsers and the writers
+ * of an import, so lookups are lock free.
+ */
+class ImportSymbols {
+
+    // a document minting a new predicate for every triple must not turn the tables into a leak
+    private static final int MAX_ENTRIES = 100000;
+
+    private final NamespacePrefixes prefixes;
+    private final boolean shortenUris;
+    private final Map<String, String> shortNames = new ConcurrentHashMap<>();
+    private final Map<String, Label> labels = new ConcurrentHashMap<>();
+    private final Map<String, RelationshipType> relTypes = new ConcurrentHashMap<>();
+
+    ImportSymbols(NamespacePrefixes namespacePrefixes, boolean shortenUrls) {
+        prefixes = namespacePrefixes;
+        shortenUris = shortenUrls;
+    }
+
+    /**
+     * @return prefix_localName when shortening, with a new nsN prefix for an unknown namespace, or the full IRI
+     */
+    String shorten(IRI iri) {
+        String uri = iri.stringValue();
+        if (!shortenUris) {
+            return uri;
+        }
+        String shortName = shortNames.get(uri);
+        if (shortName == null) {
+            shortName = prefixes.getPrefix(iri.getNamespace()) + "_" + iri.getLocalName();
+            if (shortNames.size() < MAX_ENTRIES) {
+                shortNames.put(uri, shortName);
+            }
+        }
+        return shortName;
+    }
+
+    Label label(String name) {
+        return intern(labels, name, Label::label);
+    }
+
+    RelationshipType relationshipType(String name) {
+        return intern(relTypes, name, RelationshipType::withName);
+    }
+
+    private static <T> T intern(Map<String, T> table, String name, Function<String, T> create) {
+        T symbol = table.get(name);
+        if (symbol == null) {
+            symbol = create.apply(name);
+            if (table.size() < MAX_ENTRIES) {
+                table.put(name, symbol);
+            }
+        }
+        return symbol;
+    }
+
+    NamespacePrefixes getPrefixes() {
+        return prefixes;
+    }
+}
@@ -1,18 +1,21 @@
 package semantics;
-import org.neo4j.graphdb.GraphDatabaseService;
+import apoc.result.NodeResult;
+import org.neo4j.graphdb.Label;
+import org.neo4j.graphdb.Node;
 import org.neo4j.graphdb.QueryExecutionException;
+import org.neo4j.graphdb.RelationshipType;
+import org.neo4j.kernel.internal.GraphDatabaseAPI;
 import org.neo4j.procedure.Context;
 import org.neo4j.procedure.Mode;
 import org.neo4j.procedure.Name;
 import org.neo4j.procedure.PerformsWrites;
 import org.neo4j.procedure.Procedure;
-import org.openrdf.model.*;
-import org.openrdf.model.impl.LinkedHashModel;
+import org.neo4j.procedure.UserFunction;
+import org.openrdf.model.IRI;
 import org.openrdf.model.vocabulary.OWL;
 import org.openrdf.model.vocabulary.RDF;
 import org.openrdf.model.vocabulary.RDFS;
 import org.openrdf.rio.*;
-import org.openrdf.rio.helpers.StatementCollector;
 
 import java.io.IOException;
 import java.io.InputStream;
@@ -20,35 +23,56 @@ import java.net.MalformedURLException;
 import java.net.URL;
 import java.util.HashMap;
 import java.util.Map;
-import java.util.Set;
+import java.util.function.Consumer;
 import java.util.stream.Stream;
 /**
  * Created by CPR3 on 3/7/2017.
  */
 public class LiteOntologyImporter {
     @Context
-    public GraphDatabaseService db;
+    public GraphDatabaseAPI db;
     public static RDFFormat[] availableParsers = new RDFFormat[]{RDFFormat.RDFXML, RDFFormat.JSONLD, RDFFormat.TURTLE,
             RDFFormat.NTRIPLES, RDFFormat.TRIG};
 
 
     @Procedure(mode = Mode.WRITE)
-    public Stream<ImportResults> liteOntoImport(@Name("url") String url, @Name("format") String format) {
+    public Stream<ImportResults> liteOntoImport(@Name("url") String url, @Name("format") String format,
+                                                @Name(value = "props", defaultValue = "{}") Map<String, Object> props) {
         ImportResults importResults = new ImportResults();
         URL documentUrl;
         int classesLoaded = 0;
         int datatypePropsLoaded = 0;
         int objPropsLoaded = 0;
+        ImportConfig config = new ImportConfig(props);
         try {
             documentUrl = new URL(url);
             InputStream inputStream = documentUrl.openStream();
             RDFParser rdfParser = Rio.createParser(getFormat(format));
-            Model model = new LinkedHashModel();
-            rdfParser.setRDFHandler(new StatementCollector(model));
+            OntologyIndex ontology = new OntologyIndex();
+            rdfParser.setRDFHandler(ontology);
             rdfParser.parse(inputStream, documentUrl.toString());
-            classesLoaded = extractClasses(model);
-            objPropsLoaded = extractProps(model, OWL.OBJECTPROPERTY);
-            datatypePropsLoaded = extractProps(model, OWL.DATATYPEPROPERTY);
+            OntologyWriter writer = new OntologyWriter(db, config.getCommitSize(),
+                    ontology.ontologyIri(documentUrl.toString()), config.isDiff());
+            // terms are built from the index again for each pass instead of being held
+            classesLoaded = extractClasses(ontology, writer::declare);
+            objPropsLoaded = extractProps(ontology, OWL.OBJECTPROPERTY, writer::declare);
+            datatypePropsLoaded = extractProps(ontology, OWL.DATATYPEPROPERTY, writer::declare);
+            extractTerms(ontology, writer::writeTerm);
+            // after all the terms, so a domain can be an object property declared further down the document
+            extractTerms(ontology, writer::writeRelationships);
+            writer.finish();
+            if (writer.hierarchyChanged(OntologyWriter.SCO)) {
+                HierarchyIndex.rebuild(db, OntologyWriter.SCO, config.getCommitSize(), OntologyWriter.CLASS);
+            }
+            if (writer.hierarchyChanged(OntologyWriter.SPO)) {
+                HierarchyIndex.rebuild(db, OntologyWriter.SPO, config.getCommitSize(), OntologyWriter.OBJECT_PROPERTY,
+                        OntologyWriter.DATATYPE_PROPERTY);
+            }
+            if (config.isDiff()) {
+                long[] counts = writer.getCounts();
+                importResults.setExtraInfo(String.format("added: %d, changed: %d, unchanged: %d, removed: %d",
+                        counts[0], counts[1], counts[2], counts[3]));
+            }
 
         } catch (MalformedURLException e) {
             e.printStackTrace();
@@ -60,93 +84,116 @@ public class LiteOntologyImporter {
         return Stream.of(importResults);
     }
 
-    private int extractProps(Model model, IRI propType) {
+    /**
+     * Numbers the hierarchy of the nodes with the label, related by relationships of the type from subclass to
+     * superclass, for semantics.subClasses and semantics.isSubClassOf. liteOntoImport indexes the SCO hierarchy of
+     * :Class and the SPO hierarchy of properties, other hierarchies, or hierarchies changed since, are indexed
+     * with this procedure.
+     */
+    @Procedure(mode = Mode.WRITE)
+    public Stream<HierarchyResults> indexHierarchy(@Name("label") String label, @Name("type") String type,
+                                                   @Name(value = "props", defaultValue = "{}") Map<String, Object> props) {
+        return Stream.of(new HierarchyResults(HierarchyIndex.rebuild(db, RelationshipType.withName(type),
+                new ImportConfig(props).getCommitSize(), Label.label(label))));
+    }
+
+    /**
+     * The nodes below the node in its indexed hierarchy of the type, SCO by default, found with range lookups on
+     * its numbers. Nothing when the node is in no indexed hierarchy of the type, or the hierarchy changed since it
+     * was indexed.
+     */
+    @Procedure
+    public Stream<NodeResult> subClasses(@Name("node") Node node,
+                                         @Name(value = "type", defaultValue = "SCO") String type) {
+        HierarchyIndex index = HierarchyIndex.of(db, RelationshipType.withName(type), node);
+        Stream<Node> descendants = (index != null ? index.descendants(db, node) : null);
+        return (descendants != null ? descendants.map(NodeResult::new) : Stream.empty());
+    }
+
+    /**
+     * @return whether the node is the superclass or below it in their indexed hierarchy of the type, SCO by
+     * default, null when they are not indexed or the hierarchy changed since it was indexed
+     */
+    @UserFunction
+    public Boolean isSubClassOf(@Name("node") Node node, @Name("superClass") Node superClass,
+                                @Name(value = "type", defaultValue = "SCO") String type) {
+        if (node == null || superClass == null) {
+            return null;
+        }
+        HierarchyIndex index = HierarchyIndex.of(db, RelationshipType.withName(type), superClass);
+        return (index != null ? index.isBelow(node, superClass) : null);
+    }
+
+    private void extractTerms(OntologyIndex ontology, Consumer<OntologyWriter.Term> consumer) {
+        extractClasses(ontology, consumer);
+        extractProps(ontology, OWL.OBJECTPROPERTY, consumer);
+        extractProps(ontology, OWL.DATATYPEPROPERTY, consumer);
+    }
+
+    private int extractProps(OntologyIndex ontology, IRI propType, Consumer<OntologyWriter.Term> consumer) {
         // loads properties
         int propsLoaded = 0;
-        Set<Resource> allDatatypeProps = model.filter(null, RDF.TYPE, propType).subjects();
-        for ( Resource propResource : allDatatypeProps) {
-            if (!(propResource instanceof BNode)) {
-                String cypher = String.format("MERGE (p:%s { uri:'%s'}) SET p+={props}",
-                        getNeoEquivalentForProp(propType),
-                        propResource.stringValue());
-                Map<String, Object> props = new HashMap<>();
-                for (Value propLabel : model.filter(propResource, RDFS.LABEL, null).objects()) {
-                    props.put("label", propLabel.stringValue().replace("'", "\'"));
-                    break;
+        for (int prop : ontology.subjects(RDF.TYPE, propType)) {
+            OntologyWriter.Term term = new OntologyWriter.Term(getNeoEquivalentForProp(propType), ontology.iri(prop),
+                    labelAndComment(ontology, prop));
+            for (int domain : ontology.objects(prop, RDFS.DOMAIN)) {
+                //This last bit picks up OWL definitions of attributes on properties.
+                if (ontology.contains(domain, RDF.TYPE, OWL.CLASS, RDFS.CLASS, OWL.OBJECTPROPERTY)) {
+                    term.relate(OntologyWriter.DOMAIN, ontology.iri(domain));
                 }
-                for (Value propComment : model.filter(propResource, RDFS.COMMENT, null).objects()) {
-                    props.put("comment", propComment.stringValue().replace("'", "\'"));
-                    break;
+            }
+            for (int range : ontology.objects(prop, RDFS.RANGE)) {
+                //only picks ranges that are classes, which means, only ObjectProperties
+                // (no XSD ranges for DatatypeProps)
+                if (ontology.contains(range, RDF.TYPE, OWL.CLASS, RDFS.CLASS)) {
+                    term.relate(OntologyWriter.RANGE, ontology.iri(range));
                 }
-                Map<String, Object> params = new HashMap<>();
-                params.put("props", props);
-                db.execute(cypher, params);
-                propsLoaded++;
-                extractDomainAndRange(model, propResource, propType);
             }
+            for (int superProp : ontology.objects(prop, RDFS.SUBPROPERTYOF)) {
+                term.relate(OntologyWriter.SPO, ontology.iri(superProp));
+            }
+            consumer.accept(term);
+            propsLoaded++;
         }
         return propsLoaded;
     }
 
-    private String getNeoEquivalentForProp(IRI propType) {
+    private Label getNeoEquivalentForProp(IRI propType) {
         if(propType.equals(OWL.DATATYPEPROPERTY)){
-            return "DatatypeProperty";
+            return OntologyWriter.DATATYPE_PROPERTY;
         }else {
             //It is an objectproperty
-            return "ObjectProperty";
+            return OntologyWriter.OBJECT_PROPERTY;
         }
     }
 
-    private void extractDomainAndRange(Model model, Resource propResource, IRI propType) {
-        for (Value object: model.filter(propResource, RDFS.DOMAIN, null).objects()){
-            if (object instanceof IRI && (model.contains((IRI)object,RDF.TYPE, OWL.CLASS) ||
-                    model.contains((IRI)object,RDF.TYPE, RDFS.CLASS) ||
-                    model.contains((IRI)object,RDF.TYPE, OWL.OBJECTPROPERTY))){
-                //This last bit picks up OWL definitions of attributes on properties.
-                db.execute(String.format(
-                        "MATCH (p:%s { uri:'%s'}), (c { uri:'%s'}) MERGE (p)-[:DOMAIN]->(c)",
-                        // c can be a class or an object property
-                        getNeoEquivalentForProp(propType), propResource.stringValue(), object.stringValue()));
-            }
-        }
-        for (Value object: model.filter(propResource, RDFS.RANGE, null).objects()){
-            if (object instanceof IRI && (model.contains((IRI)object,RDF.TYPE, OWL.CLASS) ||
-                    model.contains((IRI)object,RDF.TYPE, RDFS.CLASS))){
-                //only picks ranges that are classes, which means, only ObjectProperties
-                // (no XSD ranges for DatatypeProps)
-                db.execute(String.format(
-                        "MATCH (p:%s { uri:'%s'}), (c:Class { uri:'%s'}) MERGE (p)-[:RANGE]->(c)",
-                        getNeoEquivalentForProp(propType), propResource.stringValue(), object.stringValue()));
-            }
-        }
-    }
-
-    private int extractClasses(Model model) {
+    private int extractClasses(OntologyIndex ontology, Consumer<OntologyWriter.Term> consumer) {
         // loads Simple Named Classes (https://www.w3.org/TR/2004/REC-owl-guide-20040210/#SimpleClasses)
         int classesLoaded = 0;
-        Set<Resource> allClasses = model.filter(null, RDF.TYPE, OWL.CLASS).subjects();
-        allClasses.addAll(model.filter(null, RDF.TYPE, RDFS.CLASS).subjects());
-        for ( Resource classResource : allClasses) {
-            if (!(classResource instanceof BNode)) {
-                String cypher = String.format("MERGE (p:Class { uri:'%s'}) SET p+={props}", classResource.stringValue());
-                Map<String, Object> props = new HashMap<>();
-                for (Value classLabel : model.filter(classResource, RDFS.LABEL, null).objects()) {
-                    props.put("label", classLabel.stringValue().replace("'", "\'"));
-                    break;
-                }
-                for (Value classComment : model.filter(classResource, RDFS.COMMENT, null).objects()) {
-                    props.put("comment", classComment.stringValue().replace("'", "\'"));
-                    break;
-                }
-                Map<String, Object> params = new HashMap<>();
-                params.put("props", props);
-                db.execute(cypher, params);
-                classesLoaded++;
+        for (int classId : ontology.subjects(RDF.TYPE, OWL.CLASS, RDFS.CLASS)) {
+            OntologyWriter.Term term = new OntologyWriter.Term(OntologyWriter.CLASS, ontology.iri(classId),
+                    labelAndComment(ontology, classId));
+            // only between terms of the ontology, restrictions and other anonymous superclasses are skipped
+            for (int superClass : ontology.objects(classId, RDFS.SUBCLASSOF)) {
+                term.relate(OntologyWriter.SCO, ontology.iri(superClass));
             }
+            consumer.accept(term);
+            classesLoaded++;
         }
         return classesLoaded;
     }
 
+    private Map<String, Object> labelAndComment(OntologyIndex ontology, int term) {
+        Map<String, Object> props = new HashMap<>();
+        if (ontology.label(term) != null) {
+            props.put("label", ontology.label(term));
+        }
+        if (ontology.comment(term) != null) {
+            props.put("comment", ontology.comment(term));
+        }
+        return props;
+    }
+
     private RDFFormat getFormat(String format) {
         if (format != null) {
             for (RDFFormat parser : availableParsers) {
@@ -157,6 +204,14 @@ public class LiteOntologyImporter {
         return RDFFormat.TURTLE; //some default
     }
 
+    public static class HierarchyResults {
+        public long nodesIndexed;
+
+        public HierarchyResults(long nodesIndexed) {
+            this.nodesIndexed = nodesIndexed;
+        }
+    }
+
     public static class ImportResults {
         public String terminationStatus = "OK";
         public long elementsLoaded = 0;
@@ -166,6 +221,10 @@ public class LiteOntologyImporter {
             this.elementsLoaded = elementsLoaded;
         }
 
+        public void setExtraInfo(String extraInfo) {
+            this.extraInfo = extraInfo;
+        }
+
         public void setTerminationKO(String message) {
             this.terminationStatus = "KO";
             this.extraInfo = message;
@@ -0,0 +1,150 @@
+package semantics;
+
+import apoc.util.Util;
+import org.neo4j.graphdb.GraphDatabaseService;
+import org.neo4j.graphdb.Label;
+import org.neo4j.graphdb.Node;
+import org.neo4j.graphdb.NotFoundException;
+import org.neo4j.graphdb.Relationship;
+import org.neo4j.graphdb.ResourceIterator;
+import org.neo4j.kernel.internal.GraphDatabaseAPI;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Dictionary of the named graphs loaded from TriG and N-Quads documents, kept as :NamedGraph {uri} nodes.
+ * The id of a graph is the id of its node, a long stored on the resources of the graph instead of the graph IRI.
+ *
+ * A resource gets one node per graph it appears in: the resources of a named graph carry the graph id in a
+ * {@code graph} property and a Graph_id label, so the statements of a graph can be found, and dropped, with
+ * a label scan and without touching the other graphs. Resources of the default graph have neither.
+ * The label and property are storage details: the export endpoints leave them out and write the graph IRI as
+ * the context of the statements instead.
+ */
+public class NamedGraphs {
+
+    static final Label LABEL = Label.label("NamedGraph");
+    public static final String GRAPH_PROPERTY = "graph";
+    public static final long DEFAULT_GRAPH = -1;
+
+    private static final String LABEL_PREFIX = "Graph_";
+    // imports running concurrently must not both create the node of a new graph
+    private static final Object CREATE_LOCK = new Object();
+
+    private final GraphDatabaseAPI db;
+    private final Map<String, Long> ids = new ConcurrentHashMap<>();
+
+    NamedGraphs(GraphDatabaseAPI graphdb) {
+        db = graphdb;
+    }
+
+    /**
+     * @return the id of the graph, creating its :NamedGraph node in a transaction of its own when the graph is new,
+     * so its resources never refer to a graph missing from the dictionary
+     */
+    long getId(String graphUri) {
+        Long id = ids.get(graphUri);
+        if (id != null) {
+            return id;
+        }
+        synchronized (CREATE_LOCK) {
+            id = Util.inTx(db, () -> {
+                Node node = db.findNode(LABEL, "uri", graphUri);
+                if (node == null) {
+                    node = db.createNode(LABEL);
+                    node.setProperty("uri", graphUri);
+                }
+                return node.getId();
+            });
+        }
+        ids.put(graphUri, id);
+        return id;
+    }
+
+    /**
+     * @return whether the database has a named graph, in which case a uri can have a node per graph
+     */
+    static boolean exist(GraphDatabaseService db) {
+        try (ResourceIterator<Node> graphs = db.findNodes(LABEL)) {
+            return graphs.hasNext();
+        }
+    }
+
+    static Label label(long graph) {
+        return Label.label(LABEL_PREFIX + graph);
+    }
+
+    public static boolean isGraphLabel(Label label) {
+        return label.name().startsWith(LABEL_PREFIX);
+    }
+
+    /**
+     * @return the id of the graph the resource belongs to, {@link #DEFAULT_GRAPH} for the default graph
+     */
+    public static long graphOf(Node resource) {
+        return ((Number) resource.getProperty(GRAPH_PROPERTY, DEFAULT_GRAPH)).longValue();
+    }
+
+    /**
+     * @return the IRI of the graph, null when it is the default graph or was dropped
+     */
+    public static String uri(GraphDatabaseService db, long graph) {
+        if (graph == DEFAULT_GRAPH) {
+            return null;
+        }
+        try {
+            Node node = db.getNodeById(graph);
+            return (node.hasLabel(LABEL) ? (String) node.getProperty("uri", null) : null);
+        } catch (NotFoundException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Deletes the resources of the graph and their relationships, {@code batchSize} resources per transaction,
+     * then the graph's :NamedGraph node. The other graphs are not touched.
+     *
+     * @return the number of resources and of relationships deleted, null when the graph is unknown
+     */
+    static long[] drop(GraphDatabaseAPI db, String graphUri, long batchSize) {
+        Long graph = Util.inTx(db, () -> {
+            Node node = db.findNode(LABEL, "uri", graphUri);
+            return (node != null ? node.getId() : null);
+        });
+        if (graph == null) {
+            return null;
+        }
+        long[] deleted = new long[2];
+        long deletedNodes;
+        do {
+            deletedNodes = Util.inTx(db, () -> deleteResources(db, graph, Math.max(batchSize, 1), deleted));
+        } while (deletedNodes > 0);
+        Util.inTx(db, () -> {
+            db.getNodeById(graph).delete();
+            return null;
+        });
+        return deleted;
+    }
+
+    private static long deleteResources(GraphDatabaseService db, long graph, long batchSize, long[] deleted) {
+        List<Node> resources = new ArrayList<>();
+        try (ResourceIterator<Node> nodes = db.findNodes(label(graph))) {
+            while (nodes.hasNext() && resources.size() < batchSize) {
+                resources.add(nodes.next());
+            }
+        }
+        for (Node resource : resources) {
+            // both ends of a relationship are in the same graph, it is deleted with whichever comes first
+            for (Relationship rel : resource.getRelationships()) {
+                rel.delete();
+                deleted[1]++;
+            }
+            resource.delete();
+            deleted[0]++;
+        }
+        return resources.size();
+    }
+}
@@ -0,0 +1,63 @@
+package semantics;
+
+import org.neo4j.graphdb.GraphDatabaseService;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Namespace to prefix map used when shortening URIs. Safe to share between parsers running concurrently:
+ * lookups are lock free and new prefixes are numbered under a lock, so every parser of an import agrees
+ * on the nsN prefix given to each namespace.
+ */
+class NamespacePrefixes {
+
+    private final Map<String, String> prefixes = new ConcurrentHashMap<>();
+
+    void putAll(Map<String, String> existing) {
+        prefixes.putAll(existing);
+    }
+
+    /**
+     * Adds the prefixes stored in the :NamespacePrefixDefinition node, read through the {@link NamespaceRegistry}.
+     */
+    void load(GraphDatabaseService db) {
+        putAll(NamespaceRegistry.of(db).current().asMap());
+    }
+
+    /**
+     * Adds the prefixes to the :NamespacePrefixDefinition node, creating it if needed.
+     */
+    void save(GraphDatabaseService db) {
+        Map<String, Object> params = new HashMap<>();
+        params.put("props", asMap());
+        db.execute("MERGE (n:NamespacePrefixDefinition) SET n+={props}", params);
+    }
+
+    String getPrefix(String namespace) {
+        String prefix = prefixes.get(namespace);
+        if (prefix != null) {
+            return prefix;
+        }
+        synchronized (this) {
+            prefix = prefixes.get(namespace);
+            if (prefix == null) {
+                prefix = "ns" + prefixes.size();
+                prefixes.put(namespace, prefix);
+            }
+            return prefix;
+        }
+    }
+
+    int size() {
+        return prefixes.size();
+    }
+
+    /**
+     * @return a snapshot of the namespace to prefix definitions
+     */
+    Map<String, String> asMap() {
+        return new HashMap<>(prefixes);
+    }
+}
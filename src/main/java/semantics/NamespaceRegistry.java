@@ -0,0 +1,223 @@
+package semantics;
+
+import org.neo4j.graphdb.GraphDatabaseService;
+import org.neo4j.graphdb.Label;
+import org.neo4j.graphdb.Node;
+import org.neo4j.graphdb.Result;
+import org.neo4j.graphdb.event.ErrorState;
+import org.neo4j.graphdb.event.KernelEventHandler;
+import org.neo4j.graphdb.event.LabelEntry;
+import org.neo4j.graphdb.event.PropertyEntry;
+import org.neo4j.graphdb.event.TransactionData;
+import org.neo4j.graphdb.event.TransactionEventHandler;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * The namespace prefix definitions of a database, shared by every procedure and endpoint of the process.
+ * The :NamespacePrefixDefinition node is read once into an immutable {@link Namespaces} snapshot holding
+ * both the namespace to prefix and the prefix to namespace maps. Reading the current snapshot takes no lock
+ * and runs no query: a transaction event handler bumps the version when a committed transaction changes the
+ * definition node, and the next reader loads a new snapshot.
+ *
+ * A snapshot loaded in a transaction that has written the definition node includes its uncommitted prefixes,
+ * as the query it replaces did. They stay in the snapshot if that transaction rolls back, which is harmless:
+ * prefixes are only ever added, and imports commit their batches in transactions of their own anyway.
+ */
+public class NamespaceRegistry {
+
+    private static final Label DEFINITION = Label.label("NamespacePrefixDefinition");
+    private static final Map<GraphDatabaseService, NamespaceRegistry> REGISTRIES = new ConcurrentHashMap<>();
+
+    private final GraphDatabaseService db;
+    private final AtomicLong version = new AtomicLong();
+    private volatile Namespaces snapshot = null;
+
+    private NamespaceRegistry(GraphDatabaseService graphdb) {
+        db = graphdb;
+    }
+
+    /**
+     * @return the registry of the database, registering its event handlers on first use
+     */
+    public static NamespaceRegistry of(GraphDatabaseService db) {
+        NamespaceRegistry registry = REGISTRIES.get(db);
+        if (registry != null) {
+            return registry;
+        }
+        synchronized (REGISTRIES) {
+            registry = REGISTRIES.get(db);
+            if (registry == null) {
+                registry = new NamespaceRegistry(db);
+                db.registerTransactionEventHandler(registry.new DefinitionChanges());
+                db.registerKernelEventHandler(registry.new Shutdown());
+                REGISTRIES.put(db, registry);
+            }
+            return registry;
+        }
+    }
+
+    /**
+     * @return the current definitions, loaded from the database when they changed since the last call
+     */
+    public Namespaces current() {
+        Namespaces current = snapshot;
+        if (current != null && current.version == version.get()) {
+            return current;
+        }
+        synchronized (this) {
+            current = snapshot;
+            long loading = version.get();
+            if (current == null || current.version != loading) {
+                // a change committed while loading bumps the version again, so this snapshot is never trusted
+                current = load(loading);
+                snapshot = current;
+            }
+            return current;
+        }
+    }
+
+    private Namespaces load(long loadingVersion) {
+        Map<String, String> prefixes = new HashMap<>();
+        Set<Long> nodeIds = new HashSet<>();
+        Result nslist = db.execute("MATCH (n:NamespacePrefixDefinition) \n" +
+                "UNWIND keys(n) AS namespace\n" +
+                "RETURN id(n) AS id, namespace, n[namespace] as prefix");
+        while (nslist.hasNext()) {
+            Map<String, Object> ns = nslist.next();
+            nodeIds.add((Long) ns.get("id"));
+            prefixes.put((String) ns.get("namespace"), (String) ns.get("prefix"));
+        }
+        return new Namespaces(loadingVersion, prefixes, nodeIds);
+    }
+
+    /**
+     * An immutable version of the namespace prefix definitions.
+     */
+    public static final class Namespaces {
+
+        private final long version;
+        private final Map<String, String> prefixes;
+        private final Map<String, String> namespaces = new HashMap<>();
+        private final Set<Long> definitionNodes;
+
+        private Namespaces(long version, Map<String, String> prefixByNamespace, Set<Long> nodeIds) {
+            this.version = version;
+            prefixes = Collections.unmodifiableMap(prefixByNamespace);
+            for (Map.Entry<String, String> definition : prefixByNamespace.entrySet()) {
+                namespaces.put(definition.getValue(), definition.getKey());
+            }
+            definitionNodes = nodeIds;
+        }
+
+        public long getVersion() {
+            return version;
+        }
+
+        /**
+         * @return the prefix of the namespace, or null
+         */
+        public String getPrefix(String namespace) {
+            return prefixes.get(namespace);
+        }
+
+        /**
+         * @return the namespace of the prefix, or null
+         */
+        public String getNamespace(String prefix) {
+            return namespaces.get(prefix);
+        }
+
+        /**
+         * @return the namespace to prefix definitions
+         */
+        public Map<String, String> asMap() {
+            return prefixes;
+        }
+    }
+
+    /**
+     * Flags the transactions changing a definition node, before they commit while their nodes can still be read,
+     * and invalidates the snapshot once they have committed. Only the ids of the changed nodes are compared, so
+     * the cost for an import batch is a pass over its changes.
+     */
+    private class DefinitionChanges extends TransactionEventHandler.Adapter<Boolean> {
+
+        @Override
+        public Boolean beforeCommit(TransactionData data) {
+            Namespaces current = snapshot;
+            if (current == null) {
+                // a first snapshot may be loading, it must not miss this transaction
+                return Boolean.TRUE;
+            }
+            return (changesDefinition(data, current.definitionNodes) ? Boolean.TRUE : null);
+        }
+
+        @Override
+        public void afterCommit(TransactionData data, Boolean changed) {
+            if (changed != null) {
+                version.incrementAndGet();
+            }
+        }
+
+        private boolean changesDefinition(TransactionData data, Set<Long> definitionNodes) {
+            for (LabelEntry entry : data.assignedLabels()) {
+                if (entry.label().name().equals(DEFINITION.name())) {
+                    return true;
+                }
+            }
+            for (LabelEntry entry : data.removedLabels()) {
+                if (entry.label().name().equals(DEFINITION.name())) {
+                    return true;
+                }
+            }
+            if (definitionNodes.isEmpty()) {
+                return false;
+            }
+            for (PropertyEntry<Node> entry : data.assignedNodeProperties()) {
+                if (definitionNodes.contains(entry.entity().getId())) {
+                    return true;
+                }
+            }
+            for (PropertyEntry<Node> entry : data.removedNodeProperties()) {
+                if (definitionNodes.contains(entry.entity().getId())) {
+                    return true;
+                }
+            }
+            for (Node node : data.deletedNodes()) {
+                if (definitionNodes.contains(node.getId())) {
+                    return true;
+                }
+            }
+            return false;
+        }
+    }
+
+    private class Shutdown implements KernelEventHandler {
+
+        @Override
+        public void beforeShutdown() {
+            REGISTRIES.remove(db);
+        }
+
+        @Override
+        public void kernelPanic(ErrorState error) {
+        }
+
+        @Override
+        public Object getResource() {
+            return null;
+        }
+
+        @Override
+        public ExecutionOrder orderComparedTo(KernelEventHandler other) {
+            return ExecutionOrder.DOESNT_MATTER;
+        }
+    }
+}
@@ -0,0 +1,172 @@
+package semantics;
+
+import org.neo4j.graphdb.Node;
+import org.neo4j.graphdb.NotFoundException;
+import org.neo4j.graphdb.Transaction;
+import org.neo4j.kernel.api.KernelTransaction;
+import org.neo4j.kernel.api.ReadOperations;
+import org.neo4j.kernel.api.Statement;
+import org.neo4j.kernel.impl.core.ThreadToStatementContextBridge;
+import org.neo4j.kernel.impl.store.id.IdGeneratorFactory;
+import org.neo4j.kernel.impl.store.id.IdType;
+import org.neo4j.kernel.internal.GraphDatabaseAPI;
+
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.Spliterators;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BiConsumer;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+/**
+ * Visits every node of the database in parallel. The node id space, up to the highest id in use when the scan
+ * starts, is split in ranges that {@code parallelism} threads read, each range in its own read transaction, skipping
+ * the ids of deleted nodes. The results the visitor emits are streamed back as they are found, through a bounded
+ * queue so the threads wait when the caller does not keep up. Closing the stream, or the transaction of the
+ * caller, stops the scan: Cypher does not close the stream of a procedure whose results are cut short by a LIMIT.
+ *
+ * Results come in no particular order. Nodes created during the scan past the highest id are not visited.
+ */
+class NodeScan<T> implements Iterator<T> {
+
+    // ranges per thread, so a thread that finishes early takes over the work of a slow one
+    private static final int PARTITIONS_PER_THREAD = 8;
+    private static final long MIN_PARTITION_SIZE = 10000;
+    private static final int QUEUE_SIZE = 10000;
+    private static final Object END = new Object();
+
+    private final GraphDatabaseAPI db;
+    private final BiConsumer<Node, Consumer<T>> visitor;
+    private final BlockingQueue<Object> queue = new ArrayBlockingQueue<>(QUEUE_SIZE);
+    private final AtomicInteger remaining = new AtomicInteger();
+    private volatile boolean closed = false;
+    private Object next = null;
+
+    /**
+     * @param visitor called with each node and the consumer of its results, from the scanning threads
+     * @return the results of the visitor, the scan stops when the stream or the transaction of the caller is closed
+     */
+    static <T> Stream<T> scan(GraphDatabaseAPI db, int parallelism, BiConsumer<Node, Consumer<T>> visitor) {
+        NodeScan<T> scan = new NodeScan<>(db, Math.max(parallelism, 1), visitor);
+        KernelTransaction caller = db.getDependencyResolver().resolveDependency(ThreadToStatementContextBridge.class)
+                .getKernelTransactionBoundToThisThread(false);
+        if (caller != null) {
+            caller.registerCloseListener(txId -> scan.close());
+        }
+        return StreamSupport.stream(Spliterators.spliteratorUnknownSize(scan, 0), false).onClose(scan::close);
+    }
+
+    private NodeScan(GraphDatabaseAPI db, int parallelism, BiConsumer<Node, Consumer<T>> visitor) {
+        this.db = db;
+        this.visitor = visitor;
+        long highId = db.getDependencyResolver().resolveDependency(IdGeneratorFactory.class)
+                .get(IdType.NODE).getHighestPossibleIdInUse() + 1;
+        long partitionSize = Math.max(MIN_PARTITION_SIZE,
+                (highId + parallelism * PARTITIONS_PER_THREAD - 1) / (parallelism * PARTITIONS_PER_THREAD));
+        int partitions = (int) Math.max(1, (highId + partitionSize - 1) / partitionSize);
+        remaining.set(partitions);
+        AtomicInteger threadCount = new AtomicInteger();
+        ExecutorService pool = Executors.newFixedThreadPool(Math.min(parallelism, partitions), runnable -> {
+            Thread thread = new Thread(runnable, "node-scan-" + threadCount.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+        for (int i = 0; i < partitions; i++) {
+            long from = i * partitionSize;
+            long to = Math.min(highId, from + partitionSize);
+            pool.execute(() -> scanPartition(from, to));
+        }
+        // the threads stop once the queue is done with, they are not interrupted while they read the store
+        pool.shutdown();
+    }
+
+    private void scanPartition(long from, long to) {
+        Consumer<T> results = this::put;
+        try (Transaction tx = db.beginTx();
+             Statement statement = db.getDependencyResolver()
+                     .resolveDependency(ThreadToStatementContextBridge.class).get()) {
+            ReadOperations ops = statement.readOperations();
+            for (long id = from; id < to && !closed; id++) {
+                if (ops.nodeExists(id)) {
+                    try {
+                        visitor.accept(db.getNodeById(id), results);
+                    } catch (NotFoundException e) {
+                        // deleted since, not visited
+                    }
+                }
+            }
+            tx.success();
+        } catch (Throwable t) {
+            // an Error too, the caller would otherwise wait for the end of the scan forever
+            put(new Failure(t));
+        } finally {
+            if (remaining.decrementAndGet() == 0) {
+                put(END);
+            }
+        }
+    }
+
+    /**
+     * Waits for room in the queue, the result is dropped once the scan is closed.
+     */
+    private void put(Object result) {
+        try {
+            while (!closed && !queue.offer(result, 100, TimeUnit.MILLISECONDS)) {
+                // the caller is behind
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    @Override
+    public boolean hasNext() {
+        if (next == null && !closed) {
+            try {
+                next = queue.take();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                close();
+                throw new RuntimeException("Node scan interrupted", e);
+            }
+            if (next instanceof Failure) {
+                close();
+                throw new RuntimeException("Node scan failed", ((Failure) next).cause);
+            }
+            if (next == END) {
+                close();
+            }
+        }
+        return next != null && next != END;
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public T next() {
+        if (!hasNext()) {
+            throw new NoSuchElementException();
+        }
+        T result = (T) next;
+        next = null;
+        return result;
+    }
+
+    private void close() {
+        closed = true;
+    }
+
+    private static class Failure {
+        final Throwable cause;
+
+        Failure(Throwable cause) {
+            this.cause = cause;
+        }
+    }
+}
@@ -0,0 +1,237 @@
+package semantics;
+
+import org.openrdf.model.IRI;
+import org.openrdf.model.Statement;
+import org.openrdf.model.Value;
+import org.openrdf.model.vocabulary.OWL;
+import org.openrdf.model.vocabulary.RDF;
+import org.openrdf.model.vocabulary.RDFS;
+import org.openrdf.rio.RDFHandlerException;
+import org.openrdf.rio.helpers.AbstractRDFHandler;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The part of an ontology the ontology import reads, built while the document is parsed: the type of its classes
+ * and properties, their first label and comment, their domains and ranges and the class and property hierarchies.
+ * Every other statement is dropped as it is parsed, so the heap holds the terms of the ontology and not its axioms.
+ *
+ * IRIs are encoded to ints, in the order they first appear. The statements of each predicate are kept as two sorted
+ * arrays of subject and object ids packed in longs, one by subject and one by object (SPO and POS), so the objects
+ * of a subject and the subjects of an object are found by binary search. Statements whose subject or object is not
+ * an IRI are dropped, as the import skips blank nodes.
+ */
+class OntologyIndex extends AbstractRDFHandler {
+
+    private static final IRI[] TERM_TYPES = {OWL.CLASS, RDFS.CLASS, OWL.OBJECTPROPERTY, OWL.DATATYPEPROPERTY,
+            OWL.ONTOLOGY};
+    private static final int[] NO_IDS = new int[0];
+
+    private final Map<String, Integer> ids = new HashMap<>();
+    private final List<String> iris = new ArrayList<>();
+    private final Map<IRI, PredicateIndex> predicates = new HashMap<>();
+    private final Map<Integer, String> labels = new HashMap<>();
+    private final Map<Integer, String> comments = new HashMap<>();
+
+    OntologyIndex() {
+        for (IRI predicate : new IRI[]{RDF.TYPE, RDFS.DOMAIN, RDFS.RANGE, RDFS.SUBCLASSOF,
+                RDFS.SUBPROPERTYOF}) {
+            predicates.put(predicate, new PredicateIndex());
+        }
+    }
+
+    @Override
+    public void handleStatement(Statement st) throws RDFHandlerException {
+        if (!(st.getSubject() instanceof IRI)) {
+            return;
+        }
+        IRI predicate = st.getPredicate();
+        Value object = st.getObject();
+        if (predicate.equals(RDFS.LABEL)) {
+            labels.putIfAbsent(encode(st.getSubject().stringValue()), object.stringValue());
+        } else if (predicate.equals(RDFS.COMMENT)) {
+            comments.putIfAbsent(encode(st.getSubject().stringValue()), object.stringValue());
+        } else if (object instanceof IRI && predicates.containsKey(predicate)
+                && (!predicate.equals(RDF.TYPE) || isTermType(object))) {
+            predicates.get(predicate).add(encode(st.getSubject().stringValue()), encode(object.stringValue()));
+        }
+    }
+
+    @Override
+    public void endRDF() throws RDFHandlerException {
+        predicates.values().forEach(PredicateIndex::seal);
+    }
+
+    /**
+     * @return the ids of the subjects of the statements with the predicate and any of the objects, in id order
+     */
+    int[] subjects(IRI predicate, IRI... objects) {
+        int[] subjects = NO_IDS;
+        for (IRI object : objects) {
+            Integer id = ids.get(object.stringValue());
+            if (id != null) {
+                subjects = union(subjects, predicates.get(predicate).subjects(id));
+            }
+        }
+        return subjects;
+    }
+
+    /**
+     * @return the ids of the objects of the statements with the subject and predicate, in id order
+     */
+    int[] objects(int subject, IRI predicate) {
+        return predicates.get(predicate).objects(subject);
+    }
+
+    /**
+     * @return whether the statement with the subject, the predicate and any of the objects is in the ontology
+     */
+    boolean contains(int subject, IRI predicate, IRI... objects) {
+        for (IRI object : objects) {
+            Integer id = ids.get(object.stringValue());
+            if (id != null && predicates.get(predicate).contains(subject, id)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * @return the IRI of the owl:Ontology the document declares, the document url when it declares none
+     */
+    String ontologyIri(String documentUrl) {
+        int[] ontologies = subjects(RDF.TYPE, OWL.ONTOLOGY);
+        return (ontologies.length > 0 ? iri(ontologies[0]) : documentUrl);
+    }
+
+    String iri(int id) {
+        return iris.get(id);
+    }
+
+    /**
+     * @return the first rdfs:label of the IRI, null when it has none
+     */
+    String label(int id) {
+        return labels.get(id);
+    }
+
+    /**
+     * @return the first rdfs:comment of the IRI, null when it has none
+     */
+    String comment(int id) {
+        return comments.get(id);
+    }
+
+    private int encode(String iri) {
+        Integer id = ids.get(iri);
+        if (id == null) {
+            id = iris.size();
+            ids.put(iri, id);
+            iris.add(iri);
+        }
+        return id;
+    }
+
+    private static boolean isTermType(Value object) {
+        for (IRI type : TERM_TYPES) {
+            if (type.equals(object)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static int[] union(int[] a, int[] b) {
+        if (a.length == 0) {
+            return b;
+        }
+        int[] merged = new int[a.length + b.length];
+        int i = 0, j = 0, n = 0;
+        while (i < a.length || j < b.length) {
+            int next = (j == b.length || (i < a.length && a[i] <= b[j]) ? a[i++] : b[j++]);
+            if (n == 0 || merged[n - 1] != next) {
+                merged[n++] = next;
+            }
+        }
+        return Arrays.copyOf(merged, n);
+    }
+
+    /**
+     * The (subject, object) pairs of one predicate, packed as subject << 32 | object in {@code so} and
+     * object << 32 | subject in {@code os}, both sorted and without duplicates once sealed.
+     */
+    private static class PredicateIndex {
+        private long[] so = new long[16];
+        private long[] os = NO_PAIRS;
+        private int size = 0;
+
+        private static final long[] NO_PAIRS = new long[0];
+
+        void add(int subject, int object) {
+            if (size == so.length) {
+                so = Arrays.copyOf(so, size * 2);
+            }
+            so[size++] = pack(subject, object);
+        }
+
+        void seal() {
+            Arrays.sort(so, 0, size);
+            int unique = 0;
+            for (int i = 0; i < size; i++) {
+                if (unique == 0 || so[unique - 1] != so[i]) {
+                    so[unique++] = so[i];
+                }
+            }
+            size = unique;
+            so = Arrays.copyOf(so, size);
+            os = new long[size];
+            for (int i = 0; i < size; i++) {
+                os[i] = pack((int) so[i], (int) (so[i] >>> 32));
+            }
+            Arrays.sort(os);
+        }
+
+        int[] objects(int subject) {
+            return range(so, subject);
+        }
+
+        int[] subjects(int object) {
+            return range(os, object);
+        }
+
+        boolean contains(int subject, int object) {
+            return Arrays.binarySearch(so, pack(subject, object)) >= 0;
+        }
+
+        private static int[] range(long[] pairs, int key) {
+            int from = lowerBound(pairs, pack(key, 0));
+            int to = lowerBound(pairs, pack(key + 1, 0));
+            int[] values = new int[to - from];
+            for (int i = from; i < to; i++) {
+                values[i - from] = (int) pairs[i];
+            }
+            return values;
+        }
+
+        private static int lowerBound(long[] pairs, long key) {
+            int low = 0, high = pairs.length;
+            while (low < high) {
+                int mid = (low + high) >>> 1;
+                if (pairs[mid] < key) {
+                    low = mid + 1;
+                } else {
+                    high = mid;
+                }
+            }
+            return low;
+        }
+
+        private static long pack(int high, int low) {
+            return ((long) high << 32) | (low & 0xFFFFFFFFL);
+        }
+    }
+}
@@ -0,0 +1,374 @@
+package semantics;
+
+import apoc.util.Util;
+import org.neo4j.graphdb.Direction;
+import org.neo4j.graphdb.Label;
+import org.neo4j.graphdb.Node;
+import org.neo4j.graphdb.Relationship;
+import org.neo4j.graphdb.RelationshipType;
+import org.neo4j.graphdb.ResourceIterator;
+import org.neo4j.kernel.internal.GraphDatabaseAPI;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+
+/**
+ * Writes the terms of an ontology, the :Class, :ObjectProperty and :DatatypeProperty nodes and the relationships
+ * between them, with the core API in transactions of {@code batchSize} writes. The uri to node id map of the terms
+ * already in the database is read once, by label, so a write never looks a term up by its uri and no query is
+ * planned per term.
+ *
+ * Every term is {@link #declare}d before the first one is written, then the terms are written, then their
+ * relationships, so a relationship can point to a term further down the document. A relationship is only written
+ * to a term of the document or already in the database, and is skipped otherwise.
+ *
+ * Terms remember the ontologies that declare them, in a String[] {@code ontology} property, as a term such as
+ * foaf:Person can be shared by several ontologies. In diff mode the writer also stores a hash of the label, comment
+ * and relationships of each term, and a term whose hash did not change is not written at all. The relationships of
+ * a changed term are replaced, its label or comment removed when the new release has none, and the terms of the
+ * ontology missing from the new release are given up by the ontology, then deleted when no other ontology declares
+ * them. Without diff mode, properties are only set and relationships only added, and the hash of the terms written
+ * is removed, so the next diff writes them again.
+ */
+class OntologyWriter {
+
+    static final Label CLASS = Label.label("Class");
+    static final Label OBJECT_PROPERTY = Label.label("ObjectProperty");
+    static final Label DATATYPE_PROPERTY = Label.label("DatatypeProperty");
+    static final RelationshipType DOMAIN = RelationshipType.withName("DOMAIN");
+    static final RelationshipType RANGE = RelationshipType.withName("RANGE");
+    static final RelationshipType SCO = RelationshipType.withName("SCO");
+    static final RelationshipType SPO = RelationshipType.withName("SPO");
+    static final String ONTOLOGY = "ontology";
+    static final String HASH = "ontologyHash";
+
+    private static final Label[] LABELS = {CLASS, OBJECT_PROPERTY, DATATYPE_PROPERTY};
+    private static final RelationshipType[] TYPES = {DOMAIN, RANGE, SCO, SPO};
+    private static final String[] TERM_PROPERTIES = {"label", "comment"};
+
+    private final GraphDatabaseAPI db;
+    private final long batchSize;
+    private final String ontology;
+    private final boolean diff;
+    private final Map<Label, Map<String, Long>> nodeIds = new HashMap<>();
+    private final Map<Long, String> hashes = new HashMap<>();
+    // the ontologies declaring each term already in the database
+    private final Map<Long, Set<String>> owners = new HashMap<>();
+    // uris of the terms of the ontology already in the database, of the document, and written by this import
+    private final Map<Label, Set<String>> ontologyTerms = new HashMap<>();
+    private final Map<Label, Set<String>> declared = new HashMap<>();
+    private final Map<Label, Map<String, String>> written = new HashMap<>();
+    // terms of the database written in diff mode, whose relationships are replaced
+    private final Map<Label, Set<String>> replaced = new HashMap<>();
+    private final Set<RelationshipType> changedHierarchies = new HashSet<>();
+    private final List<Runnable> pending = new ArrayList<>();
+    private long added = 0;
+    private long changed = 0;
+    private long unchanged = 0;
+    private long removed = 0;
+
+    OntologyWriter(GraphDatabaseAPI graphdb, long batchSize, String ontology, boolean diff) {
+        db = graphdb;
+        this.batchSize = batchSize;
+        this.ontology = ontology;
+        this.diff = diff;
+        Util.inTx(db, () -> {
+            for (Label label : LABELS) {
+                Map<String, Long> ids = new HashMap<>();
+                Set<String> terms = new HashSet<>();
+                try (ResourceIterator<Node> nodes = db.findNodes(label)) {
+                    nodes.forEachRemaining(node -> {
+                        Object uri = node.getProperty("uri", null);
+                        if (uri != null && ids.putIfAbsent(uri.toString(), node.getId()) == null) {
+                            Set<String> ontologies = ontologies(node);
+                            owners.put(node.getId(), ontologies);
+                            if (ontologies.contains(ontology)) {
+                                terms.add(uri.toString());
+                            }
+                            Object hash = node.getProperty(HASH, null);
+                            if (diff && hash != null) {
+                                hashes.put(node.getId(), hash.toString());
+                            }
+                        }
+                    });
+                }
+                nodeIds.put(label, ids);
+                ontologyTerms.put(label, terms);
+                declared.put(label, new HashSet<>());
+                written.put(label, new HashMap<>());
+                replaced.put(label, new HashSet<>());
+            }
+            return null;
+        });
+    }
+
+    /**
+     * A term of the document: its uri, label and comment and the uris of the terms it is related to.
+     */
+    static class Term {
+        final Label label;
+        final String uri;
+        final Map<String, Object> props;
+        final Map<RelationshipType, List<String>> related = new LinkedHashMap<>();
+
+        Term(Label label, String uri, Map<String, Object> props) {
+            this.label = label;
+            this.uri = uri;
+            this.props = props;
+        }
+
+        void relate(RelationshipType type, String uri) {
+            related.computeIfAbsent(type, t -> new ArrayList<>()).add(uri);
+        }
+    }
+
+    void declare(Term term) {
+        declared.get(term.label).add(term.uri);
+    }
+
+    /**
+     * Creates the node of the term when it is new, then sets its properties. In diff mode a term whose hash is
+     * the stored one is skipped, only the ontology is added to the ontologies declaring it.
+     */
+    void writeTerm(Term term) {
+        Long id = nodeIds.get(term.label).get(term.uri);
+        String hash = (diff ? hash(term) : null);
+        if (diff && id != null && hash.equals(hashes.get(id))) {
+            if (!owners.get(id).contains(ontology)) {
+                write(() -> addOntology(db.getNodeById(id)));
+            }
+            unchanged++;
+            return;
+        }
+        written.get(term.label).put(term.uri, hash);
+        if (diff && id != null) {
+            replaced.get(term.label).add(term.uri);
+        }
+        write(() -> {
+            Map<String, Long> ids = nodeIds.get(term.label);
+            Long nodeId = ids.get(term.uri);
+            Node node;
+            if (nodeId == null) {
+                node = db.createNode(term.label);
+                node.setProperty("uri", term.uri);
+                ids.put(term.uri, node.getId());
+                changedHierarchies.add(hierarchy(term.label));
+                added++;
+            } else {
+                node = db.getNodeById(nodeId);
+                changed++;
+            }
+            addOntology(node);
+            // set again once its relationships are written
+            node.removeProperty(HASH);
+            if (diff) {
+                for (String key : TERM_PROPERTIES) {
+                    if (!term.props.containsKey(key)) {
+                        node.removeProperty(key);
+                    }
+                }
+            }
+            term.props.forEach(node::setProperty);
+        });
+    }
+
+    /**
+     * Relates the term to the terms it refers to, unless they are already related. In diff mode the relationships
+     * of the term to terms it no longer refers to are deleted. Terms skipped by {@link #writeTerm} are skipped.
+     */
+    void writeRelationships(Term term) {
+        if (!written.get(term.label).containsKey(term.uri)) {
+            return;
+        }
+        boolean replace = replaced.get(term.label).contains(term.uri);
+        for (RelationshipType type : TYPES) {
+            List<String> uris = term.related.getOrDefault(type, new ArrayList<>());
+            if (uris.isEmpty() && !replace) {
+                continue;
+            }
+            write(() -> {
+                Long from = nodeIds.get(term.label).get(term.uri);
+                Set<Long> targets = new HashSet<>();
+                for (String uri : uris) {
+                    for (Label toLabel : targetLabels(term.label, type)) {
+                        Long to = nodeIds.get(toLabel).get(uri);
+                        if (to != null) {
+                            targets.add(to);
+                        }
+                    }
+                }
+                Node node = db.getNodeById(from);
+                for (Relationship rel : node.getRelationships(Direction.OUTGOING, type)) {
+                    if (!targets.remove(rel.getEndNode().getId()) && replace) {
+                        rel.delete();
+                        changedHierarchies.add(type);
+                    }
+                }
+                for (long to : targets) {
+                    node.createRelationshipTo(db.getNodeById(to), type);
+                    changedHierarchies.add(type);
+                }
+            });
+        }
+    }
+
+    /**
+     * Commits the writes still pending. In diff mode, stores the hash of the terms written and removes the
+     * ontology from the terms the document no longer declares, deleting those no other ontology declares.
+     */
+    void finish() {
+        if (diff) {
+            for (Label label : LABELS) {
+                written.get(label).forEach((uri, hash) ->
+                        write(() -> db.getNodeById(nodeIds.get(label).get(uri)).setProperty(HASH, hash)));
+                for (String uri : ontologyTerms.get(label)) {
+                    if (!declared.get(label).contains(uri)) {
+                        write(() -> giveUp(label, uri));
+                    }
+                }
+            }
+        }
+        flush();
+    }
+
+    /**
+     * @return whether this import created or deleted a node or a relationship of the hierarchy
+     */
+    boolean hierarchyChanged(RelationshipType type) {
+        return changedHierarchies.contains(type);
+    }
+
+    /**
+     * @return the number of terms added, changed, left unchanged and removed from the ontology
+     */
+    long[] getCounts() {
+        return new long[]{added, changed, unchanged, removed};
+    }
+
+    private void addOntology(Node node) {
+        Set<String> ontologies = ontologies(node);
+        if (ontologies.add(ontology)) {
+            node.setProperty(ONTOLOGY, ontologies.toArray(new String[ontologies.size()]));
+        }
+    }
+
+    /**
+     * Removes the ontology from the term, and deletes the term when no other ontology declares it.
+     */
+    private void giveUp(Label label, String uri) {
+        Node node = db.getNodeById(nodeIds.get(label).get(uri));
+        Set<String> ontologies = ontologies(node);
+        ontologies.remove(ontology);
+        removed++;
+        if (!ontologies.isEmpty()) {
+            node.setProperty(ONTOLOGY, ontologies.toArray(new String[ontologies.size()]));
+            return;
+        }
+        nodeIds.get(label).remove(uri);
+        for (Relationship rel : node.getRelationships()) {
+            rel.delete();
+        }
+        node.delete();
+        changedHierarchies.add(hierarchy(label));
+    }
+
+    private void flush() {
+        if (pending.isEmpty()) {
+            return;
+        }
+        List<Runnable> writes = new ArrayList<>(pending);
+        pending.clear();
+        Util.inTx(db, () -> {
+            writes.forEach(Runnable::run);
+            return null;
+        });
+    }
+
+    private void write(Runnable write) {
+        pending.add(write);
+        if (pending.size() >= batchSize) {
+            flush();
+        }
+    }
+
+    /**
+     * @return a hash of the label, comment and relationships of the term, counting only the relationships to terms
+     * that exist once the import is done, as the others are not written
+     */
+    private String hash(Term term) {
+        StringBuilder content = new StringBuilder();
+        for (String key : TERM_PROPERTIES) {
+            content.append(term.props.getOrDefault(key, "")).append('\u0000');
+        }
+        for (RelationshipType type : TYPES) {
+            Set<String> targets = new TreeSet<>();
+            for (String uri : term.related.getOrDefault(type, new ArrayList<>())) {
+                for (Label toLabel : targetLabels(term.label, type)) {
+                    if (willExist(toLabel, uri)) {
+                        targets.add(toLabel.name() + ' ' + uri);
+                    }
+                }
+            }
+            content.append(type.name()).append(targets).append('\u0000');
+        }
+        try {
+            byte[] digest = MessageDigest.getInstance("MD5").digest(content.toString().getBytes(StandardCharsets.UTF_8));
+            StringBuilder hex = new StringBuilder();
+            for (byte b : digest) {
+                hex.append(Character.forDigit((b >> 4) & 0xf, 16)).append(Character.forDigit(b & 0xf, 16));
+            }
+            return hex.toString();
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private boolean willExist(Label label, String uri) {
+        if (declared.get(label).contains(uri)) {
+            return true;
+        }
+        Long id = nodeIds.get(label).get(uri);
+        // a term of the ontology missing from the document is deleted unless another ontology declares it
+        return id != null && !(diff && ontologyTerms.get(label).contains(uri) &&
+                owners.get(id).equals(Collections.singleton(ontology)));
+    }
+
+    /**
+     * @return the ontologies declaring the term, a single String for the terms written before ontologies were sets
+     */
+    private static Set<String> ontologies(Node node) {
+        Object value = node.getProperty(ONTOLOGY, null);
+        Set<String> ontologies = new TreeSet<>();
+        if (value instanceof String[]) {
+            ontologies.addAll(Arrays.asList((String[]) value));
+        } else if (value != null) {
+            ontologies.add(value.toString());
+        }
+        return ontologies;
+    }
+
+    private static List<Label> targetLabels(Label label, RelationshipType type) {
+        if (type.equals(DOMAIN)) {
+            // the domain can be a class or an object property
+            return Arrays.asList(CLASS, OBJECT_PROPERTY);
+        } else if (type.equals(SPO)) {
+            return Arrays.asList(label);
+        }
+        return Arrays.asList(CLASS);
+    }
+
+    private static RelationshipType hierarchy(Label label) {
+        return (label.equals(CLASS) ? SCO : SPO);
+    }
+}
@@ -0,0 +1,300 @@
+package semantics;
+
+import org.neo4j.logging.Log;
+import org.openrdf.model.ValueFactory;
+import org.openrdf.rio.*;
+import org.openrdf.rio.helpers.BasicParserSettings;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URL;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Fast path for local N-Triples and N-Quads files. Both formats are line oriented, so the file is memory mapped,
+ * split into chunks at line boundaries and the chunks are parsed in parallel, one per thread. Each chunk
+ * is mapped into statement batches by its own {@link DirectStatementLoader#forChunk chunk loader}, and the
+ * batches are committed by the single commit stage of the import in file order, as soon as they are full.
+ *
+ * The batches of the chunk being committed are handed over as they fill. The parsers of the following chunks
+ * run ahead until the batches they buffer reach the batch heap budget of the import, so memory stays bounded
+ * by about one budget per thread whatever the size of the chunks.
+ *
+ * Blank node labels are preserved, as a label must identify the same node in every chunk, and scoped to the
+ * document by a {@link DocumentBNodeFactory}, or numbered for the whole document by a {@link CompactBNodeFactory}.
+ */
+class ParallelNTriplesLoader {
+
+    static final long DEFAULT_CHUNK_SIZE = 32L * 1024 * 1024;
+    private static final long MAX_CHUNK_SIZE = 1024L * 1024 * 1024;
+
+    private final RDFFormat format;
+    private final int parallelism;
+    private final long chunkSize;
+    private final long maxBufferedBytes;
+    private final ImportMetrics metrics;
+    private final Log log;
+
+    /**
+     * @param maxBufferedBytes estimated heap the full batches of a chunk may take while they wait for the commit
+     *                         stage, a chunk always gets to buffer one batch
+     */
+    ParallelNTriplesLoader(RDFFormat rdfFormat, int parallelism, long chunkSize, long maxBufferedBytes,
+                           ImportMetrics importMetrics, Log l) {
+        format = rdfFormat;
+        this.parallelism = Math.max(parallelism, 1);
+        this.chunkSize = Math.min(Math.max(chunkSize, 1024), MAX_CHUNK_SIZE);
+        this.maxBufferedBytes = maxBufferedBytes;
+        metrics = importMetrics;
+        log = l;
+    }
+
+    static boolean supports(URL documentUrl, RDFFormat format) {
+        return "file".equals(documentUrl.getProtocol()) &&
+                (format.equals(RDFFormat.NTRIPLES) || format.equals(RDFFormat.NQUADS));
+    }
+
+    /**
+     * @param startOffset  byte offset of the first line to load, after the lines committed by an earlier run
+     * @param bnodeFactory the factory naming blank nodes for the import, or null for a {@link DocumentBNodeFactory}
+     */
+    void load(File file, String baseUri, long startOffset, ValueFactory bnodeFactory,
+              DirectStatementLoader statementLoader) throws IOException, RDFParseException, RDFHandlerException {
+        statementLoader.startRDF();
+        // chunks start in file order, so the chunk being committed always has a thread parsing it
+        ExecutorService pool = Executors.newFixedThreadPool(parallelism);
+        ValueFactory valueFactory = (bnodeFactory != null ? bnodeFactory : new DocumentBNodeFactory(baseUri));
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            List<long[]> chunks = split(channel, startOffset);
+            log.info("Parsing " + file + " in " + chunks.size() + " chunks with " + parallelism + " threads");
+            Deque<ChunkBatches> inFlight = new ArrayDeque<>();
+            int next = 0;
+            while (next < chunks.size() || !inFlight.isEmpty()) {
+                while (next < chunks.size() && inFlight.size() < parallelism) {
+                    long[] chunk = chunks.get(next++);
+                    ChunkBatches batches = new ChunkBatches(chunk[1], maxBufferedBytes);
+                    batches.parsing = pool.submit(() -> parseChunk(channel, chunk[0], chunk[1], baseUri,
+                            valueFactory, statementLoader, batches));
+                    inFlight.add(batches);
+                }
+                ChunkBatches head = inFlight.removeFirst();
+                for (StatementBatch batch = head.take(); batch != null; batch = head.take()) {
+                    statementLoader.commit(batch);
+                }
+                await(head.parsing);
+            }
+        } finally {
+            pool.shutdownNow();
+        }
+        statementLoader.endRDF();
+    }
+
+    private Void parseChunk(FileChannel channel, long start, long end, String baseUri, ValueFactory valueFactory,
+                            DirectStatementLoader statementLoader, ChunkBatches batches)
+            throws IOException, RDFParseException, RDFHandlerException {
+        RDFParser rdfParser = Rio.createParser(format);
+        rdfParser.getParserConfig().set(BasicParserSettings.PRESERVE_BNODE_IDS, true);
+        rdfParser.setValueFactory(valueFactory);
+        rdfParser.setRDFHandler(statementLoader.forChunk(batches));
+        boolean complete = false;
+        try {
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, start, end - start);
+            rdfParser.parse(metrics.count(new ByteBufferInputStream(buffer)), baseUri);
+            complete = true;
+        } catch (RDFParseException e) {
+            throw new RDFParseException("In the chunk starting at byte " + start + ": " + e.getMessage(), e,
+                    e.getLineNumber(), e.getColumnNumber());
+        } finally {
+            batches.finish(complete);
+        }
+        return null;
+    }
+
+    private static void await(Future<?> chunk) throws IOException, RDFParseException, RDFHandlerException {
+        try {
+            chunk.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RDFHandlerException("Interrupted while parsing", e);
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof IOException) {
+                throw (IOException) cause;
+            } else if (cause instanceof RDFParseException) {
+                throw (RDFParseException) cause;
+            } else if (cause instanceof RDFHandlerException) {
+                throw (RDFHandlerException) cause;
+            }
+            throw new RDFHandlerException(cause);
+        }
+    }
+
+    /**
+     * @return [start, end) byte ranges of about chunkSize bytes, each ending right after a line break
+     */
+    private List<long[]> split(FileChannel channel, long startOffset) throws IOException {
+        List<long[]> chunks = new ArrayList<>();
+        long size = channel.size();
+        long start = startOffset;
+        while (start < size) {
+            long end = nextLineStart(channel, Math.min(start + chunkSize, size), size);
+            chunks.add(new long[]{start, end});
+            start = end;
+        }
+        return chunks;
+    }
+
+    private static long nextLineStart(FileChannel channel, long position, long size) throws IOException {
+        ByteBuffer window = ByteBuffer.allocate(8192);
+        while (position < size) {
+            window.clear();
+            int read = channel.read(window, position);
+            if (read <= 0) {
+                break;
+            }
+            for (int i = 0; i < read; i++) {
+                if (window.get(i) == '\n') {
+                    return position + i + 1;
+                }
+            }
+            position += read;
+        }
+        return size;
+    }
+
+    /**
+     * The full batches of a chunk, from its parser to the commit stage. The last batch is held back until the
+     * chunk is parsed, as it carries the offset of the end of the chunk when the whole chunk is loaded.
+     */
+    static class ChunkBatches implements StatementBatchSink {
+        private final long end;
+        private final long maxBufferedBytes;
+        private final Deque<StatementBatch> buffered = new ArrayDeque<>();
+        private long bufferedBytes = 0;
+        private boolean parsed = false;
+        private StatementBatch last = null;
+        private Future<?> parsing;
+
+        ChunkBatches(long chunkEnd, long maxBufferedBytes) {
+            end = chunkEnd;
+            this.maxBufferedBytes = maxBufferedBytes;
+        }
+
+        /**
+         * Called on the parser thread, waits while the buffered batches are over the budget.
+         */
+        @Override
+        public void accept(StatementBatch batch) throws RDFHandlerException {
+            if (batch.isEmpty()) {
+                return;
+            }
+            if (last != null) {
+                put(last);
+            }
+            last = batch;
+        }
+
+        private synchronized void put(StatementBatch batch) throws RDFHandlerException {
+            try {
+                while (!buffered.isEmpty() && bufferedBytes + batch.getEstimatedHeapBytes() > maxBufferedBytes) {
+                    wait();
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new RDFHandlerException("Interrupted while parsing", e);
+            }
+            buffered.add(batch);
+            bufferedBytes += batch.getEstimatedHeapBytes();
+            notifyAll();
+        }
+
+        /**
+         * Called on the parser thread once it is done with the chunk, the batches of a chunk that failed half way
+         * are still committed, as the ones of a document parsed sequentially.
+         */
+        void finish(boolean complete) throws RDFHandlerException {
+            try {
+                if (last != null) {
+                    if (complete) {
+                        last.setInputOffset(end);
+                    }
+                    put(last);
+                }
+            } finally {
+                synchronized (this) {
+                    parsed = true;
+                    notifyAll();
+                }
+            }
+        }
+
+        /**
+         * @return the next batch of the chunk, waiting for the parser, or null once the chunk is parsed
+         */
+        synchronized StatementBatch take() throws RDFHandlerException {
+            try {
+                while (buffered.isEmpty() && !parsed) {
+                    wait();
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new RDFHandlerException("Interrupted while parsing", e);
+            }
+            StatementBatch batch = buffered.pollFirst();
+            if (batch != null) {
+                bufferedBytes -= batch.getEstimatedHeapBytes();
+                notifyAll();
+            }
+            return batch;
+        }
+
+        @Override
+        public void close() {
+        }
+
+        @Override
+        public long getCommittedTriples() {
+            return 0;
+        }
+    }
+
+    private static class ByteBufferInputStream extends InputStream {
+        private final ByteBuffer buffer;
+
+        ByteBufferInputStream(ByteBuffer buffer) {
+            this.buffer = buffer;
+        }
+
+        @Override
+        public int read() {
+            return buffer.hasRemaining() ? buffer.get() & 0xff : -1;
+        }
+
+        @Override
+        public int read(byte[] bytes, int offset, int length) {
+            if (!buffer.hasRemaining()) {
+                return -1;
+            }
+            int count = Math.min(length, buffer.remaining());
+            buffer.get(bytes, offset, count);
+            return count;
+        }
+
+        @Override
+        public int available() {
+            return buffer.remaining();
+        }
+    }
+}
@@ -0,0 +1,124 @@
+package semantics;
+
+import java.lang.reflect.Array;
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Combines the values of a repeated predicate into a single Neo4j property. RDF properties are sets of
+ * values, so a value already present is not added twice, and more than one value is stored as an array:
+ * long[], double[] or boolean[] when every value has that type (integers are widened when mixed with
+ * decimals) and String[] otherwise. Removing a value from a property, for delta imports, reverses the merge.
+ */
+class PropertyValues {
+
+    private PropertyValues() {
+    }
+
+    /**
+     * @param existing the current value of the property, a scalar, an array or null
+     * @param added    a value parsed from a literal, or an array of them
+     */
+    static Object merge(Object existing, Object added) {
+        if (existing == null) {
+            return added;
+        }
+        List<Object> values = new ArrayList<>();
+        addAll(values, existing);
+        addAll(values, added);
+        return combine(values);
+    }
+
+    /**
+     * @param existing the current value of the property, a scalar, an array or null
+     * @param removed  a value parsed from a literal
+     * @return the values left once {@code removed} is taken out, null when there are none left
+     */
+    static Object remove(Object existing, Object removed) {
+        if (existing == null) {
+            return null;
+        }
+        List<Object> values = new ArrayList<>();
+        addAll(values, existing);
+        values.removeIf(value -> sameValue(value, removed));
+        if (values.isEmpty()) {
+            return null;
+        }
+        return combine(values);
+    }
+
+    /**
+     * Compares a stored value with a parsed one, allowing for the widening and string conversion applied
+     * when the values of a property were merged into an array.
+     */
+    private static boolean sameValue(Object stored, Object parsed) {
+        if (stored instanceof String && !(parsed instanceof String)) {
+            return stored.equals(String.valueOf(parsed));
+        } else if (stored instanceof Double && parsed instanceof Long || stored instanceof Long && parsed instanceof Double) {
+            return ((Number) stored).doubleValue() == ((Number) parsed).doubleValue();
+        }
+        return stored.equals(parsed);
+    }
+
+    private static void addAll(List<Object> values, Object value) {
+        if (value.getClass().isArray()) {
+            for (int i = 0; i < Array.getLength(value); i++) {
+                values.add(Array.get(value, i));
+            }
+        } else {
+            values.add(value);
+        }
+    }
+
+    /**
+     * Converts the values to their common type before dropping the duplicates, so 1 and 1.0 are one value.
+     *
+     * @return the single value left, or an array of the values
+     */
+    private static Object combine(List<Object> values) {
+        boolean allLong = true;
+        boolean allNumber = true;
+        boolean allBoolean = true;
+        for (Object value : values) {
+            allLong &= value instanceof Long;
+            allNumber &= value instanceof Long || value instanceof Double;
+            allBoolean &= value instanceof Boolean;
+        }
+        Set<Object> distinct = new LinkedHashSet<>();
+        for (Object value : values) {
+            if (allLong || allBoolean) {
+                distinct.add(value);
+            } else if (allNumber) {
+                distinct.add(((Number) value).doubleValue());
+            } else {
+                distinct.add(String.valueOf(value));
+            }
+        }
+        List<Object> widened = new ArrayList<>(distinct);
+        if (widened.size() == 1) {
+            return widened.get(0);
+        }
+        if (allLong) {
+            long[] array = new long[widened.size()];
+            for (int i = 0; i < array.length; i++) {
+                array[i] = (Long) widened.get(i);
+            }
+            return array;
+        } else if (allNumber) {
+            double[] array = new double[widened.size()];
+            for (int i = 0; i < array.length; i++) {
+                array[i] = (Double) widened.get(i);
+            }
+            return array;
+        } else if (allBoolean) {
+            boolean[] array = new boolean[widened.size()];
+            for (int i = 0; i < array.length; i++) {
+                array[i] = (Boolean) widened.get(i);
+            }
+            return array;
+        }
+        return widened.toArray(new String[widened.size()]);
+    }
+}
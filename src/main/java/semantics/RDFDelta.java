@@ -0,0 +1,213 @@
+package semantics;
+
+import org.openrdf.model.Statement;
+import org.openrdf.rio.*;
+import org.openrdf.rio.helpers.AbstractRDFHandler;
+import org.openrdf.rio.helpers.BasicParserSettings;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.StringReader;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Applies a change set to an imported graph through a {@link DirectStatementLoader}, so only the resources it
+ * names are touched. The changes come either as an RDF Patch, one A (add) or D (delete) row per statement, or
+ * as a document of statements to delete and a document of statements to add, deletions first.
+ *
+ * Statements of a patch are written as in N-Triples or N-Quads, in their named graph, where a term may also be a
+ * prefixed name of a prefix declared by an earlier PA row and not removed by a PD row since. Prefixed names are
+ * expanded to full IRIs before parsing, an undeclared prefix is refused at its row. Header (H) and transaction
+ * (TX, TC) rows are skipped: changes are committed in batches, like an import, and not in the patch's
+ * transactions. Aborted transactions (TA) cannot be rolled back once their first statements
+ * are committed, so a patch holding one is refused at that row. Blank nodes are named after the delta, the
+ * same label refers to the same node throughout it.
+ */
+class RDFDelta {
+
+    // statements of the same kind are parsed together, bounded so that a long run does not sit in memory
+    private static final int MAX_RUN_CHARS = 1 << 20;
+
+    private final DirectStatementLoader statementLoader;
+    private final String baseUri;
+    private final DocumentBNodeFactory valueFactory;
+    private final DeltaHandler handler = new DeltaHandler();
+
+    RDFDelta(DirectStatementLoader loader, String deltaUrl) {
+        statementLoader = loader;
+        baseUri = deltaUrl;
+        valueFactory = new DocumentBNodeFactory(deltaUrl);
+    }
+
+    /**
+     * Applies the statements of an RDF Patch.
+     */
+    void applyPatch(InputStream in) throws IOException {
+        statementLoader.startRDF();
+        BufferedReader reader = new BufferedReader(new InputStreamReader(in, StandardCharsets.UTF_8));
+        RDFParser rdfParser = parser(RDFFormat.NQUADS);
+        StringBuilder run = new StringBuilder();
+        Map<String, String> prefixes = new HashMap<>();
+        boolean deleting = false;
+        String line;
+        long lineNumber = 0;
+        while ((line = reader.readLine()) != null) {
+            lineNumber++;
+            String row = line.trim();
+            if (row.isEmpty() || row.startsWith("#")) {
+                continue;
+            }
+            int end = 0;
+            while (end < row.length() && !Character.isWhitespace(row.charAt(end))) {
+                end++;
+            }
+            String code = row.substring(0, end);
+            switch (code) {
+                case "A":
+                case "D":
+                    if (deleting != code.equals("D") || run.length() > MAX_RUN_CHARS) {
+                        parseRun(rdfParser, run, deleting);
+                        deleting = code.equals("D");
+                    }
+                    expandPrefixedNames(row.substring(end), prefixes, run, lineNumber);
+                    run.append('\n');
+                    break;
+                case "PA":
+                    String[] declaration = row.substring(end).trim().split("\\s+");
+                    if (declaration.length < 2) {
+                        throw new RDFParseException("Expected a prefix and its IRI", lineNumber, -1);
+                    }
+                    prefixes.put(prefixName(declaration[0]), unquote(declaration[1]));
+                    break;
+                case "PD":
+                    prefixes.remove(prefixName(row.substring(end).trim().split("\\s+")[0]));
+                    break;
+                case "H":
+                case "TX":
+                case "TC":
+                    break;
+                case "TA":
+                    throw new RDFParseException("Aborted patch transactions are not supported", lineNumber, -1);
+                default:
+                    throw new RDFParseException("Unknown RDF Patch row: " + code, lineNumber, -1);
+            }
+        }
+        parseRun(rdfParser, run, deleting);
+        statementLoader.endRDF();
+    }
+
+    /**
+     * Copies the terms of a statement row to {@code run}, with its prefixed names written as full IRIs. IRIs,
+     * literals, language tags and blank nodes are copied as they are.
+     */
+    private static void expandPrefixedNames(String terms, Map<String, String> prefixes, StringBuilder run,
+                                            long lineNumber) {
+        int i = 0;
+        while (i < terms.length()) {
+            char c = terms.charAt(i);
+            int start = i;
+            if (c == '<') {
+                i = terms.indexOf('>', i);
+                i = (i < 0 ? terms.length() : i + 1);
+            } else if (c == '"') {
+                i++;
+                while (i < terms.length() && terms.charAt(i) != '"') {
+                    i += (terms.charAt(i) == '\\' ? 2 : 1);
+                }
+                i = Math.min(i + 1, terms.length());
+            } else if (Character.isWhitespace(c) || c == '^' || c == '.') {
+                i++;
+            } else {
+                while (i < terms.length() && !Character.isWhitespace(terms.charAt(i)) && terms.charAt(i) != '<' &&
+                        terms.charAt(i) != '"' && terms.charAt(i) != '^') {
+                    i++;
+                }
+                // a local name does not end with a dot, the dot ends the statement
+                while (i > start + 1 && terms.charAt(i - 1) == '.') {
+                    i--;
+                }
+                String token = terms.substring(start, i);
+                int colon = token.indexOf(':');
+                if (c != '@' && !token.startsWith("_:") && colon >= 0) {
+                    String namespace = prefixes.get(token.substring(0, colon));
+                    if (namespace == null) {
+                        throw new RDFParseException("Undeclared prefix '" + token.substring(0, colon) +
+                                "' in " + token + ", it needs a PA row first", lineNumber, -1);
+                    }
+                    run.append('<').append(namespace).append(token, colon + 1, token.length()).append('>');
+                    continue;
+                }
+            }
+            run.append(terms, start, i);
+        }
+    }
+
+    private static String prefixName(String declared) {
+        return (declared.endsWith(":") ? declared.substring(0, declared.length() - 1) : declared);
+    }
+
+    private static String unquote(String iri) {
+        if (iri.length() >= 2 && (iri.startsWith("<") && iri.endsWith(">") ||
+                iri.startsWith("\"") && iri.endsWith("\""))) {
+            return iri.substring(1, iri.length() - 1);
+        }
+        return iri;
+    }
+
+    /**
+     * Removes the statements of {@code deletions}, then adds the statements of {@code additions}. Either may be
+     * null.
+     */
+    void applyDocuments(InputStream deletions, InputStream additions, RDFFormat format) throws IOException {
+        statementLoader.startRDF();
+        RDFParser rdfParser = parser(format);
+        if (deletions != null) {
+            handler.deleting = true;
+            rdfParser.parse(deletions, baseUri);
+        }
+        if (additions != null) {
+            handler.deleting = false;
+            rdfParser.parse(additions, baseUri);
+        }
+        statementLoader.endRDF();
+    }
+
+    private RDFParser parser(RDFFormat format) {
+        RDFParser rdfParser = Rio.createParser(format);
+        rdfParser.getParserConfig().set(BasicParserSettings.PRESERVE_BNODE_IDS, true);
+        rdfParser.setValueFactory(valueFactory);
+        rdfParser.setRDFHandler(handler);
+        return rdfParser;
+    }
+
+    private void parseRun(RDFParser rdfParser, StringBuilder run, boolean deleting) throws IOException {
+        if (run.length() == 0) {
+            return;
+        }
+        handler.deleting = deleting;
+        rdfParser.parse(new StringReader(run.toString()), baseUri);
+        run.setLength(0);
+    }
+
+    /**
+     * Hands the parsed statements to the loader as additions or deletions. The loader is started and ended
+     * once for the whole delta, not once per parse.
+     */
+    private class DeltaHandler extends AbstractRDFHandler {
+
+        private boolean deleting = false;
+
+        @Override
+        public void handleStatement(Statement st) throws RDFHandlerException {
+            if (deleting) {
+                statementLoader.handleDeletion(st);
+            } else {
+                statementLoader.handleStatement(st);
+            }
+        }
+    }
+}
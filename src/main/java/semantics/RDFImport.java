@@ -12,14 +12,20 @@ import org.neo4j.procedure.Mode;
 import org.neo4j.procedure.Name;
 import org.neo4j.procedure.PerformsWrites;
 import org.neo4j.procedure.Procedure;
+import org.openrdf.model.ValueFactory;
 import org.openrdf.rio.*;
+import org.openrdf.rio.helpers.BasicParserSettings;
 
 import java.io.ByteArrayInputStream;
+import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
 import java.net.MalformedURLException;
+import java.net.URISyntaxException;
 import java.net.URL;
 import java.nio.charset.Charset;
+import java.nio.file.Path;
+import java.nio.file.Paths;
 import java.util.*;
 import java.util.stream.Stream;
 /**
@@ -32,7 +38,7 @@ public class RDFImport {
     public Log log;
 
     public static RDFFormat[] availableParsers = new RDFFormat[]{RDFFormat.RDFXML, RDFFormat.JSONLD, RDFFormat.TURTLE,
-            RDFFormat.NTRIPLES, RDFFormat.TRIG};
+            RDFFormat.NTRIPLES, RDFFormat.TRIG, RDFFormat.NQUADS};
 
 
 
@@ -40,47 +46,276 @@ public class RDFImport {
     public Stream<ImportResults> importRDF(@Name("url") String url, @Name("format") String format,
                                            @Name("shorten") boolean shortenUrls,
                                            @Name("typesToLabels") boolean typesToLabels,
-                                           @Name("commitSize") long commitSize) {
+                                           @Name("commitSize") long commitSize,
+                                           @Name(value = "props", defaultValue = "{}") Map<String, Object> props) {
 
+        return Stream.of(runImport(url, format, shortenUrls, typesToLabels, commitSize, props, null));
+    }
+
+    /**
+     * The import behind importRDF and importRDFAsync.
+     *
+     * @param job the asynchronous job running the import, null when called from importRDF
+     */
+    ImportResults runImport(String url, String format, boolean shortenUrls, boolean typesToLabels, long commitSize,
+                            Map<String, Object> props, ImportJob job) {
         ImportResults importResults = new ImportResults();
         URL documentUrl;
-        DirectStatementLoader statementLoader = new DirectStatementLoader(db, (commitSize > 0 ? commitSize : 5000), shortenUrls, typesToLabels, log);
+        ImportConfig config = new ImportConfig(props);
+        UriNodeCache nodeCache = new UriNodeCache(config.getNodeCacheSize());
+        ImportMetrics metrics = ImportMonitor.of(db).started(url, nodeCache);
+        if (job != null) {
+            job.started(metrics);
+        }
+        CommitPolicy commitPolicy = CommitPolicy.forConfig(config, commitSize, log);
+        ImportSymbols symbols = new ImportSymbols(new NamespacePrefixes(), shortenUrls);
+        ImportCheckpoint checkpoint = null;
+        if (config.isResume()) {
+            checkpoint = ImportCheckpoint.resume(db, url, symbols.getPrefixes(), log);
+        } else if (config.isCheckpoint()) {
+            checkpoint = ImportCheckpoint.start(db, url, symbols.getPrefixes());
+        }
+        GraphBatchCommitter committer = new GraphBatchCommitter(db, config.getWriterThreads(),
+                config.getQueueCapacity(), nodeCache, commitPolicy, symbols, metrics, checkpoint, log);
+        DirectStatementLoader statementLoader = new DirectStatementLoader(db, commitPolicy,
+                symbols, typesToLabels, committer, log);
+        if (config.isNamedGraphs()) {
+            statementLoader.useNamedGraphs(new NamedGraphs(db), config.getGraph());
+        }
+        if (config.isSkolemize()) {
+            statementLoader.skolemizeBlankNodes(config.getSkolemBase());
+        }
+        if (checkpoint != null) {
+            statementLoader.keepDocumentOrder();
+        }
         try {
             checkIndexesExist();
             documentUrl = new URL(url);
-            InputStream inputStream = documentUrl.openStream();
-            RDFParser rdfParser = Rio.createParser(getFormat(format));
-            rdfParser.setRDFHandler(statementLoader);
-            rdfParser.parse(inputStream, documentUrl.toString());
+            RDFFormat rdfFormat = getFormat(format);
+            if (config.getParallelism() > 1 && ParallelNTriplesLoader.supports(documentUrl, rdfFormat)) {
+                File file = new File(documentUrl.toURI());
+                long startOffset = (checkpoint != null ? checkpoint.getResumeOffset(file) : 0);
+                new ParallelNTriplesLoader(rdfFormat, config.getParallelism(), config.getChunkSizeBytes(),
+                        config.getMaxBatchHeapBytes(), metrics, log)
+                        .load(file, documentUrl.toString(), startOffset, config.getBNodeFactory(url), statementLoader);
+            } else {
+                InputStream inputStream = metrics.count(documentUrl.openStream());
+                RDFParser rdfParser = Rio.createParser(rdfFormat);
+                if (checkpoint != null) {
+                    inputStream = checkpoint.skipCommitted(inputStream, rdfFormat, statementLoader);
+                }
+                ValueFactory bnodeFactory = config.getBNodeFactory(documentUrl.toString());
+                if (bnodeFactory != null) {
+                    rdfParser.getParserConfig().set(BasicParserSettings.PRESERVE_BNODE_IDS, true);
+                    rdfParser.setValueFactory(bnodeFactory);
+                }
+                rdfParser.setRDFHandler(statementLoader);
+                rdfParser.parse(inputStream, documentUrl.toString());
+            }
         } catch (MalformedURLException e) {
             e.printStackTrace();
+        } catch (IOException | URISyntaxException | RDFHandlerException | QueryExecutionException | RDFParseException | RDFImportPreRequisitesNotMet e) {
+            importResults.setTerminationKO(e.getMessage());
+            e.printStackTrace();
+        } finally {
+            completed(importResults, statementLoader, nodeCache, commitPolicy);
+            if (checkpoint != null && importResults.terminationStatus.equals("OK")) {
+                ImportCheckpoint.clear(db, url);
+            }
+            metrics.finished(importResults.terminationStatus);
+        }
+        return importResults;
+    }
+
+    @Procedure(mode = Mode.WRITE)
+    public Stream<ImportResults> importRDFPatch(@Name("url") String url,
+                                                @Name("shorten") boolean shortenUrls,
+                                                @Name("typesToLabels") boolean typesToLabels,
+                                                @Name("commitSize") long commitSize,
+                                                @Name(value = "props", defaultValue = "{}") Map<String, Object> props) {
+        return Stream.of(runDelta(url, shortenUrls, typesToLabels, commitSize, props, (delta, metrics) -> {
+            try (InputStream inputStream = openDelta(url, metrics)) {
+                delta.applyPatch(inputStream);
+            }
+        }));
+    }
+
+    @Procedure(mode = Mode.WRITE)
+    public Stream<ImportResults> importRDFDelta(@Name("deletionsUrl") String deletionsUrl,
+                                                @Name("additionsUrl") String additionsUrl,
+                                                @Name("format") String format,
+                                                @Name("shorten") boolean shortenUrls,
+                                                @Name("typesToLabels") boolean typesToLabels,
+                                                @Name("commitSize") long commitSize,
+                                                @Name(value = "props", defaultValue = "{}") Map<String, Object> props) {
+        String url = (additionsUrl != null && !additionsUrl.isEmpty() ? additionsUrl : deletionsUrl);
+        return Stream.of(runDelta(url, shortenUrls, typesToLabels, commitSize, props, (delta, metrics) -> {
+            RDFFormat rdfFormat = getFormat(format);
+            try (InputStream deletions = openDelta(deletionsUrl, metrics);
+                 InputStream additions = openDelta(additionsUrl, metrics)) {
+                delta.applyDocuments(deletions, additions, rdfFormat);
+            }
+        }));
+    }
+
+    /**
+     * The change set behind importRDFPatch and importRDFDelta. Its batches are committed in order, by at most
+     * one writer, as a batch may add back what an earlier one deleted.
+     */
+    private ImportResults runDelta(String url, boolean shortenUrls, boolean typesToLabels, long commitSize,
+                                   Map<String, Object> props, DeltaReader reader) {
+        ImportResults importResults = new ImportResults();
+        ImportConfig config = new ImportConfig(props);
+        UriNodeCache nodeCache = new UriNodeCache(config.getNodeCacheSize());
+        ImportMetrics metrics = ImportMonitor.of(db).started(url, nodeCache);
+        CommitPolicy commitPolicy = CommitPolicy.forConfig(config, commitSize, log);
+        ImportSymbols symbols = new ImportSymbols(new NamespacePrefixes(), shortenUrls);
+        GraphBatchCommitter committer = new GraphBatchCommitter(db, Math.min(config.getWriterThreads(), 1),
+                config.getQueueCapacity(), nodeCache, commitPolicy, symbols, metrics, null, log);
+        DirectStatementLoader statementLoader = new DirectStatementLoader(db, commitPolicy,
+                symbols, typesToLabels, committer, log);
+        if (config.isNamedGraphs()) {
+            statementLoader.useNamedGraphs(new NamedGraphs(db), config.getGraph());
+        }
+        try {
+            checkIndexesExist();
+            reader.read(new RDFDelta(statementLoader, url), metrics);
         } catch (IOException | RDFHandlerException | QueryExecutionException | RDFParseException | RDFImportPreRequisitesNotMet e) {
             importResults.setTerminationKO(e.getMessage());
             e.printStackTrace();
         } finally {
-            importResults.setTriplesLoaded(statementLoader.getIngestedTriples());
-            importResults.setNamespaces(statementLoader.getNamespaces());
+            completed(importResults, statementLoader, nodeCache, commitPolicy);
+            metrics.finished(importResults.terminationStatus);
+        }
+        return importResults;
+    }
+
+    /**
+     * @return the document counted by the import metrics, null when there is no url
+     */
+    private static InputStream openDelta(String url, ImportMetrics metrics) throws IOException {
+        return (url != null && !url.isEmpty() ? metrics.count(new URL(url).openStream()) : null);
+    }
+
+    /**
+     * Waits for the last batches and fills in the results of the import.
+     */
+    private void completed(ImportResults importResults, DirectStatementLoader statementLoader, UriNodeCache nodeCache,
+                           CommitPolicy commitPolicy) {
+        try {
+            statementLoader.close();
+        } catch (RDFHandlerException e) {
+            importResults.setTerminationKO(e.getMessage());
+        }
+        importResults.setTriplesLoaded(statementLoader.getIngestedTriples());
+        importResults.setNamespaces(statementLoader.getNamespaces());
+        importResults.setNodeCacheStats(nodeCache.getHits(), nodeCache.getMisses());
+        if (commitPolicy instanceof AdaptiveCommitPolicy) {
+            importResults.setBatches(((AdaptiveCommitPolicy) commitPolicy).getBatchStats());
+        }
+    }
+
+    /**
+     * Replaces the contents of a named graph with the statements of the document, whatever their graph in it.
+     * The other graphs are not touched.
+     */
+    @Procedure(mode = Mode.WRITE)
+    public Stream<ImportResults> replaceGraph(@Name("graph") String graphUri, @Name("url") String url,
+                                              @Name("format") String format,
+                                              @Name("shorten") boolean shortenUrls,
+                                              @Name("typesToLabels") boolean typesToLabels,
+                                              @Name("commitSize") long commitSize,
+                                              @Name(value = "props", defaultValue = "{}") Map<String, Object> props) {
+        NamedGraphs.drop(db, graphUri, (commitSize > 0 ? commitSize : 5000));
+        Map<String, Object> graphProps = new HashMap<>(props != null ? props : Collections.emptyMap());
+        graphProps.put(ImportConfig.GRAPH, graphUri);
+        return Stream.of(runImport(url, format, shortenUrls, typesToLabels, commitSize, graphProps, null));
+    }
+
+    @Procedure(mode = Mode.WRITE)
+    public Stream<GraphDropResults> dropGraph(@Name("graph") String graphUri,
+                                              @Name(value = "batchSize", defaultValue = "10000") long batchSize) {
+        long[] deleted = NamedGraphs.drop(db, graphUri, batchSize);
+        return (deleted != null ? Stream.of(new GraphDropResults(graphUri, deleted[0], deleted[1])) : Stream.empty());
+    }
+
+    @Procedure(mode = Mode.WRITE)
+    public Stream<FileImportResults> importRDFDirectory(@Name("path") String path, @Name("pattern") String pattern,
+                                                        @Name("format") String format,
+                                                        @Name("parallelism") long parallelism,
+                                                        @Name("shorten") boolean shortenUrls,
+                                                        @Name("typesToLabels") boolean typesToLabels,
+                                                        @Name("commitSize") long commitSize,
+                                                        @Name(value = "props", defaultValue = "{}") Map<String, Object> props) {
+        try {
+            checkIndexesExist();
+            RDFFormat rdfFormat = (format != null && !format.isEmpty() ? getFormat(format) : null);
+            List<Path> files = ShardedImport.listFiles(Paths.get(path), pattern);
+            return new ShardedImport(db, shortenUrls, typesToLabels, commitSize, new ImportConfig(props), log)
+                    .importFiles(files, rdfFormat, (int) parallelism).stream();
+        } catch (IOException | RDFImportPreRequisitesNotMet e) {
+            FileImportResults failed = new FileImportResults(path);
+            failed.setTerminationKO(e.getMessage());
+            return Stream.of(failed);
         }
-        return Stream.of(importResults);
+    }
+
+    @Procedure(mode = Mode.WRITE)
+    public Stream<JobStatus> importRDFAsync(@Name("url") String url, @Name("format") String format,
+                                            @Name("shorten") boolean shortenUrls,
+                                            @Name("typesToLabels") boolean typesToLabels,
+                                            @Name("commitSize") long commitSize,
+                                            @Name(value = "props", defaultValue = "{}") Map<String, Object> props) {
+        ImportJob job = ImportJobs.of(db).submit(db, log, url, format, shortenUrls, typesToLabels, commitSize,
+                props);
+        return Stream.of(new JobStatus(job));
     }
 
+    @Procedure
+    public Stream<JobStatus> jobStatus(@Name("id") long id) {
+        ImportJob job = ImportJobs.of(db).get(id);
+        return (job != null ? Stream.of(new JobStatus(job)) : Stream.empty());
+    }
+
+    @Procedure(mode = Mode.WRITE)
+    public Stream<JobStatus> cancelJob(@Name("id") long id) {
+        ImportJob job = ImportJobs.of(db).cancel(id);
+        return (job != null ? Stream.of(new JobStatus(job)) : Stream.empty());
+    }
+
+    @Procedure
+    public Stream<JobStatus> listJobs() {
+        return ImportJobs.of(db).list().stream().map(JobStatus::new);
+    }
+
+    @Procedure
+    public Stream<ImportStatus> importStatus() {
+        return ImportMonitor.of(db).getImports().stream().map(ImportStatus::new);
+    }
+
+    /**
+     * Shows the first 1000 triples of the document as virtual nodes and relationships, 300 nodes at most. The
+     * {@code limit} and {@code nodeLimit} props change these bounds, {@code sampling: true} previews a random
+     * sample of {@code limit} triples from the whole document instead.
+     */
     @Procedure
     public Stream<GraphResult> previewRDF(@Name("url") String url, @Name("format") String format,
                                           @Name("shorten") boolean shortenUrls,
-                                          @Name("typesToLabels") boolean typesToLabels) {
+                                          @Name("typesToLabels") boolean typesToLabels,
+                                          @Name(value = "props", defaultValue = "{}") Map<String, Object> props) {
         URL documentUrl;
         Map<String,Node> virtualNodes = new HashMap<>();
         List<Relationship> virtualRels = new ArrayList<>();
 
-        StatementPreviewer statementViewer = new StatementPreviewer(db, shortenUrls, typesToLabels, virtualNodes, virtualRels, log);
+        StatementPreviewer statementViewer = new StatementPreviewer(db, shortenUrls, typesToLabels, virtualNodes,
+                virtualRels, new ImportConfig(props), log);
         try {
             documentUrl = new URL(url);
-            InputStream inputStream = documentUrl.openStream();
             RDFFormat rdfFormat = getFormat(format);
             log.info("Data set to be parsed as " + rdfFormat);
-            RDFParser rdfParser = Rio.createParser(rdfFormat);
-            rdfParser.setRDFHandler(statementViewer);
-            rdfParser.parse(inputStream, "http://neo4j.com/base/");
+            try (InputStream inputStream = documentUrl.openStream()) {
+                statementViewer.preview(Rio.createParser(rdfFormat), inputStream, "http://neo4j.com/base/");
+            }
         } catch (MalformedURLException e) {
             e.printStackTrace();
         } catch (IOException | RDFHandlerException | QueryExecutionException | RDFParseException | RDFImportPreRequisitesNotMet e) {
@@ -93,21 +328,24 @@ public class RDFImport {
 
     }
 
+    /**
+     * Same as previewRDF, on RDF passed as a string.
+     */
     @Procedure
     public Stream<GraphResult> previewRDFSnippet(@Name("rdf") String rdfFragment, @Name("format") String format,
                                                  @Name("shorten") boolean shortenUrls,
-                                                 @Name("typesToLabels") boolean typesToLabels) {
+                                                 @Name("typesToLabels") boolean typesToLabels,
+                                                 @Name(value = "props", defaultValue = "{}") Map<String, Object> props) {
         Map<String,Node> virtualNodes = new HashMap<>();
         List<Relationship> virtualRels = new ArrayList<>();
 
-        StatementPreviewer statementViewer = new StatementPreviewer(db, shortenUrls, typesToLabels, virtualNodes, virtualRels, log);
+        StatementPreviewer statementViewer = new StatementPreviewer(db, shortenUrls, typesToLabels, virtualNodes,
+                virtualRels, new ImportConfig(props), log);
         try {
             InputStream inputStream = new ByteArrayInputStream( rdfFragment.getBytes(Charset.defaultCharset()) ); //rdfFragment.openStream();
             RDFFormat rdfFormat = getFormat(format);
             log.info("Data set to be parsed as " + rdfFormat);
-            RDFParser rdfParser = Rio.createParser(rdfFormat);
-            rdfParser.setRDFHandler(statementViewer);
-            rdfParser.parse(inputStream, "http://neo4j.com/base/");
+            statementViewer.preview(Rio.createParser(rdfFormat), inputStream, "http://neo4j.com/base/");
         } catch (MalformedURLException e) {
             e.printStackTrace();
         } catch (IOException | RDFHandlerException | QueryExecutionException | RDFParseException | RDFImportPreRequisitesNotMet e) {
@@ -154,6 +392,9 @@ public class RDFImport {
         public String terminationStatus = "OK";
         public long triplesLoaded = 0;
         public Map<String,String> namespaces;
+        public long nodeCacheHits = 0;
+        public long nodeCacheMisses = 0;
+        public List<Map<String,Object>> batches;
         public String extraInfo = "";
 
         public void setTriplesLoaded(long triplesLoaded) {
@@ -164,6 +405,15 @@ public class RDFImport {
             this.namespaces = namespaces;
         }
 
+        public void setNodeCacheStats(long hits, long misses) {
+            this.nodeCacheHits = hits;
+            this.nodeCacheMisses = misses;
+        }
+
+        public void setBatches(List<Map<String, Object>> batches) {
+            this.batches = batches;
+        }
+
         public void setTerminationKO(String message) {
             this.terminationStatus = "KO";
             this.extraInfo = message;
@@ -171,6 +421,129 @@ public class RDFImport {
 
     }
 
+    public static class ImportStatus {
+        public long importId;
+        public String url;
+        public String status;
+        public long elapsedMillis;
+        public long bytesRead;
+        public long triplesParsed;
+        public long triplesCommitted;
+        public long batchesCommitted;
+        public double parseRate;
+        public double triplesPerSecond;
+        public long parseMillis;
+        public long handOverMillis;
+        public long lookupMillis;
+        public long commitMillis;
+        public Map<String,Object> commitLatencyHistogram;
+        public long lastBatchHeapBytes;
+        public long nodeCacheHits;
+        public long nodeCacheMisses;
+        public double nodeCacheHitRate;
+
+        ImportStatus(ImportMetrics metrics) {
+            importId = metrics.getId();
+            url = metrics.getUrl();
+            status = metrics.getStatus();
+            elapsedMillis = metrics.getElapsedMillis();
+            bytesRead = metrics.getBytesRead();
+            triplesParsed = metrics.getTriplesParsed();
+            triplesCommitted = metrics.getTriplesCommitted();
+            batchesCommitted = metrics.getBatchesCommitted();
+            parseRate = metrics.getParseRate();
+            triplesPerSecond = metrics.getTriplesPerSecond();
+            parseMillis = metrics.getParseMillis();
+            handOverMillis = metrics.getHandOverMillis();
+            lookupMillis = metrics.getLookupMillis();
+            commitMillis = metrics.getCommitMillis();
+            commitLatencyHistogram = new LinkedHashMap<>(metrics.getCommitLatencyHistogram());
+            lastBatchHeapBytes = metrics.getLastBatchHeapBytes();
+            nodeCacheHits = metrics.getNodeCacheHits();
+            nodeCacheMisses = metrics.getNodeCacheMisses();
+            nodeCacheHitRate = metrics.getNodeCacheHitRate();
+        }
+    }
+
+    public static class FileImportResults {
+        public String file;
+        public String terminationStatus = "OK";
+        public long triplesLoaded = 0;
+        public long elapsedMillis = 0;
+        public String extraInfo = "";
+
+        public FileImportResults(String file) {
+            this.file = file;
+        }
+
+        public void setTriplesLoaded(long triplesLoaded) {
+            this.triplesLoaded = triplesLoaded;
+        }
+
+        public void setElapsedMillis(long elapsedMillis) {
+            this.elapsedMillis = elapsedMillis;
+        }
+
+        public void setTerminationKO(String message) {
+            this.terminationStatus = "KO";
+            this.extraInfo = message;
+        }
+    }
+
+    public static class GraphDropResults {
+        public String graph;
+        public long resourcesDeleted;
+        public long relationshipsDeleted;
+
+        GraphDropResults(String graph, long resourcesDeleted, long relationshipsDeleted) {
+            this.graph = graph;
+            this.resourcesDeleted = resourcesDeleted;
+            this.relationshipsDeleted = relationshipsDeleted;
+        }
+    }
+
+    public static class JobStatus {
+        public long jobId;
+        public String url;
+        public String format;
+        public String state;
+        public long submitted;
+        public long started;
+        public long finished;
+        public long importId;
+        public long triplesLoaded;
+        public String terminationStatus;
+        public String extraInfo;
+
+        JobStatus(ImportJob job) {
+            jobId = job.getId();
+            url = job.getUrl();
+            format = job.getFormat();
+            state = job.getState().name();
+            submitted = job.getSubmittedMillis();
+            started = job.getStartedMillis();
+            finished = job.getFinishedMillis();
+            ImportMetrics metrics = job.getMetrics();
+            ImportResults results = job.getResults();
+            if (metrics != null) {
+                importId = metrics.getId();
+                triplesLoaded = metrics.getTriplesCommitted();
+            }
+            if (results != null) {
+                triplesLoaded = results.triplesLoaded;
+                terminationStatus = results.terminationStatus;
+                extraInfo = results.extraInfo;
+            }
+        }
+    }
+
+    /**
+     * Reads a change set and applies it through the {@link RDFDelta}.
+     */
+    private interface DeltaReader {
+        void read(RDFDelta delta, ImportMetrics metrics) throws IOException, RDFImportPreRequisitesNotMet;
+    }
+
     private class RDFImportPreRequisitesNotMet extends Exception {
         String message;
 
@@ -0,0 +1,166 @@
+package semantics;
+
+import org.neo4j.kernel.internal.GraphDatabaseAPI;
+import org.neo4j.logging.Log;
+import org.openrdf.model.ValueFactory;
+import org.openrdf.rio.*;
+import org.openrdf.rio.helpers.BasicParserSettings;
+
+import java.io.BufferedInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Imports the files of a dataset delivered as many shards, several files at a time. The shards share the
+ * import's symbols and namespace prefixes, read once before the first file and saved once after the last,
+ * its node id cache, its {@link NamedGraphs} and its {@link UriLockStripes}, so concurrent shards agree on the
+ * nsN prefixes and never create the same resource twice. Each shard commits its own batches, with its own commit policy.
+ */
+class ShardedImport {
+
+    private final GraphDatabaseAPI db;
+    private final Log log;
+    private final ImportConfig config;
+    private final boolean typesToLabels;
+    private final long commitSize;
+    private final ImportSymbols symbols;
+    private final UriNodeCache nodeCache;
+    private final UriLockStripes stripes = new UriLockStripes();
+    private final NamedGraphs namedGraphs;
+
+    ShardedImport(GraphDatabaseAPI graphdb, boolean shortenUrls, boolean typesToLabels, long commitSize,
+                  ImportConfig importConfig, Log l) {
+        db = graphdb;
+        log = l;
+        config = importConfig;
+        this.typesToLabels = typesToLabels;
+        this.commitSize = commitSize;
+        symbols = new ImportSymbols(new NamespacePrefixes(), shortenUrls);
+        nodeCache = new UriNodeCache(config.getNodeCacheSize());
+        namedGraphs = (config.isNamedGraphs() ? new NamedGraphs(db) : null);
+    }
+
+    /**
+     * @return the files of the directory matching the glob pattern, in name order
+     */
+    static List<Path> listFiles(Path directory, String pattern) throws IOException {
+        List<Path> files = new ArrayList<>();
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(directory,
+                (pattern != null && !pattern.isEmpty() ? pattern : "*"))) {
+            for (Path file : stream) {
+                if (Files.isRegularFile(file)) {
+                    files.add(file);
+                }
+            }
+        }
+        files.sort(null);
+        return files;
+    }
+
+    /**
+     * @param format the format of every file, or null to pick it from each file's extension
+     * @return the results of each file, in the order of {@code files}
+     */
+    List<RDFImport.FileImportResults> importFiles(List<Path> files, RDFFormat format, int parallelism) {
+        symbols.getPrefixes().load(db);
+        AtomicInteger threadCount = new AtomicInteger();
+        ExecutorService pool = Executors.newFixedThreadPool(Math.max(parallelism, 1), runnable -> {
+            Thread thread = new Thread(runnable, "rdf-import-shard-" + threadCount.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+        List<RDFImport.FileImportResults> results = new ArrayList<>();
+        try {
+            List<Future<RDFImport.FileImportResults>> shards = new ArrayList<>();
+            for (Path file : files) {
+                shards.add(pool.submit(() -> importFile(file, format)));
+            }
+            for (int i = 0; i < shards.size(); i++) {
+                results.add(await(shards.get(i), files.get(i)));
+            }
+        } finally {
+            pool.shutdownNow();
+        }
+        symbols.getPrefixes().save(db);
+        return results;
+    }
+
+    private RDFImport.FileImportResults importFile(Path file, RDFFormat format) {
+        String url = file.toUri().toString();
+        RDFImport.FileImportResults results = new RDFImport.FileImportResults(url);
+        ImportMetrics metrics = ImportMonitor.of(db).started(url, nodeCache);
+        CommitPolicy commitPolicy = CommitPolicy.forConfig(config, commitSize, log);
+        GraphBatchCommitter committer = new GraphBatchCommitter(db, 0, 0, nodeCache, commitPolicy, symbols,
+                metrics, null, stripes, log);
+        DirectStatementLoader statementLoader = new DirectStatementLoader(db, commitPolicy, symbols, typesToLabels,
+                committer, log) {
+            @Override
+            protected void getExistingNamespaces() {
+                // loaded once for all the shards
+            }
+
+            @Override
+            protected void addNamespaceNode() {
+                // saved once all the shards are imported
+            }
+        };
+        if (namedGraphs != null) {
+            statementLoader.useNamedGraphs(namedGraphs, config.getGraph());
+        }
+        if (config.isSkolemize()) {
+            statementLoader.skolemizeBlankNodes(config.getSkolemBase());
+        }
+        try (InputStream inputStream = metrics.count(new BufferedInputStream(Files.newInputStream(file)))) {
+            RDFFormat fileFormat = (format != null ? format : formatOf(file));
+            RDFParser rdfParser = Rio.createParser(fileFormat);
+            ValueFactory bnodeFactory = config.getBNodeFactory(url);
+            if (bnodeFactory != null) {
+                rdfParser.getParserConfig().set(BasicParserSettings.PRESERVE_BNODE_IDS, true);
+                rdfParser.setValueFactory(bnodeFactory);
+            }
+            rdfParser.setRDFHandler(statementLoader);
+            rdfParser.parse(inputStream, url);
+        } catch (IOException | RuntimeException e) { // Rio's parse and handler exceptions are unchecked
+            results.setTerminationKO(e.getMessage());
+            log.error("Import of " + url + " failed", e);
+        } finally {
+            try {
+                statementLoader.close();
+            } catch (RDFHandlerException e) {
+                results.setTerminationKO(e.getMessage());
+            }
+            metrics.finished(results.terminationStatus);
+            results.setTriplesLoaded(statementLoader.getIngestedTriples());
+            results.setElapsedMillis(metrics.getElapsedMillis());
+        }
+        return results;
+    }
+
+    private static RDFFormat formatOf(Path file) throws IOException {
+        return Rio.getParserFormatForFileName(file.getFileName().toString()).orElseThrow(
+                () -> new IOException("Unrecognized serialization format for " + file.getFileName()));
+    }
+
+    private static RDFImport.FileImportResults await(Future<RDFImport.FileImportResults> shard, Path file) {
+        try {
+            return shard.get();
+        } catch (InterruptedException | ExecutionException e) {
+            if (e instanceof InterruptedException) {
+                Thread.currentThread().interrupt();
+            }
+            RDFImport.FileImportResults failed = new RDFImport.FileImportResults(file.toUri().toString());
+            failed.setTerminationKO(e.getMessage());
+            return failed;
+        }
+    }
+}
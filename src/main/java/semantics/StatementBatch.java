@@ -0,0 +1,321 @@
+package semantics;
+
+import java.util.*;
+
+/**
+ * The resources, labels, properties and relationships parsed between two commits.
+ * A batch is filled on the parser thread and handed over as a whole to a {@link StatementBatchSink},
+ * so it must not be touched by the loader once it has been submitted.
+ *
+ * Resources are dictionary encoded to int ids in order of appearance, and label names, property keys
+ * and relationship types are interned in small per-batch tables. Labels, properties and relationships
+ * are kept as parallel primitive arrays indexed by those ids, so the cost of a batch is one String per
+ * distinct resource plus a few ints per triple. Blank nodes numbered by a {@link CompactBNodeFactory} are
+ * resources with a number instead of a uri.
+ *
+ * All the statements of a batch belong to the same graph, the default graph or one of the {@link NamedGraphs}.
+ */
+class StatementBatch {
+
+    private static final int INITIAL_CAPACITY = 256;
+    private static final int EDGE_KEY_BITS = 21;
+    // rough 64-bit JVM costs: a String with its char[], a HashMap entry with a boxed Integer, a list slot
+    private static final int STRING_OVERHEAD = 56;
+    private static final int RESOURCE_OVERHEAD = STRING_OVERHEAD + 48 + 16 + 8;
+    private static final int BOXED_VALUE = 16;
+    private static final int BLANK_NODE_OVERHEAD = 48 + 16 + 16 + 8 + 8;
+
+    private final Map<String,Integer> resourceIds = new HashMap<>();
+    private final List<String> uris = new ArrayList<>();
+    private final Map<Long,Integer> blankNodeResources = new HashMap<>();
+    private long[] blankNodes = new long[INITIAL_CAPACITY];
+    private final SymbolTable labelNames = new SymbolTable();
+    private final SymbolTable propKeys = new SymbolTable();
+    private final SymbolTable relTypes = new SymbolTable();
+
+    private int[] labelResource = new int[INITIAL_CAPACITY];
+    private int[] labelId = new int[INITIAL_CAPACITY];
+    private int labelCount = 0;
+
+    private int[] propResource = new int[INITIAL_CAPACITY];
+    private int[] propKey = new int[INITIAL_CAPACITY];
+    private Object[] propValue = new Object[INITIAL_CAPACITY];
+    private int propCount = 0;
+
+    private long[] edgeEnds = new long[INITIAL_CAPACITY];
+    private int[] edgeType = new int[INITIAL_CAPACITY];
+    private int edgeCount = 0;
+
+    private int triples = 0;
+    private long estimatedBytes = 0;
+    private long inputOffset = -1;
+    private StatementBatch deletions = null;
+    private final long graph;
+
+    StatementBatch() {
+        this(NamedGraphs.DEFAULT_GRAPH);
+    }
+
+    /**
+     * @param graphId id of the named graph of the statements, {@link NamedGraphs#DEFAULT_GRAPH} for the default graph
+     */
+    StatementBatch(long graphId) {
+        graph = graphId;
+    }
+
+    /**
+     * Properties are kept in the order they were parsed, one entry per value: values of a repeated
+     * predicate are combined by the sink.
+     */
+    void setProp(String subjectUri, String propName, Object propValue){
+        setProp(addResource(subjectUri), propName, propValue);
+    }
+
+    void setProp(int resource, String propName, Object propValue){
+        if (propCount == propResource.length) {
+            int capacity = propCount * 2;
+            propResource = Arrays.copyOf(propResource, capacity);
+            propKey = Arrays.copyOf(propKey, capacity);
+            this.propValue = Arrays.copyOf(this.propValue, capacity);
+        }
+        propResource[propCount] = resource;
+        propKey[propCount] = propKeys.intern(propName);
+        this.propValue[propCount] = propValue;
+        propCount++;
+        estimatedBytes += 16 + estimateValue(propValue);
+    }
+
+    void setLabel(String subjectUri, String label){
+        setLabel(addResource(subjectUri), label);
+    }
+
+    void setLabel(int resource, String label){
+        if (labelCount == labelResource.length) {
+            int capacity = labelCount * 2;
+            labelResource = Arrays.copyOf(labelResource, capacity);
+            labelId = Arrays.copyOf(labelId, capacity);
+        }
+        labelResource[labelCount] = resource;
+        labelId[labelCount] = labelNames.intern(label);
+        labelCount++;
+        estimatedBytes += 8;
+    }
+
+    /**
+     * @return the id of the resource in this batch, registering it if it is new
+     */
+    int addResource(String subjectUri){
+        Integer id = resourceIds.get(subjectUri);
+        if (id == null) {
+            id = newResource(subjectUri, -1);
+            resourceIds.put(subjectUri, id);
+            estimatedBytes += RESOURCE_OVERHEAD + 2L * subjectUri.length();
+        }
+        return id;
+    }
+
+    /**
+     * @param number the number of the blank node in the import, see {@link CompactBNodeFactory}
+     * @return the id of the blank node in this batch, registering it if it is new
+     */
+    int addBlankNode(long number){
+        Integer id = blankNodeResources.get(number);
+        if (id == null) {
+            id = newResource(null, number);
+            blankNodeResources.put(number, id);
+            estimatedBytes += BLANK_NODE_OVERHEAD;
+        }
+        return id;
+    }
+
+    private int newResource(String uri, long blankNodeNumber) {
+        int id = uris.size();
+        uris.add(uri);
+        if (id == blankNodes.length) {
+            blankNodes = Arrays.copyOf(blankNodes, id * 2);
+        }
+        blankNodes[id] = blankNodeNumber;
+        return id;
+    }
+
+    /**
+     * The relationship type name is resolved by the caller on the parser thread, because shortening
+     * may register new namespaces and the writer side must not mutate the namespace map.
+     */
+    void addEdge(String subjectUri, String relTypeName, String objectUri) {
+        addEdge(addResource(subjectUri), relTypeName, addResource(objectUri));
+    }
+
+    void addEdge(int subject, String relTypeName, int object) {
+        if (edgeCount == edgeEnds.length) {
+            int capacity = edgeCount * 2;
+            edgeEnds = Arrays.copyOf(edgeEnds, capacity);
+            edgeType = Arrays.copyOf(edgeType, capacity);
+        }
+        edgeEnds[edgeCount] = ((long) subject << 32) | (object & 0xffffffffL);
+        edgeType[edgeCount] = relTypes.intern(relTypeName);
+        edgeCount++;
+        estimatedBytes += 12;
+    }
+
+    void countTriple() {
+        triples++;
+    }
+
+    int getResourceCount() {
+        return uris.size();
+    }
+
+    /**
+     * @return the uri of the resource, null for a blank node numbered in the import
+     */
+    String getUri(int resource) {
+        return uris.get(resource);
+    }
+
+    boolean isBlankNode(int resource) {
+        return uris.get(resource) == null;
+    }
+
+    /**
+     * @return the number of the blank node in the import, -1 when the resource has a uri
+     */
+    long getBlankNode(int resource) {
+        return blankNodes[resource];
+    }
+
+    void forEachLabel(LabelConsumer consumer) {
+        for (int i = 0; i < labelCount; i++) {
+            consumer.accept(labelResource[i], labelNames.name(labelId[i]));
+        }
+    }
+
+    void forEachProp(PropConsumer consumer) {
+        for (int i = 0; i < propCount; i++) {
+            consumer.accept(propResource[i], propKeys.name(propKey[i]), propValue[i]);
+        }
+    }
+
+    /**
+     * Visits every distinct relationship of the batch once. When the ids are small enough to be packed
+     * in a long (always the case for reasonable commit sizes), duplicates are dropped by sorting the packed
+     * keys; otherwise relationships are visited as parsed.
+     */
+    void forEachEdge(EdgeConsumer consumer) {
+        if (uris.size() < (1 << EDGE_KEY_BITS) && relTypes.size() < (1 << EDGE_KEY_BITS)) {
+            long[] keys = new long[edgeCount];
+            for (int i = 0; i < edgeCount; i++) {
+                long subject = edgeEnds[i] >>> 32;
+                long object = edgeEnds[i] & 0xffffffffL;
+                keys[i] = (subject << (2 * EDGE_KEY_BITS)) | (object << EDGE_KEY_BITS) | edgeType[i];
+            }
+            Arrays.sort(keys);
+            long mask = (1L << EDGE_KEY_BITS) - 1;
+            for (int i = 0; i < keys.length; i++) {
+                if (i == 0 || keys[i] != keys[i - 1]) {
+                    consumer.accept((int) (keys[i] >>> (2 * EDGE_KEY_BITS)),
+                            (int) ((keys[i] >>> EDGE_KEY_BITS) & mask),
+                            relTypes.name((int) (keys[i] & mask)));
+                }
+            }
+        } else {
+            for (int i = 0; i < edgeCount; i++) {
+                consumer.accept((int) (edgeEnds[i] >>> 32), (int) edgeEnds[i], relTypes.name(edgeType[i]));
+            }
+        }
+    }
+
+    /**
+     * The statements this batch removes from the graph, for delta imports, created on first use. They are
+     * removed before the batch's own statements are added, and counted in {@link #getTriples} of both batches.
+     */
+    StatementBatch deletions() {
+        if (deletions == null) {
+            deletions = new StatementBatch(graph);
+        }
+        return deletions;
+    }
+
+    boolean hasDeletions() {
+        return deletions != null && !deletions.isEmpty();
+    }
+
+    long getGraph() {
+        return graph;
+    }
+
+    int getTriples() {
+        return triples;
+    }
+
+    /**
+     * @param offset byte offset in the document right after the last statement of this batch
+     */
+    void setInputOffset(long offset) {
+        inputOffset = offset;
+    }
+
+    /**
+     * @return byte offset in the document right after the last statement of this batch, -1 when unknown
+     */
+    long getInputOffset() {
+        return inputOffset;
+    }
+
+    /**
+     * Approximate heap retained by the batch, maintained as triples are added. Array slack left by
+     * growing the buffers is ignored.
+     */
+    long getEstimatedHeapBytes() {
+        return estimatedBytes + (deletions != null ? deletions.getEstimatedHeapBytes() : 0);
+    }
+
+    private static long estimateValue(Object value) {
+        if (value instanceof String) {
+            return STRING_OVERHEAD + 2L * ((String) value).length();
+        }
+        return BOXED_VALUE;
+    }
+
+    boolean isEmpty() {
+        return triples == 0;
+    }
+
+    interface LabelConsumer {
+        void accept(int resource, String label);
+    }
+
+    interface PropConsumer {
+        void accept(int resource, String key, Object value);
+    }
+
+    interface EdgeConsumer {
+        void accept(int subject, int object, String relType);
+    }
+
+    /**
+     * Interns the few distinct label names, property keys or relationship types of a batch.
+     */
+    private static class SymbolTable {
+        private final Map<String,Integer> ids = new HashMap<>();
+        private final List<String> names = new ArrayList<>();
+
+        int intern(String name) {
+            Integer id = ids.get(name);
+            if (id == null) {
+                id = names.size();
+                ids.put(name, id);
+                names.add(name);
+            }
+            return id;
+        }
+
+        String name(int id) {
+            return names.get(id);
+        }
+
+        int size() {
+            return names.size();
+        }
+    }
+}
@@ -0,0 +1,23 @@
+package semantics;
+
+import org.openrdf.rio.RDFHandlerException;
+
+/**
+ * Receives the batches produced by a {@link DirectStatementLoader} and persists them.
+ */
+interface StatementBatchSink {
+
+    /**
+     * Persists the batch, or queues it to be persisted. Implementations may block the caller
+     * to push back on the parser when they cannot keep up.
+     */
+    void accept(StatementBatch batch) throws RDFHandlerException;
+
+    /**
+     * Waits until every accepted batch has been persisted and releases any worker threads.
+     * Calling it more than once has no further effect.
+     */
+    void close() throws RDFHandlerException;
+
+    long getCommittedTriples();
+}
@@ -1,68 +1,101 @@
 package semantics;
 import apoc.result.VirtualNode;
 import apoc.result.VirtualRelationship;
-import apoc.util.Util;
 import org.neo4j.graphdb.*;
 import org.neo4j.logging.Log;
 import org.openrdf.model.*;
 import org.openrdf.model.vocabulary.RDF;
-import org.openrdf.model.vocabulary.XMLSchema;
 import org.openrdf.rio.RDFHandler;
 import org.openrdf.rio.RDFHandlerException;
+import org.openrdf.rio.RDFParser;
 
+import java.io.IOException;
+import java.io.InputStream;
 import java.util.*;
+import java.util.concurrent.ThreadLocalRandom;
 /**
  * Created by CPR3 on 3/7/2017.
+ *
+ * A preview is bounded: it reads the first {@code limit} triples of the document, or samples {@code limit} triples
+ * across the whole document, and shows at most {@code nodeLimit} nodes. Reading the first triples stops the parse
+ * as soon as either limit is reached, sampling reads the document to the end but only keeps the sample.
  */
 class StatementPreviewer implements RDFHandler {
-    private final boolean shortenUris;
     private GraphDatabaseService graphdb;
     private Map<String,Map<String,Object>> resourceProps = new HashMap<>();
     private Map<String,Set<String>> resourceLabels = new HashMap<>();
     private List<Statement> statements = new ArrayList<>();
 
-    private Map<String,String> namespaces =  new HashMap<>();
+    private final NamespacePrefixes namespaces = new NamespacePrefixes();
+    private final ImportSymbols symbols;
     private final boolean labellise;
+    private final long limit;
+    private final int nodeLimit;
+    private final boolean sampling;
+    private final List<Statement> sample = new ArrayList<>();
+    private long seen = 0;
     private Map<String, Node> vNodes;
     private List<Relationship> vRels;
     Log log;
 
+    /**
+     * @param config the limit, nodeLimit and sampling settings of the preview, a limit of 0 reads every triple
+     */
     public StatementPreviewer(GraphDatabaseService db, boolean shortenUrls, boolean typesToLabels,
-                              Map<String, Node> virtualNodes, List<Relationship> virtualRels, Log l) {
+                              Map<String, Node> virtualNodes, List<Relationship> virtualRels, ImportConfig config,
+                              Log l) {
         graphdb = db;
-        shortenUris = shortenUrls;
+        symbols = new ImportSymbols(namespaces, shortenUrls);
         labellise =  typesToLabels;
+        limit = (config.getLimit() > 0 ? config.getLimit() : Long.MAX_VALUE);
+        nodeLimit = config.getNodeLimit();
+        sampling = config.isSampling();
         vNodes = virtualNodes;
         vRels = virtualRels;
         log = l;
     }
 
+    /**
+     * Parses the document until the preview is complete, then builds its virtual nodes and relationships.
+     */
+    void preview(RDFParser rdfParser, InputStream in, String baseUri) throws IOException {
+        rdfParser.setRDFHandler(this);
+        try {
+            rdfParser.parse(in, baseUri);
+        } catch (PreviewComplete e) {
+            endRDF();
+        } catch (RuntimeException e) {
+            // the JSON-LD parser wraps the exceptions of the handler
+            if (!(e.getCause() instanceof PreviewComplete)) {
+                throw e;
+            }
+            endRDF();
+        }
+    }
+
     public void startRDF() throws RDFHandlerException {
         getExistingNamespaces(); //should it get existing namespaces?? probably yes.
-        log.info("Found " + namespaces.size() + " namespaces in the DB: " + namespaces);
+        log.info("Found " + namespaces.size() + " namespaces in the DB: " + namespaces.asMap());
     }
 
     private void getExistingNamespaces() {
-        Result nslist = graphdb.execute("MATCH (n:NamespacePrefixDefinition) \n" +
-                "UNWIND keys(n) AS namespace\n" +
-                "RETURN namespace, n[namespace] as prefix");
-        while (nslist.hasNext()){
-            Map<String, Object> ns = nslist.next();
-            namespaces.put((String)ns.get("namespace"),(String)ns.get("prefix"));
-        }
+        namespaces.load(graphdb);
     }
 
 
     public void endRDF() throws RDFHandlerException {
+        // sampled statements beyond the node limit are left out
+        sample.forEach(this::map);
+        sample.clear();
         for(String uri:resourceLabels.keySet()){
-            vNodes.put(uri,new VirtualNode(Util.labels(new ArrayList<>(resourceLabels.get(uri))),
-                    resourceProps.get(uri), graphdb));
+            Label[] labels = resourceLabels.get(uri).stream().map(symbols::label).toArray(Label[]::new);
+            vNodes.put(uri,new VirtualNode(labels, resourceProps.get(uri), graphdb));
         }
 
         statements.forEach(st -> vRels.add(
                 new VirtualRelationship(vNodes.get(st.getSubject().stringValue().replace("'", "\'")),
                         vNodes.get(st.getObject().stringValue().replace("'", "\'")),
-                        RelationshipType.withName(shorten(st.getPredicate())))));
+                        symbols.relationshipType(shorten(st.getPredicate())))));
     }
 
     @Override
@@ -71,21 +104,50 @@ class StatementPreviewer implements RDFHandler {
     }
 
 
-    public void handleStatement(Statement st) {
+    public void handleStatement(Statement st) throws RDFHandlerException {
+        seen++;
+        if (sampling) {
+            // reservoir sampling, every statement read so far has the same chance to be in the sample
+            if (sample.size() < Math.min(limit, Integer.MAX_VALUE)) {
+                sample.add(st);
+            } else {
+                long slot = ThreadLocalRandom.current().nextLong(seen);
+                if (slot < sample.size()) {
+                    sample.set((int) slot, st);
+                }
+            }
+        } else if (!map(st) || seen >= limit) {
+            throw new PreviewComplete();
+        }
+    }
+
+    /**
+     * @return false when the statement would add a node beyond the node limit, it is then left out
+     */
+    private boolean map(Statement st) {
         IRI predicate = st.getPredicate();
         org.openrdf.model.Resource subject = st.getSubject(); //includes blank nodes
         Value object = st.getObject();
+        String subjectUri = subject.stringValue().replace("'", "\'");
+        boolean relationship = !(object instanceof Literal) &&
+                !(labellise && predicate.equals(RDF.TYPE) && !(object instanceof BNode));
+        String objectUri = (relationship ? object.stringValue().replace("'", "\'") : subjectUri);
+        int newNodes = (resourceLabels.containsKey(subjectUri) ? 0 : 1) +
+                (objectUri.equals(subjectUri) || resourceLabels.containsKey(objectUri) ? 0 : 1);
+        if (resourceLabels.size() + newNodes > nodeLimit) {
+            return false;
+        }
         if (object instanceof Literal) {
-            setProp(subject.stringValue().replace("'", "\'"), shorten(predicate), getObjectValue((Literal)object));
-        } else if (labellise && predicate.equals(RDF.TYPE) && !(object instanceof BNode)) {
-            setLabel(subject.stringValue().replace("'", "\'"),shorten((IRI)object));
+            setProp(subjectUri, shorten(predicate), DirectStatementLoader.getObjectValue((Literal)object));
+        } else if (!relationship) {
+            setLabel(subjectUri,shorten((IRI)object));
 
         } else {
-            addResource(subject.stringValue().replace("'", "\'"));
-            addResource(object.stringValue().replace("'", "\'"));
+            addResource(subjectUri);
+            addResource(objectUri);
             addStatement(st);
         }
-
+        return true;
     }
 
     private void addStatement(Statement st) {
@@ -111,7 +173,7 @@ class StatementPreviewer implements RDFHandler {
         return props;
     }
 
-    private void setProp(String subjectUri, String propName, String propValue){
+    private void setProp(String subjectUri, String propName, Object propValue){
         Map<String, Object> props;
 
         if(!resourceProps.containsKey(subjectUri)){
@@ -120,9 +182,7 @@ class StatementPreviewer implements RDFHandler {
         } else {
             props = resourceProps.get(subjectUri);
         }
-        // we are overwriting multivalued properties.
-        // An array should be created. Check that all data types are compatible.
-        props.put(propName, propValue);
+        props.put(propName, PropertyValues.merge(props.get(propName), propValue));
     }
 
     private void setLabel(String subjectUri, String label){
@@ -151,40 +211,18 @@ class StatementPreviewer implements RDFHandler {
     }
 
     private String shorten(IRI iri) {
-        if (shortenUris) {
-            String localName = iri.getLocalName();
-            String prefix = getPrefix(iri.getNamespace());
-            return prefix + "_" + localName;
-        } else
-        {
-            return iri.stringValue();
-        }
+        return symbols.shorten(iri);
     }
 
-    private String getPrefix(String namespace) {
-        if (namespaces.containsKey(namespace)){
-            return namespaces.get(namespace);
-        } else{
-            namespaces.put(namespace, nextPrefix());
-            return namespaces.get(namespace);
-        }
-    }
+    /**
+     * Thrown to stop the parser once the preview has all the statements it shows.
+     */
+    private static class PreviewComplete extends RDFHandlerException {
 
-    private String nextPrefix() {
-        return "ns" + namespaces.size();
-    }
+        private static final long serialVersionUID = 1L;
 
-    private String getObjectValue(Literal object) {
-        IRI datatype = object.getDatatype();
-        if (datatype.equals(XMLSchema.DECIMAL) || datatype.equals(XMLSchema.DOUBLE) ||
-                datatype.equals(XMLSchema.FLOAT) || datatype.equals(XMLSchema.INT) ||
-                datatype.equals(XMLSchema.INTEGER) || datatype.equals(XMLSchema.LONG)) {
-            return object.stringValue();
-        } else if (datatype.equals(XMLSchema.BOOLEAN)) {
-            return object.stringValue();
-        } else {
-            return object.stringValue().replace("\\", "\\\\").replace("'", "\\'");
-            //not sure this is the best way to 'clean' the property value
+        PreviewComplete() {
+            super("The preview is complete");
         }
     }
 
@@ -0,0 +1,52 @@
+package semantics;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.List;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Locks serializing the creation of resources, shared by every writer of an import or of a group of concurrent
+ * imports. A writer holds the stripes of the URIs and blank nodes its batch has to create, found neither in the
+ * cache nor in the index, only while it creates them in a short transaction of their own, so two transactions
+ * never both create the same :Resource or :BNode node. The batch itself is written without the stripes, so
+ * batches that share no new resources, or whose new resources were created already, commit in parallel.
+ */
+class UriLockStripes {
+
+    private static final int STRIPES = 4096;
+
+    private final ReentrantLock[] locks = new ReentrantLock[STRIPES];
+
+    UriLockStripes() {
+        for (int i = 0; i < locks.length; i++) {
+            locks[i] = new ReentrantLock();
+        }
+    }
+
+    /**
+     * Stripes are always taken in ascending order, so two writers can never wait on each other.
+     *
+     * @param resources the resources of the batch to create
+     * @return the locks held, to be released with {@link #unlock}
+     */
+    List<ReentrantLock> lock(StatementBatch batch, BitSet resources) {
+        BitSet needed = new BitSet(STRIPES);
+        for (int i = resources.nextSetBit(0); i >= 0; i = resources.nextSetBit(i + 1)) {
+            int hash = (batch.isBlankNode(i) ? Long.hashCode(batch.getBlankNode(i)) : batch.getUri(i).hashCode());
+            needed.set((hash & 0x7fffffff) % STRIPES);
+        }
+        List<ReentrantLock> held = new ArrayList<>(needed.cardinality());
+        for (int i = needed.nextSetBit(0); i >= 0; i = needed.nextSetBit(i + 1)) {
+            locks[i].lock();
+            held.add(locks[i]);
+        }
+        return held;
+    }
+
+    static void unlock(List<ReentrantLock> held) {
+        for (int i = held.size() - 1; i >= 0; i--) {
+            held.get(i).unlock();
+        }
+    }
+}
@@ -0,0 +1,119 @@
+package semantics;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Import-scoped, size-bounded LRU map from resource URI to node id. It lives for the whole import,
+ * so resources that show up in many batches (classes, publishers, countries...) are looked up
+ * in the :Resource(uri) index only once.
+ *
+ * The writer threads of an import share the cache, so it is split by URI hash into segments with an LRU order
+ * and a lock of their own, each holding an equal share of the entries.
+ *
+ * Entries must only be added for nodes that are already committed: a cached id is trusted without
+ * a further index lookup.
+ */
+class UriNodeCache {
+
+    private static final int MAX_SEGMENTS = 16;
+
+    private final int maxSize;
+    private final Segment[] segments;
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+
+    UriNodeCache(int size) {
+        maxSize = Math.max(size, 0);
+        // a power of two, and no more segments than entries
+        int segmentCount = Integer.highestOneBit(Math.max(Math.min(maxSize, MAX_SEGMENTS), 1));
+        segments = new Segment[segmentCount];
+        for (int i = 0; i < segmentCount; i++) {
+            segments[i] = new Segment(maxSize / segmentCount + (i < maxSize % segmentCount ? 1 : 0));
+        }
+    }
+
+    boolean isEnabled() {
+        return maxSize > 0;
+    }
+
+    /**
+     * @return the cached node id or null, counting the lookup as a hit or a miss
+     */
+    Long get(String uri) {
+        if (!isEnabled()) {
+            return null;
+        }
+        Long id = segmentOf(uri).get(uri);
+        if (id == null) {
+            misses.increment();
+        } else {
+            hits.increment();
+        }
+        return id;
+    }
+
+    void put(String uri, long nodeId) {
+        if (isEnabled()) {
+            segmentOf(uri).put(uri, nodeId);
+        }
+    }
+
+    void putAll(Map<String, Long> committed) {
+        if (isEnabled()) {
+            for (Map.Entry<String, Long> entry : committed.entrySet()) {
+                segmentOf(entry.getKey()).put(entry.getKey(), entry.getValue());
+            }
+        }
+    }
+
+    void remove(String uri) {
+        if (isEnabled()) {
+            segmentOf(uri).remove(uri);
+        }
+    }
+
+    long getHits() {
+        return hits.sum();
+    }
+
+    long getMisses() {
+        return misses.sum();
+    }
+
+    private Segment segmentOf(String uri) {
+        int hash = uri.hashCode();
+        return segments[(hash ^ (hash >>> 16)) & (segments.length - 1)];
+    }
+
+    /**
+     * An LRU share of the cache, evicting its least recently used entry once it is full.
+     */
+    private static class Segment {
+        private final int maxSize;
+        private final LinkedHashMap<String, Long> ids = new LinkedHashMap<>(16, 0.75f, true);
+
+        Segment(int size) {
+            maxSize = size;
+        }
+
+        synchronized Long get(String uri) {
+            return ids.get(uri);
+        }
+
+        synchronized void put(String uri, long nodeId) {
+            ids.put(uri, nodeId);
+            if (ids.size() > maxSize) {
+                Iterator<String> eldest = ids.keySet().iterator();
+                eldest.next();
+                eldest.remove();
+            }
+        }
+
+        synchronized void remove(String uri) {
+            ids.remove(uri);
+        }
+    }
+}
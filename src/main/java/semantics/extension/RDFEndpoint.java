@@ -12,6 +12,8 @@ import org.openrdf.model.vocabulary.RDF;
 import org.openrdf.rio.RDFFormat;
 import org.openrdf.rio.RDFWriter;
 import org.openrdf.rio.Rio;
+import semantics.NamedGraphs;
+import semantics.NamespaceRegistry;
 
 import javax.ws.rs.*;
 import javax.ws.rs.Path;
@@ -20,6 +22,7 @@ import javax.ws.rs.core.Response;
 import javax.ws.rs.core.StreamingOutput;
 import java.io.IOException;
 import java.io.OutputStream;
+import java.lang.reflect.Array;
 import java.util.*;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
@@ -35,6 +38,8 @@ public class RDFEndpoint {
 
     private static final ObjectMapper objectMapper = new ObjectMapper();
 
+    private static final Pattern SHORTENED_NAME = Pattern.compile("^(ns\\d+)_(.*)$");
+
     public static RDFFormat[] availableParsers = new RDFFormat[]{RDFFormat.RDFXML, RDFFormat.JSONLD, RDFFormat.TURTLE,
             RDFFormat.NTRIPLES, RDFFormat.TRIG};
 
@@ -112,9 +117,9 @@ public class RDFEndpoint {
             IRI subject = valueFactory.createIRI(baseIndivNS, String.valueOf(node.getId()));
             IRI predicate = valueFactory.createIRI(baseVocabNS, key);
             Object propertyValueObject = allProperties.get(key);
-            if (propertyValueObject instanceof Object[]) {
-                for (int i = 0; i < ((Object[]) propertyValueObject).length; i++) {
-                    Literal object = createTypedLiteral(valueFactory, ((Object[]) propertyValueObject)[i]);
+            if (propertyValueObject.getClass().isArray()) {
+                for (int i = 0; i < Array.getLength(propertyValueObject); i++) {
+                    Literal object = createTypedLiteral(valueFactory, Array.get(propertyValueObject, i));
                     writer.handleStatement(valueFactory.createStatement(subject, predicate, object));
                 }
             } else {
@@ -135,11 +140,13 @@ public class RDFEndpoint {
             @Override
             public void write(OutputStream outputStream) throws IOException, WebApplicationException {
 
-                Map<String,String> namespaces = getNamespacesFromDB(gds);
+                NamespaceRegistry.Namespaces namespaces = NamespaceRegistry.of(gds).current();
 
                 try (Transaction tx = gds.beginTx()) {
                     Result result = gds.execute(removeQuotes(body));
-                    Set<String> serializedNodes = new HashSet<String>();
+                    // by node id, a uri has a node per named graph it is in
+                    Set<Long> serializedNodes = new HashSet<Long>();
+                    GraphContexts contexts = new GraphContexts(gds);
                     RDFWriter writer = Rio.createWriter(getFormat(acceptHeaderParam), outputStream);
                     SimpleValueFactory valueFactory = SimpleValueFactory.getInstance();
                     String baseVocabNS = "neo4j://vocabulary#";
@@ -153,12 +160,13 @@ public class RDFEndpoint {
                             Object o = entry.getValue();
                             if(o instanceof Node){
                                 Node node = (Node) o;
-                                if(!serializedNodes.contains(node.getProperty("uri").toString())) {
-                                    processNode(namespaces, writer, valueFactory, baseVocabNS, node);
-                                    serializedNodes.add(node.getProperty("uri").toString());
+                                if(!serializedNodes.contains(node.getId())) {
+                                    processNode(namespaces, writer, valueFactory, baseVocabNS, node, contexts);
+                                    serializedNodes.add(node.getId());
                                 }
                             } else if (o instanceof Relationship){
-                                processRelationship(namespaces, writer, valueFactory, baseVocabNS, (Relationship) o);
+                                processRelationship(namespaces, writer, valueFactory, baseVocabNS, (Relationship) o,
+                                        contexts);
                             }
                         }
                     }
@@ -170,46 +178,98 @@ public class RDFEndpoint {
         }).build();
     }
 
-    private void processRelationship(Map<String, String> namespaces, RDFWriter writer, SimpleValueFactory valueFactory, String baseVocabNS, Relationship rel) {
-        Resource subject = buildSubject(rel.getStartNode().getProperty("uri").toString(), valueFactory);
+    private void processRelationship(NamespaceRegistry.Namespaces namespaces, RDFWriter writer, SimpleValueFactory valueFactory, String baseVocabNS, Relationship rel,
+                                     GraphContexts contexts) {
+        Resource subject = buildSubject(subjectId(rel.getStartNode()), valueFactory);
         IRI predicate = valueFactory.createIRI(buildURI(baseVocabNS, rel.getType().name(), namespaces));
-        Resource object = buildSubject(rel.getEndNode().getProperty("uri").toString(), valueFactory);
-        writer.handleStatement(valueFactory.createStatement(subject, predicate, object));
+        Resource object = buildSubject(subjectId(rel.getEndNode()), valueFactory);
+        writer.handleStatement(valueFactory.createStatement(subject, predicate, object, contexts.of(rel.getStartNode())));
     }
 
-    private void processNode(Map<String, String> namespaces, RDFWriter writer, SimpleValueFactory valueFactory, String baseVocabNS, Node node) {
+    private void processNode(NamespaceRegistry.Namespaces namespaces, RDFWriter writer, SimpleValueFactory valueFactory, String baseVocabNS, Node node,
+                             GraphContexts contexts) {
+        Resource context = contexts.of(node);
         Iterable<Label> nodeLabels = node.getLabels();
         for (Label label : nodeLabels) {
-            //Exclude the URI, Resource and Bnode categories created by the importer to emulate RDF
-            if (!(label.name().equals("Resource") || label.name().equals("URI") ||
-                    label.name().equals("BNode"))) {
+            if (isImportLabel(label)) {
                 writer.handleStatement(
-                        valueFactory.createStatement(buildSubject(node.getProperty("uri").toString(), valueFactory),
+                        valueFactory.createStatement(buildSubject(subjectId(node), valueFactory),
                                 RDF.TYPE,
-                                valueFactory.createIRI(buildURI(baseVocabNS, label.name(), namespaces))));
+                                valueFactory.createIRI(buildURI(baseVocabNS, label.name(), namespaces)), context));
 
             }
         }
         Map<String, Object> allProperties = node.getAllProperties();
         for (String key : allProperties.keySet()) {
-            if (!key.equals("uri")) {
-                Resource subject = buildSubject(node.getProperty("uri").toString(), valueFactory);
+            if (isImportProperty(key)) {
+                Resource subject = buildSubject(subjectId(node), valueFactory);
                 IRI predicate = valueFactory.createIRI(buildURI(baseVocabNS, key, namespaces));
                 Object propertyValueObject = allProperties.get(key);
-                if (propertyValueObject instanceof Object[]) {
-                    for (int i = 0; i < ((Object[]) propertyValueObject).length; i++) {
-                        Literal object = createTypedLiteral(valueFactory, ((Object[]) propertyValueObject)[i]);
-                        writer.handleStatement(valueFactory.createStatement(subject, predicate, object));
+                if (propertyValueObject.getClass().isArray()) {
+                    for (int i = 0; i < Array.getLength(propertyValueObject); i++) {
+                        Literal object = createTypedLiteral(valueFactory, Array.get(propertyValueObject, i));
+                        writer.handleStatement(valueFactory.createStatement(subject, predicate, object, context));
                     }
                 } else {
                     Literal object = createTypedLiteral(valueFactory, propertyValueObject);
-                    writer.handleStatement(valueFactory.createStatement(subject, predicate, object));
+                    writer.handleStatement(valueFactory.createStatement(subject, predicate, object, context));
                 }
             }
 
         }
     }
 
+    /**
+     * @return false for the URI, Resource and BNode categories created by the importer to emulate RDF, and for the
+     * label of the named graph of a resource
+     */
+    private static boolean isImportLabel(Label label) {
+        return !(label.name().equals("Resource") || label.name().equals("URI") || label.name().equals("BNode") ||
+                NamedGraphs.isGraphLabel(label));
+    }
+
+    /**
+     * @return false for the uri of a resource and the id of its named graph
+     */
+    private static boolean isImportProperty(String key) {
+        return !(key.equals("uri") || key.equals(NamedGraphs.GRAPH_PROPERTY));
+    }
+
+    /**
+     * The IRIs of the named graphs of the exported resources, read once per graph.
+     */
+    private static class GraphContexts {
+
+        private final GraphDatabaseService gds;
+        private final Map<Long, Resource> contexts = new HashMap<>();
+
+        GraphContexts(GraphDatabaseService graphdb) {
+            gds = graphdb;
+        }
+
+        /**
+         * @return the IRI of the named graph of the node, null in the default graph
+         */
+        Resource of(Node node) {
+            long graph = NamedGraphs.graphOf(node);
+            if (graph == NamedGraphs.DEFAULT_GRAPH) {
+                return null;
+            }
+            return contexts.computeIfAbsent(graph, id -> {
+                String uri = NamedGraphs.uri(gds, id);
+                return (uri != null ? SimpleValueFactory.getInstance().createIRI(uri) : null);
+            });
+        }
+    }
+
+    /**
+     * Blank nodes imported in compact mode have no uri, they are serialized as a blank node named after the node.
+     */
+    private String subjectId(Node node) {
+        Object uri = node.getProperty("uri", null);
+        return (uri != null ? uri.toString() : "bnode" + node.getId());
+    }
+
     private Resource buildSubject(String id, ValueFactory vf) {
         Resource result;
         try{
@@ -233,7 +293,7 @@ public class RDFEndpoint {
             @Override
             public void write(OutputStream outputStream) throws IOException, WebApplicationException {
 
-                Map<String,String> namespaces = getNamespacesFromDB(gds);
+                NamespaceRegistry.Namespaces namespaces = NamespaceRegistry.of(gds).current();
 
                 String queryWithContext = "MATCH (x:Resource {uri:{theuri}}) " +
                         "OPTIONAL MATCH (x)-[r]-(val:Resource) WHERE exists(val.uri)\n" +
@@ -253,49 +313,51 @@ public class RDFEndpoint {
                     String baseVocabNS = "neo4j://vocabulary#";
                     writer.handleNamespace("neovoc", baseVocabNS);
                     writer.startRDF();
-                    boolean doneOnce = false;
+                    // the uri has a node per named graph it is in
+                    Set<Long> describedNodes = new HashSet<>();
+                    GraphContexts contexts = new GraphContexts(gds);
                     while (result.hasNext()) {
                         Map<String, Object> row = result.next();
-                        if (!doneOnce) {
+                        Node node = (Node) row.get("x");
+                        if (describedNodes.add(node.getId())) {
                             //Output only once the props of the selected node as literal properties
-                            Node node = (Node) row.get("x");
+                            Resource context = contexts.of(node);
                             Iterable<Label> nodeLabels = node.getLabels();
                             for (Label label : nodeLabels) {
-                                //Exclude the URI, Resource and Bnode categories created by the importer to emulate RDF
-                                if (!(label.name().equals("Resource") || label.name().equals("URI") ||
-                                        label.name().equals("BNode"))) {
+                                if (isImportLabel(label)) {
                                     writer.handleStatement(
                                             valueFactory.createStatement(valueFactory.createIRI(idParam.toString()),
                                                     RDF.TYPE,
-                                                    valueFactory.createIRI(buildURI(baseVocabNS, label.name(), namespaces))));
+                                                    valueFactory.createIRI(buildURI(baseVocabNS, label.name(), namespaces)),
+                                                    context));
                                 }
                             }
                             Map<String, Object> allProperties = node.getAllProperties();
                             for (String key : allProperties.keySet()) {
-                                if (!key.equals("uri")) {
+                                if (isImportProperty(key)) {
                                     IRI subject = valueFactory.createIRI(idParam.toString());
                                     IRI predicate = valueFactory.createIRI(buildURI(baseVocabNS, key, namespaces));
                                     Object propertyValueObject = allProperties.get(key);
-                                    if (propertyValueObject instanceof Object[]) {
-                                        for (int i = 0; i < ((Object[]) propertyValueObject).length; i++) {
-                                            Literal object = createTypedLiteral(valueFactory, ((Object[]) propertyValueObject)[i]);
-                                            writer.handleStatement(valueFactory.createStatement(subject, predicate, object));
+                                    if (propertyValueObject.getClass().isArray()) {
+                                        for (int i = 0; i < Array.getLength(propertyValueObject); i++) {
+                                            Literal object = createTypedLiteral(valueFactory, Array.get(propertyValueObject, i));
+                                            writer.handleStatement(valueFactory.createStatement(subject, predicate, object, context));
                                         }
                                     } else {
                                         Literal object = createTypedLiteral(valueFactory, propertyValueObject);
-                                        writer.handleStatement(valueFactory.createStatement(subject, predicate, object));
+                                        writer.handleStatement(valueFactory.createStatement(subject, predicate, object, context));
                                     }
                                 }
 
                             }
-                            doneOnce = true;
                         }
                         Relationship rel = (Relationship) row.get("r");
                         if (rel != null) {
                             IRI subject = valueFactory.createIRI(rel.getStartNode().getProperty("uri").toString());
                             IRI predicate = valueFactory.createIRI(buildURI(baseVocabNS, rel.getType().name(), namespaces));
                             IRI object = valueFactory.createIRI(rel.getEndNode().getProperty("uri").toString());
-                            writer.handleStatement(valueFactory.createStatement(subject, predicate, object));
+                            writer.handleStatement(valueFactory.createStatement(subject, predicate, object,
+                                    contexts.of(rel.getStartNode())));
                         }
                     }
                     writer.endRDF();
@@ -306,26 +368,13 @@ public class RDFEndpoint {
         }).build();
     }
 
-    private Map<String,String> getNamespacesFromDB(GraphDatabaseService graphdb) {
-        Result nslist = graphdb.execute("MATCH (n:NamespacePrefixDefinition) \n" +
-                "UNWIND keys(n) AS namespace\n" +
-                "RETURN namespace, n[namespace] as prefix");
-        Map<String, String> result = new HashMap<String, String>();
-        while (nslist.hasNext()){
-            Map<String, Object> ns = nslist.next();
-            result.put((String)ns.get("namespace"),(String)ns.get("prefix"));
-        }
-        return result;
-    }
-
-    private String buildURI(String baseVocabNS, String name, Map<String, String> namespaces) {
+    static String buildURI(String baseVocabNS, String name, NamespaceRegistry.Namespaces namespaces) {
         //TODO
         // if uri then return as is
-        Pattern regex = Pattern.compile("^(ns\\d+)_(.*)$");
-        Matcher matcher = regex.matcher(name);
+        Matcher matcher = SHORTENED_NAME.matcher(name);
         if (matcher.matches()){
             String prefix = matcher.group(1);
-            String uriPrefix = getKeyFromValue(prefix, namespaces);
+            String uriPrefix = namespaces.getNamespace(prefix);
             //if namespace but does not exist, then ??? Default to default
 
             String localName = matcher.group(2);
@@ -339,15 +388,6 @@ public class RDFEndpoint {
 
     }
 
-    private String getKeyFromValue(String prefix, Map<String, String> namespaces) {
-        for(String key: namespaces.keySet()){
-            if(namespaces.get(key).equals(prefix)){
-                return key;
-            }
-        }
-        return null;
-    }
-
     private String getPrefix(String namespace, Map<String,String> namespaces) {
         if (namespaces.containsKey(namespace)){
             return namespaces.get(namespace);
@@ -405,9 +445,9 @@ public class RDFEndpoint {
                                 IRI subject = valueFactory.createIRI(baseIndivNS, idParam.toString());
                                 IRI predicate = valueFactory.createIRI(baseVocabNS, key);
                                 Object propertyValueObject = allProperties.get(key);
-                                if (propertyValueObject instanceof Object[]) {
-                                    for (int i = 0; i < ((Object[]) propertyValueObject).length; i++) {
-                                        Literal object = createTypedLiteral(valueFactory, ((Object[]) propertyValueObject)[i]);
+                                if (propertyValueObject.getClass().isArray()) {
+                                    for (int i = 0; i < Array.getLength(propertyValueObject); i++) {
+                                        Literal object = createTypedLiteral(valueFactory, Array.get(propertyValueObject, i));
                                         writer.handleStatement(valueFactory.createStatement(subject, predicate, object));
                                     }
                                 } else {
@@ -481,7 +521,7 @@ public class RDFEndpoint {
         }).build();
     }
 
-    private Literal createTypedLiteral(SimpleValueFactory valueFactory, Object value) {
+    static Literal createTypedLiteral(SimpleValueFactory valueFactory, Object value) {
         Literal result = null;
         if (value instanceof String) {
             result = valueFactory.createLiteral((String) value);
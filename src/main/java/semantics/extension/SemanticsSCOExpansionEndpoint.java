@@ -5,8 +5,11 @@ import org.codehaus.jackson.JsonGenerator;
 import org.codehaus.jackson.map.ObjectMapper;
 import org.neo4j.graphdb.GraphDatabaseService;
 import org.neo4j.graphdb.Node;
+import org.neo4j.graphdb.RelationshipType;
+import org.neo4j.graphdb.ResourceIterator;
 import org.neo4j.graphdb.Result;
 import org.neo4j.graphdb.Transaction;
+import semantics.HierarchyIndex;
 
 import javax.ws.rs.POST;
 import javax.ws.rs.Path;
@@ -16,12 +19,16 @@ import javax.ws.rs.core.Response;
 import javax.ws.rs.core.StreamingOutput;
 import java.io.IOException;
 import java.io.OutputStream;
+import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.List;
 import java.util.Map;
+import java.util.Objects;
 import java.util.Set;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
+import java.util.stream.Stream;
 
 /**
  * Created by jbarrasa on 27/09/2016.
@@ -29,6 +36,8 @@ import java.util.regex.Pattern;
 @Path("/semanticypher")
 public class SemanticsSCOExpansionEndpoint {
 
+    private static final RelationshipType SCO = RelationshipType.withName("SCO");
+
     @POST
     @Path("/")
     //@Consumes(MediaType.TEXT_PLAIN)
@@ -62,14 +71,8 @@ public class SemanticsSCOExpansionEndpoint {
                         //there is only one label so no need to iterate, right? //TODO
                         try (Transaction tx = gds.beginTx()) {
                             for (String labelName : labelsInQuery) {
-                                Map<String, Object> params = new HashMap<String, Object>();
-                                params.put("catname", labelName);
-                                Result subcats = gds.execute("MATCH (:Category { catName: {catname}})<-[:SCO*]-(subcat) RETURN subcat.catName AS subcat",
-                                        params);
                                 int subcatCount = 0;
-                                while (subcats.hasNext()) {
-                                    Map<String, Object> result = subcats.next();
-                                    String subcat = (String) result.get("subcat");
+                                for (String subcat : subcategories(gds, labelName)) {
                                     sb.append(" UNION " + prefix + ":" + subcat + suffix);
                                     subcatCount++;
                                 }
@@ -89,6 +92,42 @@ public class SemanticsSCOExpansionEndpoint {
     }
 
 
+    /**
+     * The categories below the category, read from the hierarchy index when the category is indexed
+     * (semantics.indexHierarchy('Category', 'SCO')) and the hierarchy has not changed since, walking the SCO
+     * relationships otherwise.
+     */
+    private List<String> subcategories(GraphDatabaseService gds, String catName) {
+        Map<String, Object> params = new HashMap<String, Object>();
+        params.put("catname", catName);
+        List<String> subcats = new ArrayList<>();
+        boolean indexed = false;
+        try (Result categories = gds.execute("MATCH (c:Category { catName: {catname}}) RETURN c", params)) {
+            ResourceIterator<Node> nodes = categories.columnAs("c");
+            while (nodes.hasNext()) {
+                Node category = nodes.next();
+                HierarchyIndex index = HierarchyIndex.of(gds, SCO, category);
+                Stream<Node> below = (index != null ? index.descendants(gds, category) : null);
+                indexed = (below != null);
+                if (!indexed) {
+                    break;
+                }
+                below.map(node -> node.getProperty("catName", null)).filter(Objects::nonNull)
+                        .forEach(subcat -> subcats.add(subcat.toString()));
+            }
+        }
+        if (indexed) {
+            return subcats;
+        }
+        subcats.clear();
+        Result result = gds.execute("MATCH (:Category { catName: {catname}})<-[:SCO*]-(subcat) RETURN subcat.catName AS subcat",
+                params);
+        while (result.hasNext()) {
+            subcats.add((String) result.next().get("subcat"));
+        }
+        return subcats;
+    }
+
     private boolean validQuery(String queryPart) {
         // check rest of query does not contain other label usage
         if (Pattern.compile("(?i)^.*\\([^\\{\\)]*:.*\\).*").matcher(queryPart).matches()) {
@@ -0,0 +1,52 @@
+package semantics;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.neo4j.graphdb.GraphDatabaseService;
+import org.neo4j.logging.NullLog;
+import org.neo4j.test.TestGraphDatabaseFactory;
+import org.openrdf.rio.RDFFormat;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Map;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+public class BulkRDFLoaderTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void loadsADocumentIntoAnEmptyStore() throws Exception {
+        File document = folder.newFile("data.ttl");
+        Files.write(document.toPath(), ("@prefix ex: <http://example.org/> .\n" +
+                "ex:a a ex:Person ; ex:name \"A\" ; ex:age 1, 1.0 ; ex:knows ex:b .\n" +
+                "ex:b a ex:Person ; ex:name \"B\" ; ex:knows ex:a .\n" +
+                "ex:b ex:name \"Bee\" .\n").getBytes(StandardCharsets.UTF_8));
+        File storeDir = new File(folder.getRoot(), "graph.db");
+
+        long triples = BulkRDFLoader.load(storeDir, document.toURI().toURL(), RDFFormat.TURTLE, true, true, 2,
+                NullLog.getInstance());
+        assertEquals(9, triples);
+
+        GraphDatabaseService db = new TestGraphDatabaseFactory().newEmbeddedDatabase(storeDir);
+        try {
+            Map<String, Object> counts = db.execute("MATCH (n:Resource) OPTIONAL MATCH (n)-[r]->() " +
+                    "RETURN count(DISTINCT n) AS nodes, count(r) AS rels").next();
+            assertEquals(2L, counts.get("nodes"));
+            assertEquals(2L, counts.get("rels"));
+            Map<String, Object> b = db.execute("MATCH (n:Resource {uri: 'http://example.org/b'}) " +
+                    "RETURN n.ns0_name AS name").next();
+            assertArrayEquals(new String[]{"B", "Bee"}, (String[]) b.get("name"));
+            assertEquals(1.0, db.execute("MATCH (n:Resource {uri: 'http://example.org/a'}) RETURN n.ns0_age AS age")
+                    .next().get("age"));
+        } finally {
+            db.shutdown();
+        }
+    }
+}
@@ -0,0 +1,166 @@
+package semantics;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.neo4j.graphdb.GraphDatabaseService;
+import org.neo4j.graphdb.Label;
+import org.neo4j.graphdb.Node;
+import org.neo4j.graphdb.Result;
+import org.neo4j.graphdb.Transaction;
+import org.neo4j.kernel.impl.proc.Procedures;
+import org.neo4j.kernel.internal.GraphDatabaseAPI;
+import org.neo4j.test.TestGraphDatabaseFactory;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+public class HierarchyIndexTest {
+
+    // E, F and G are a cycle, D and J have two parents, I is on its own
+    private static final String DAG = "CREATE (a:Class {name: 'A'}), (b:Class {name: 'B'}), (c:Class {name: 'C'}), " +
+            "(d:Class {name: 'D'}), (e:Class {name: 'E'}), (f:Class {name: 'F'}), (g:Class {name: 'G'}), " +
+            "(h:Class {name: 'H'}), (i:Class {name: 'I'}), (j:Class {name: 'J'}), " +
+            "(b)-[:SCO]->(a), (c)-[:SCO]->(a), (d)-[:SCO]->(b), (d)-[:SCO]->(c), (e)-[:SCO]->(d), " +
+            "(f)-[:SCO]->(e), (g)-[:SCO]->(f), (e)-[:SCO]->(g), (h)-[:SCO]->(c), (j)-[:SCO]->(h), (j)-[:SCO]->(g)";
+
+    private GraphDatabaseService db;
+
+    @Before
+    public void startDatabase() throws Exception {
+        db = new TestGraphDatabaseFactory().newImpermanentDatabase();
+        Procedures procedures = ((GraphDatabaseAPI) db).getDependencyResolver().resolveDependency(Procedures.class);
+        procedures.registerProcedure(LiteOntologyImporter.class);
+        procedures.registerFunction(LiteOntologyImporter.class);
+    }
+
+    @After
+    public void stopDatabase() {
+        db.shutdown();
+    }
+
+    @Test
+    public void matchesTheTraversalOnEveryPair() {
+        db.execute(DAG).close();
+        indexHierarchy("Class", "SCO");
+        assertMatchesTraversal("Class", "SCO");
+    }
+
+    @Test
+    public void matchesThePropertyTraversalOnEveryPair() {
+        db.execute(DAG.replace(":Class", ":ObjectProperty").replace(":SCO", ":SPO")).close();
+        indexHierarchy("ObjectProperty", "SPO");
+        assertMatchesTraversal("ObjectProperty", "SPO");
+    }
+
+    @Test
+    public void keepsTheNumbersOfEachHierarchyOfAPunnedTerm() {
+        db.execute(DAG).close();
+        // the classes are properties too, in a hierarchy upside down
+        db.execute("MATCH (n:Class) SET n:ObjectProperty WITH n MATCH (n)-[:SCO]->(m) CREATE (m)-[:SPO]->(n)")
+                .close();
+        indexHierarchy("Class", "SCO");
+        indexHierarchy("ObjectProperty", "SPO");
+        assertMatchesTraversal("Class", "SCO");
+        assertMatchesTraversal("ObjectProperty", "SPO");
+    }
+
+    @Test
+    public void findsNoDescendantsInAnotherHierarchyOfTheLabel() {
+        db.execute(DAG).close();
+        // numbered from 0 too, and sharing the Class label
+        db.execute("CREATE (:Class:Category {name: 'X'})<-[:BROADER]-(:Class:Category {name: 'Y'})").close();
+        indexHierarchy("Class", "SCO");
+        indexHierarchy("Category", "BROADER");
+        assertMatchesTraversal("Class", "SCO");
+        assertEquals(set("Y"), names("MATCH (x {name: 'X'}) CALL semantics.subClasses(x, 'BROADER') YIELD node " +
+                "RETURN node.name AS name"));
+    }
+
+    @Test
+    public void isNotUsedOnceTheHierarchyChanges() {
+        db.execute(DAG).close();
+        indexHierarchy("Class", "SCO");
+        db.execute("MATCH (i:Class {name: 'I'}), (b:Class {name: 'B'}) CREATE (i)-[:SCO]->(b)").close();
+        assertNull(isSubClassOf("I", "B"));
+        assertEquals(set(), names("MATCH (b {name: 'B'}) CALL semantics.subClasses(b) YIELD node " +
+                "RETURN node.name AS name"));
+        indexHierarchy("Class", "SCO");
+        assertMatchesTraversal("Class", "SCO");
+
+        db.execute("MATCH (:Class {name: 'J'})-[r:SCO]->(:Class {name: 'G'}) DELETE r").close();
+        assertNull(isSubClassOf("J", "A"));
+        indexHierarchy("Class", "SCO");
+        assertMatchesTraversal("Class", "SCO");
+
+        db.execute("CREATE (:Class {name: 'K'})").close();
+        assertNull(isSubClassOf("J", "A"));
+        indexHierarchy("Class", "SCO");
+        assertMatchesTraversal("Class", "SCO");
+
+        // numbers and other relationships do not change the hierarchy
+        db.execute("MATCH (a:Class {name: 'A'}), (b:Class {name: 'B'}) SET a.comment = 'root' " +
+                "CREATE (a)-[:DOMAIN]->(b)").close();
+        assertEquals(true, isSubClassOf("J", "A"));
+    }
+
+    private void assertMatchesTraversal(String label, String type) {
+        List<String> names = new ArrayList<>();
+        try (Transaction tx = db.beginTx()) {
+            db.findNodes(Label.label(label))
+                    .forEachRemaining(node -> names.add((String) node.getProperty("name")));
+            tx.success();
+        }
+        for (String ancestor : names) {
+            Map<String, Object> params = new HashMap<>();
+            params.put("name", ancestor);
+            params.put("type", type);
+            Set<String> below = names(String.format("MATCH (:`%s` {name: {name}})<-[:`%s`*]-(n:`%s`) " +
+                    "RETURN DISTINCT n.name AS name", label, type, label), params);
+            below.remove(ancestor);
+            assertEquals(ancestor, below, names(String.format("MATCH (a:`%s` {name: {name}}) " +
+                    "CALL semantics.subClasses(a, {type}) YIELD node RETURN node.name AS name", label), params));
+            for (String node : names) {
+                params.put("node", node);
+                boolean traversed = node.equals(ancestor) || below.contains(node);
+                assertEquals(node + " below " + ancestor, traversed, db.execute(String.format(
+                        "MATCH (n:`%s` {name: {node}}), (a:`%s` {name: {name}}) " +
+                                "RETURN semantics.isSubClassOf(n, a, {type}) AS below", label, label), params)
+                        .next().get("below"));
+            }
+        }
+    }
+
+    private void indexHierarchy(String label, String type) {
+        db.execute("CALL semantics.indexHierarchy('" + label + "', '" + type + "')").close();
+    }
+
+    private Boolean isSubClassOf(String node, String ancestor) {
+        return (Boolean) db.execute("MATCH (n:Class {name: '" + node + "'}), (a:Class {name: '" + ancestor + "'}) " +
+                "RETURN semantics.isSubClassOf(n, a) AS below").next().get("below");
+    }
+
+    private Set<String> names(String query) {
+        return names(query, new HashMap<>());
+    }
+
+    private Set<String> names(String query, Map<String, Object> params) {
+        Set<String> names = new HashSet<>();
+        try (Result result = db.execute(query, params)) {
+            result.<String>columnAs("name").forEachRemaining(names::add);
+        }
+        return names;
+    }
+
+    private static Set<String> set(String... names) {
+        return new HashSet<>(Arrays.asList(names));
+    }
+}
@@ -0,0 +1,131 @@
+package semantics;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.neo4j.graphdb.GraphDatabaseService;
+import org.neo4j.graphdb.Transaction;
+import org.neo4j.kernel.impl.proc.Procedures;
+import org.neo4j.kernel.internal.GraphDatabaseAPI;
+import org.neo4j.test.TestGraphDatabaseFactory;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class ImportCheckpointTest {
+
+    private static final int STATEMENTS = 100;
+    private static final int BROKEN = 90;
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private GraphDatabaseService db;
+
+    @Before
+    public void startDatabase() throws Exception {
+        db = new TestGraphDatabaseFactory().newImpermanentDatabase();
+        ((GraphDatabaseAPI) db).getDependencyResolver().resolveDependency(Procedures.class)
+                .registerProcedure(RDFImport.class);
+        db.execute("CREATE INDEX ON :Resource(uri)").close();
+        try (Transaction tx = db.beginTx()) {
+            db.schema().awaitIndexesOnline(1, TimeUnit.MINUTES);
+            tx.success();
+        }
+    }
+
+    @After
+    public void stopDatabase() {
+        db.shutdown();
+    }
+
+    @Test
+    public void resumesALineOrientedDocumentAfterItsLastBatch() throws Exception {
+        assertResumes("N-Triples", "{}");
+    }
+
+    @Test
+    public void resumesAParsedDocumentAfterItsLastBatch() throws Exception {
+        assertResumes("Turtle", "{}");
+    }
+
+    @Test
+    public void resumesAParallelImportAfterItsLastBatch() throws Exception {
+        // chunks of the 1 KB minimum, so the chunks before the broken line are committed
+        assertResumes("N-Triples", "{parallelism: 2, chunkSizeMb: 0}");
+    }
+
+    @Test
+    public void startsAgainWithoutACheckpoint() throws Exception {
+        File document = folder.newFile();
+        write(document, false);
+        Map<String, Object> results = importRDF(document, "N-Triples", "{resume: true}");
+        assertEquals(results.toString(), "OK", results.get("terminationStatus"));
+        assertEquals((long) STATEMENTS, results.get("triplesLoaded"));
+        assertEquals(0L, checkpointedTriples());
+    }
+
+    private void assertResumes(String format, String props) throws Exception {
+        File document = folder.newFile();
+        write(document, false);
+        importRDF(document, format, "{}");
+        String expected = RDFDeltaTest.graph(db);
+        db.execute("MATCH (n) DETACH DELETE n").close();
+
+        write(document, true);
+        Map<String, Object> results = importRDF(document, format,
+                props.replace("{", "{checkpoint: true, ").replace(", }", "}"));
+        assertEquals("KO", results.get("terminationStatus"));
+        long committed = checkpointedTriples();
+        assertTrue("committed " + committed, committed > 0 && committed < BROKEN);
+
+        write(document, false);
+        results = importRDF(document, format, props.replace("{", "{resume: true, ").replace(", }", "}"));
+        assertEquals(results.toString(), "OK", results.get("terminationStatus"));
+        assertEquals(STATEMENTS - committed, results.get("triplesLoaded"));
+        assertEquals(0L, checkpointedTriples());
+        assertEquals(expected, RDFDeltaTest.graph(db));
+    }
+
+    /**
+     * Writes the statements, the blank node is used before and after the broken line, whose object is cut
+     * short when {@code broken} is set.
+     */
+    private static void write(File document, boolean broken) throws Exception {
+        StringBuilder statements = new StringBuilder("# resources in a chain\n");
+        for (int i = 1; i <= STATEMENTS; i++) {
+            String subject = "<http://example.org/r" + i + ">";
+            if (i == 3) {
+                statements.append(subject).append(" <http://example.org/owns> _:car .\n");
+            } else if (i == 95) {
+                statements.append("_:car <http://example.org/name> \"Car\" .\n");
+            } else if (i == BROKEN && broken) {
+                statements.append(subject).append(" <http://example.org/next> <http://example.org/r .\n");
+            } else if (i % 2 == 0) {
+                statements.append(subject).append(" <http://example.org/name> \"R").append(i).append("\" .\n");
+            } else {
+                statements.append(subject).append(" <http://example.org/next> <http://example.org/r")
+                        .append(i + 1).append("> .\n");
+            }
+        }
+        Files.write(document.toPath(), statements.toString().getBytes(StandardCharsets.UTF_8));
+    }
+
+    private Map<String, Object> importRDF(File document, String format, String props) {
+        return db.execute("CALL semantics.importRDF('" + document.toURI() + "', '" + format + "', true, true, 5, " +
+                props + ")").next();
+    }
+
+    private long checkpointedTriples() {
+        return (Long) db.execute("OPTIONAL MATCH (c:ImportCheckpoint) RETURN coalesce(sum(c.triples), 0) AS t")
+                .next().get("t");
+    }
+}
@@ -0,0 +1,101 @@
+package semantics;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.neo4j.graphdb.GraphDatabaseService;
+import org.neo4j.graphdb.QueryExecutionException;
+import org.neo4j.graphdb.Transaction;
+import org.neo4j.kernel.impl.proc.Procedures;
+import org.neo4j.kernel.internal.GraphDatabaseAPI;
+import org.neo4j.test.TestGraphDatabaseFactory;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class ImportJobsTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void runsAJobInTheBackground() throws Exception {
+        GraphDatabaseService db = startDatabase(new TestGraphDatabaseFactory().newImpermanentDatabase());
+        try {
+            String url = document().toURI().toString();
+            long id = (Long) db.execute("CALL semantics.importRDFAsync('" + url + "', 'Turtle', true, true, 100)")
+                    .next().get("jobId");
+            Map<String, Object> status = awaitFinished(db, id);
+            assertEquals("DONE", status.get("state"));
+            assertEquals(3L, status.get("triplesLoaded"));
+            assertEquals(2L, db.execute("MATCH (n:Resource) RETURN count(n) AS c").next().get("c"));
+        } finally {
+            db.shutdown();
+        }
+    }
+
+    @Test
+    public void stopsTheJobsOfADatabaseThatShutsDown() throws Exception {
+        GraphDatabaseService db = startDatabase(new TestGraphDatabaseFactory().newImpermanentDatabase());
+        String url = document().toURI().toString();
+        db.execute("CALL semantics.importRDFAsync('" + url + "', 'Turtle', true, true, 100)").close();
+        ImportJob job = ImportJobs.of((GraphDatabaseAPI) db).list().get(0);
+        db.shutdown();
+        assertTrue(job.isFinished());
+        assertTrue(Thread.getAllStackTraces().keySet().stream()
+                .noneMatch(thread -> thread.getName().startsWith("rdf-import-job-") && thread.isAlive()));
+    }
+
+    @Test
+    public void reportsAnInvalidPoolSetting() throws Exception {
+        GraphDatabaseService db = startDatabase(new TestGraphDatabaseFactory().newImpermanentDatabaseBuilder()
+                .setConfig(ImportJobs.WORKERS_SETTING, "two").newGraphDatabase());
+        try {
+            db.execute("CALL semantics.importRDFAsync('" + document().toURI() + "', 'Turtle', true, true, 100)")
+                    .close();
+            fail("The invalid setting was accepted");
+        } catch (QueryExecutionException e) {
+            assertTrue(e.getMessage(), e.getMessage().contains(
+                    "Invalid value 'two' for semantics.import.jobs.workers in neo4j.conf"));
+        } finally {
+            db.shutdown();
+        }
+    }
+
+    private static GraphDatabaseService startDatabase(GraphDatabaseService db) throws Exception {
+        ((GraphDatabaseAPI) db).getDependencyResolver().resolveDependency(Procedures.class)
+                .registerProcedure(RDFImport.class);
+        db.execute("CREATE INDEX ON :Resource(uri)").close();
+        try (Transaction tx = db.beginTx()) {
+            db.schema().awaitIndexesOnline(1, TimeUnit.MINUTES);
+            tx.success();
+        }
+        return db;
+    }
+
+    private File document() throws Exception {
+        File document = folder.newFile();
+        Files.write(document.toPath(), ("@prefix ex: <http://example.org/> .\n" +
+                "ex:a a ex:Person ; ex:name \"A\" ; ex:knows ex:b .\n").getBytes(StandardCharsets.UTF_8));
+        return document;
+    }
+
+    private static Map<String, Object> awaitFinished(GraphDatabaseService db, long id) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 60000;
+        while (true) {
+            Map<String, Object> status = db.execute("CALL semantics.jobStatus(" + id + ")").next();
+            String state = (String) status.get("state");
+            if (!(state.equals("QUEUED") || state.equals("RUNNING")) || System.currentTimeMillis() > deadline) {
+                return status;
+            }
+            Thread.sleep(50);
+        }
+    }
+}
@@ -0,0 +1,77 @@
+package semantics;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.neo4j.graphdb.GraphDatabaseService;
+import org.neo4j.graphdb.Result;
+import org.neo4j.graphdb.Transaction;
+import org.neo4j.kernel.impl.proc.Procedures;
+import org.neo4j.kernel.internal.GraphDatabaseAPI;
+import org.neo4j.test.TestGraphDatabaseFactory;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+
+public class ImportMonitorTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private GraphDatabaseService db;
+    private GraphDatabaseService other;
+
+    @Before
+    public void startDatabases() throws Exception {
+        db = startDatabase();
+        other = startDatabase();
+    }
+
+    @After
+    public void stopDatabases() {
+        db.shutdown();
+        other.shutdown();
+    }
+
+    @Test
+    public void reportsTheImportsOfItsOwnDatabaseOnly() throws Exception {
+        File document = folder.newFile("data.nt");
+        Files.write(document.toPath(), ("<http://example.org/a> <http://example.org/name> \"A\" .\n")
+                .getBytes(StandardCharsets.UTF_8));
+        db.execute("CALL semantics.importRDF('" + document.toURI() + "', 'N-Triples', true, true, 100, {})")
+                .resultAsString();
+
+        List<String> urls = new ArrayList<>();
+        try (Result status = db.execute("CALL semantics.importStatus() YIELD url RETURN url")) {
+            while (status.hasNext()) {
+                urls.add((String) status.next().get("url"));
+            }
+        }
+        assertEquals(1, urls.size());
+        assertEquals(document.toURI().toString(), urls.get(0));
+        try (Result status = other.execute("CALL semantics.importStatus()")) {
+            assertFalse(status.hasNext());
+        }
+    }
+
+    private static GraphDatabaseService startDatabase() throws Exception {
+        GraphDatabaseService graphdb = new TestGraphDatabaseFactory().newImpermanentDatabase();
+        ((GraphDatabaseAPI) graphdb).getDependencyResolver().resolveDependency(Procedures.class)
+                .registerProcedure(RDFImport.class);
+        graphdb.execute("CREATE INDEX ON :Resource(uri)").close();
+        try (Transaction tx = graphdb.beginTx()) {
+            graphdb.schema().awaitIndexesOnline(1, TimeUnit.MINUTES);
+            tx.success();
+        }
+        return graphdb;
+    }
+}
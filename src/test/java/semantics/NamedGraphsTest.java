@@ -0,0 +1,146 @@
+package semantics;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.neo4j.graphdb.GraphDatabaseService;
+import org.neo4j.graphdb.Transaction;
+import org.neo4j.kernel.impl.proc.Procedures;
+import org.neo4j.kernel.internal.GraphDatabaseAPI;
+import org.neo4j.logging.NullLog;
+import org.neo4j.test.TestGraphDatabaseFactory;
+import org.openrdf.model.IRI;
+import org.openrdf.model.ValueFactory;
+import org.openrdf.model.impl.SimpleValueFactory;
+import org.openrdf.rio.RDFHandlerException;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+
+public class NamedGraphsTest {
+
+    private static final String INTERLEAVED = "" +
+            "<http://example.org/a> <http://example.org/name> \"A1\" <http://example.org/g1> .\n" +
+            "<http://example.org/a> <http://example.org/name> \"A2\" <http://example.org/g2> .\n" +
+            "<http://example.org/b> <http://example.org/name> \"B1\" <http://example.org/g1> .\n" +
+            "<http://example.org/b> <http://example.org/name> \"B2\" <http://example.org/g2> .\n" +
+            "<http://example.org/a> <http://example.org/knows> <http://example.org/b> .\n";
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private GraphDatabaseService db;
+
+    @Before
+    public void startDatabase() throws Exception {
+        db = new TestGraphDatabaseFactory().newImpermanentDatabase();
+        ((GraphDatabaseAPI) db).getDependencyResolver().resolveDependency(Procedures.class)
+                .registerProcedure(RDFImport.class);
+        db.execute("CREATE INDEX ON :Resource(uri)").close();
+        try (Transaction tx = db.beginTx()) {
+            db.schema().awaitIndexesOnline(1, TimeUnit.MINUTES);
+            tx.success();
+        }
+    }
+
+    @After
+    public void stopDatabase() {
+        db.shutdown();
+    }
+
+    @Test
+    public void flattensTheGraphsByDefault() throws Exception {
+        importQuads("{}");
+        assertEquals(2L, count("MATCH (n:Resource) RETURN count(n) AS c"));
+        assertEquals(0L, count("MATCH (n:NamedGraph) RETURN count(n) AS c"));
+        assertEquals(1L, count("MATCH (:Resource {uri: 'http://example.org/a'})-->(:Resource) RETURN count(*) AS c"));
+    }
+
+    @Test
+    public void loadsEachNamedGraphIntoItsOwnResources() throws Exception {
+        importQuads("{namedGraphs: true}");
+        assertEquals(2L, count("MATCH (n:NamedGraph) RETURN count(n) AS c"));
+        assertEquals(6L, count("MATCH (n:Resource) RETURN count(n) AS c"));
+        assertEquals(2L, count("MATCH (n:Resource {uri: 'http://example.org/a'}) WHERE exists(n.graph) " +
+                "RETURN count(n) AS c"));
+
+        db.execute("CALL semantics.dropGraph('http://example.org/g1')").close();
+        assertEquals(1L, count("MATCH (n:NamedGraph) RETURN count(n) AS c"));
+        assertEquals(4L, count("MATCH (n:Resource) RETURN count(n) AS c"));
+    }
+
+    @Test
+    public void keepsABatchOpenPerGraph() throws Exception {
+        List<StatementBatch> batches = load(false, 2);
+        // one full batch per graph, then the default graph at the end
+        assertEquals(3, batches.size());
+        for (StatementBatch batch : batches) {
+            assertEquals(batch.getGraph() == NamedGraphs.DEFAULT_GRAPH ? 1 : 2, batch.getTriples());
+        }
+    }
+
+    @Test
+    public void flushesOnEveryGraphChangeInDocumentOrder() throws Exception {
+        List<StatementBatch> batches = load(true, 2);
+        assertEquals(5, batches.size());
+    }
+
+    private List<StatementBatch> load(boolean documentOrder, long commitSize) throws RDFHandlerException {
+        List<StatementBatch> batches = new ArrayList<>();
+        StatementBatchSink sink = new StatementBatchSink() {
+            @Override
+            public void accept(StatementBatch batch) {
+                if (!batch.isEmpty()) {
+                    batches.add(batch);
+                }
+            }
+
+            @Override
+            public void close() {
+            }
+
+            @Override
+            public long getCommittedTriples() {
+                return 0;
+            }
+        };
+        DirectStatementLoader loader = new DirectStatementLoader(db, commitSize, true, true, sink,
+                NullLog.getInstance());
+        loader.useNamedGraphs(new NamedGraphs((GraphDatabaseAPI) db), null);
+        if (documentOrder) {
+            loader.keepDocumentOrder();
+        }
+        ValueFactory values = SimpleValueFactory.getInstance();
+        IRI name = values.createIRI("http://example.org/name");
+        IRI g1 = values.createIRI("http://example.org/g1");
+        IRI g2 = values.createIRI("http://example.org/g2");
+        IRI a = values.createIRI("http://example.org/a");
+        IRI b = values.createIRI("http://example.org/b");
+        loader.handleStatement(values.createStatement(a, name, values.createLiteral("A1"), g1));
+        loader.handleStatement(values.createStatement(a, name, values.createLiteral("A2"), g2));
+        loader.handleStatement(values.createStatement(b, name, values.createLiteral("B1"), g1));
+        loader.handleStatement(values.createStatement(b, name, values.createLiteral("B2"), g2));
+        loader.handleStatement(values.createStatement(a, values.createIRI("http://example.org/knows"), b));
+        loader.flush();
+        return batches;
+    }
+
+    private void importQuads(String props) throws Exception {
+        File document = folder.newFile("data.nq");
+        Files.write(document.toPath(), INTERLEAVED.getBytes(StandardCharsets.UTF_8));
+        db.execute("CALL semantics.importRDF('" + document.toURI() + "', 'N-Quads', true, true, 100, " + props + ")")
+                .close();
+    }
+
+    private long count(String query) {
+        return (Long) db.execute(query).next().get("c");
+    }
+}
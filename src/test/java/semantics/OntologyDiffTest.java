@@ -0,0 +1,112 @@
+package semantics;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.neo4j.graphdb.GraphDatabaseService;
+import org.neo4j.kernel.impl.proc.Procedures;
+import org.neo4j.kernel.internal.GraphDatabaseAPI;
+import org.neo4j.test.TestGraphDatabaseFactory;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+
+public class OntologyDiffTest {
+
+    private static final String PREFIXES = "@prefix owl: <http://www.w3.org/2002/07/owl#> .\n" +
+            "@prefix rdfs: <http://www.w3.org/2000/01/rdf-schema#> .\n" +
+            "@prefix foaf: <http://xmlns.com/foaf/0.1/> .\n" +
+            "@prefix ex: <http://example.org/> .\n";
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private GraphDatabaseService db;
+
+    @Before
+    public void startDatabase() throws Exception {
+        db = new TestGraphDatabaseFactory().newImpermanentDatabase();
+        Procedures procedures = ((GraphDatabaseAPI) db).getDependencyResolver().resolveDependency(Procedures.class);
+        procedures.registerProcedure(LiteOntologyImporter.class);
+        procedures.registerFunction(LiteOntologyImporter.class);
+    }
+
+    @After
+    public void stopDatabase() {
+        db.shutdown();
+    }
+
+    @Test
+    public void appliesTheChangesOfANewRelease() throws Exception {
+        String v1 = "<http://example.org/onto> a owl:Ontology .\n" +
+                "ex:Animal a owl:Class ; rdfs:label \"Animal\" .\n" +
+                "ex:Dog a owl:Class ; rdfs:label \"Dog\" ; rdfs:subClassOf ex:Animal .\n" +
+                "ex:Cat a owl:Class ; rdfs:label \"Cat\" ; rdfs:subClassOf ex:Animal .\n" +
+                "ex:name a owl:DatatypeProperty ; rdfs:domain ex:Animal .\n";
+        String v2 = "<http://example.org/onto> a owl:Ontology .\n" +
+                "ex:Animal a owl:Class ; rdfs:label \"Animal\" .\n" +
+                "ex:Mammal a owl:Class ; rdfs:label \"Mammal\" ; rdfs:subClassOf ex:Animal .\n" +
+                "ex:Dog a owl:Class ; rdfs:label \"Dog\" ; rdfs:subClassOf ex:Mammal .\n" +
+                "ex:name a owl:DatatypeProperty ; rdfs:domain ex:Animal ; rdfs:comment \"The name\" .\n";
+        assertEquals("added: 4, changed: 0, unchanged: 0, removed: 0", importDiff(v1));
+        assertEquals("added: 1, changed: 2, unchanged: 1, removed: 1", importDiff(v2));
+        assertEquals("added: 0, changed: 0, unchanged: 4, removed: 0", importDiff(v2));
+
+        assertEquals(new HashSet<>(Arrays.asList("Animal", "Mammal", "Dog")),
+                strings("MATCH (c:Class) RETURN c.label AS s"));
+        assertEquals(new HashSet<>(Arrays.asList("Dog->Mammal", "Mammal->Animal")),
+                strings("MATCH (a:Class)-[:SCO]->(b:Class) RETURN a.label + '->' + b.label AS s"));
+        assertEquals(true, db.execute("MATCH (d:Class {label: 'Dog'}), (a:Class {label: 'Animal'}) " +
+                "RETURN semantics.isSubClassOf(d, a) AS below").next().get("below"));
+        assertEquals("The name", db.execute("MATCH (p:DatatypeProperty) RETURN p.comment AS c").next().get("c"));
+    }
+
+    @Test
+    public void keepsATermAnotherOntologyStillDeclares() throws Exception {
+        String person = "foaf:Person a owl:Class ; rdfs:label \"Person\" .\n";
+        importDiff("<http://example.org/a> a owl:Ontology .\n" + person);
+        importDiff("<http://example.org/b> a owl:Ontology .\n" + person + "ex:Employee a owl:Class .\n");
+        assertEquals(new HashSet<>(Arrays.asList("http://example.org/a", "http://example.org/b")), ontologies());
+
+        assertEquals("added: 0, changed: 0, unchanged: 1, removed: 1",
+                importDiff("<http://example.org/b> a owl:Ontology .\n ex:Employee a owl:Class .\n"));
+        assertEquals(new HashSet<>(Arrays.asList("http://example.org/a")), ontologies());
+
+        importDiff("<http://example.org/a> a owl:Ontology .\n ex:Other a owl:Class .\n");
+        assertEquals(0L, db.execute("MATCH (c:Class {uri: 'http://xmlns.com/foaf/0.1/Person'}) RETURN count(c) AS c")
+                .next().get("c"));
+    }
+
+    private String importDiff(String turtle) throws Exception {
+        File document = folder.newFile();
+        Files.write(document.toPath(), (PREFIXES + turtle).getBytes(StandardCharsets.UTF_8));
+        Map<String, Object> results = db.execute("CALL semantics.liteOntoImport('" + document.toURI() +
+                "', 'Turtle', {diff: true})").next();
+        assertEquals(results.toString(), "OK", results.get("terminationStatus"));
+        return (String) results.get("extraInfo");
+    }
+
+    private Set<String> ontologies() {
+        Object ontologies = db.execute("MATCH (c:Class {uri: 'http://xmlns.com/foaf/0.1/Person'}) " +
+                "RETURN c.ontology AS o").next().get("o");
+        assertNotNull(ontologies);
+        return new HashSet<>(Arrays.asList((String[]) ontologies));
+    }
+
+    private Set<String> strings(String query) {
+        Set<String> strings = new HashSet<>();
+        db.execute(query).<String>columnAs("s").forEachRemaining(strings::add);
+        return strings;
+    }
+}
@@ -0,0 +1,112 @@
+package semantics;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.neo4j.graphdb.GraphDatabaseService;
+import org.neo4j.graphdb.Transaction;
+import org.neo4j.kernel.impl.proc.Procedures;
+import org.neo4j.kernel.internal.GraphDatabaseAPI;
+import org.neo4j.test.TestGraphDatabaseFactory;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+public class ParallelNTriplesLoaderTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private GraphDatabaseService db;
+
+    @Before
+    public void startDatabase() throws Exception {
+        db = new TestGraphDatabaseFactory().newImpermanentDatabase();
+        ((GraphDatabaseAPI) db).getDependencyResolver().resolveDependency(Procedures.class)
+                .registerProcedure(RDFImport.class);
+        db.execute("CREATE INDEX ON :Resource(uri)").close();
+        try (Transaction tx = db.beginTx()) {
+            db.schema().awaitIndexesOnline(1, TimeUnit.MINUTES);
+            tx.success();
+        }
+    }
+
+    @After
+    public void stopDatabase() {
+        db.shutdown();
+    }
+
+    @Test
+    public void holdsTheParserOfAChunkOnceItsBatchesReachTheBudget() throws Exception {
+        StatementBatch[] batches = {batch(1), batch(2), batch(3), batch(4)};
+        ParallelNTriplesLoader.ChunkBatches chunk =
+                new ParallelNTriplesLoader.ChunkBatches(1000, batches[0].getEstimatedHeapBytes());
+        AtomicInteger accepted = new AtomicInteger();
+        Thread parser = new Thread(() -> {
+            try {
+                for (StatementBatch batch : batches) {
+                    chunk.accept(batch);
+                    accepted.incrementAndGet();
+                }
+                chunk.finish(true);
+            } catch (Exception e) {
+                throw new RuntimeException(e);
+            }
+        });
+        parser.start();
+        // the first batch is buffered and the second held back, the third has to wait for the commit stage
+        awaitBlocked(parser);
+        assertEquals(2, accepted.get());
+
+        for (StatementBatch batch : batches) {
+            assertSame(batch, chunk.take());
+        }
+        assertNull(chunk.take());
+        parser.join(10000);
+        assertEquals(4, accepted.get());
+        assertEquals(-1, batches[2].getInputOffset());
+        assertEquals(1000, batches[3].getInputOffset());
+    }
+
+    @Test
+    public void loadsEveryChunkWithinATinyBudget() throws Exception {
+        StringBuilder document = new StringBuilder();
+        for (int i = 0; i < 1000; i++) {
+            document.append("<http://example.org/r").append(i).append("> <http://example.org/next> ")
+                    .append("<http://example.org/r").append(i + 1).append("> .\n");
+        }
+        File file = folder.newFile("data.nt");
+        Files.write(file.toPath(), document.toString().getBytes(StandardCharsets.UTF_8));
+        db.execute("CALL semantics.importRDF('" + file.toURI() + "', 'N-Triples', true, true, 10, " +
+                "{parallelism: 4, chunkSizeMb: 0, maxBatchHeapMb: 0})").resultAsString();
+        try (Transaction tx = db.beginTx()) {
+            assertEquals(1001L, db.execute("MATCH (r:Resource) RETURN count(r) AS c").next().get("c"));
+            assertEquals(1000L, db.execute("MATCH ()-[n]->() RETURN count(n) AS c").next().get("c"));
+            tx.success();
+        }
+    }
+
+    private static StatementBatch batch(int number) {
+        StatementBatch batch = new StatementBatch();
+        batch.addResource("http://example.org/r" + number);
+        batch.countTriple();
+        return batch;
+    }
+
+    private static void awaitBlocked(Thread thread) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 10000;
+        while (thread.getState() != Thread.State.WAITING && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        assertEquals(Thread.State.WAITING, thread.getState());
+    }
+}
@@ -0,0 +1,49 @@
+package semantics;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class PropertyValuesTest {
+
+    @Test
+    public void keepsASingleValueAsAScalar() {
+        assertEquals("a", PropertyValues.merge(null, "a"));
+        assertEquals("a", PropertyValues.merge("a", "a"));
+        assertEquals(1L, PropertyValues.merge(1L, 1L));
+    }
+
+    @Test
+    public void storesValuesOfOneTypeInATypedArray() {
+        assertArrayEquals(new long[]{1L, 2L}, (long[]) PropertyValues.merge(1L, 2L));
+        assertTrue(Arrays.equals(new boolean[]{true, false}, (boolean[]) PropertyValues.merge(true, false)));
+        assertArrayEquals(new String[]{"a", "b"}, (String[]) PropertyValues.merge("a", "b"));
+    }
+
+    @Test
+    public void widensIntegersMixedWithDecimalsBeforeDroppingDuplicates() {
+        assertEquals(1.0, PropertyValues.merge(1L, 1.0));
+        assertArrayEquals(new double[]{1.0, 2.5}, (double[]) PropertyValues.merge(new double[]{1.0, 2.5}, 1L), 0);
+        assertArrayEquals(new double[]{1.0, 2.5}, (double[]) PropertyValues.merge(1L, new double[]{1.0, 2.5}), 0);
+    }
+
+    @Test
+    public void convertsMixedTypesToStringsBeforeDroppingDuplicates() {
+        assertArrayEquals(new String[]{"1", "a"}, (String[]) PropertyValues.merge(new String[]{"1", "a"}, 1L));
+        assertArrayEquals(new String[]{"true", "1"}, (String[]) PropertyValues.merge(true, 1L));
+    }
+
+    @Test
+    public void removesAValueAllowingForWidening() {
+        assertEquals(2.5, PropertyValues.remove(new double[]{1.0, 2.5}, 1L));
+        assertEquals("a", PropertyValues.remove(new String[]{"1", "a"}, 1L));
+        assertArrayEquals(new long[]{1L, 3L}, (long[]) PropertyValues.remove(new long[]{1L, 2L, 3L}, 2L));
+        assertNull(PropertyValues.remove("a", "a"));
+        assertNull(PropertyValues.remove(null, "a"));
+    }
+}
@@ -0,0 +1,243 @@
+package semantics;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.neo4j.graphdb.Direction;
+import org.neo4j.graphdb.GraphDatabaseService;
+import org.neo4j.graphdb.Label;
+import org.neo4j.graphdb.Node;
+import org.neo4j.graphdb.Relationship;
+import org.neo4j.graphdb.Transaction;
+import org.neo4j.kernel.impl.proc.Procedures;
+import org.neo4j.kernel.internal.GraphDatabaseAPI;
+import org.neo4j.test.TestGraphDatabaseFactory;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class RDFDeltaTest {
+
+    private static final String BASE = "" +
+            "<http://example.org/a> <http://example.org/name> \"A\" .\n" +
+            "<http://example.org/a> <http://example.org/tag> \"x\" .\n" +
+            "<http://example.org/a> <http://example.org/tag> \"y\" .\n" +
+            "<http://example.org/a> <http://www.w3.org/1999/02/22-rdf-syntax-ns#type> <http://example.org/Person> .\n" +
+            "<http://example.org/a> <http://example.org/knows> <http://example.org/b> .\n" +
+            "<http://example.org/a> <http://example.org/owns> _:car .\n" +
+            "_:car <http://example.org/name> \"Car\" .\n" +
+            "<http://example.org/b> <http://example.org/name> \"B\" .\n";
+
+    // the base with the changes of the deltas below
+    private static final String EXPECTED = "" +
+            "<http://example.org/a> <http://example.org/name> \"A\" .\n" +
+            "<http://example.org/a> <http://example.org/tag> \"y\" .\n" +
+            "<http://example.org/a> <http://www.w3.org/1999/02/22-rdf-syntax-ns#type> <http://example.org/Employee> .\n" +
+            "<http://example.org/a> <http://example.org/knows> <http://example.org/c> .\n" +
+            "<http://example.org/a> <http://example.org/owns> _:car .\n" +
+            "_:car <http://example.org/name> \"Car\" .\n" +
+            "<http://example.org/c> <http://example.org/name> \"C\" .\n";
+
+    private static final String DELETIONS = "" +
+            "<http://example.org/a> <http://example.org/tag> \"x\" .\n" +
+            "<http://example.org/a> <http://www.w3.org/1999/02/22-rdf-syntax-ns#type> <http://example.org/Person> .\n" +
+            "<http://example.org/a> <http://example.org/knows> <http://example.org/b> .\n" +
+            "<http://example.org/b> <http://example.org/name> \"B\" .\n";
+
+    private static final String ADDITIONS = "" +
+            "<http://example.org/a> <http://www.w3.org/1999/02/22-rdf-syntax-ns#type> <http://example.org/Employee> .\n" +
+            "<http://example.org/a> <http://example.org/knows> <http://example.org/c> .\n" +
+            "<http://example.org/c> <http://example.org/name> \"C\" .\n";
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private GraphDatabaseService db;
+
+    @Before
+    public void startDatabase() throws Exception {
+        db = new TestGraphDatabaseFactory().newImpermanentDatabase();
+        ((GraphDatabaseAPI) db).getDependencyResolver().resolveDependency(Procedures.class)
+                .registerProcedure(RDFImport.class);
+        db.execute("CREATE INDEX ON :Resource(uri)").close();
+        try (Transaction tx = db.beginTx()) {
+            db.schema().awaitIndexesOnline(1, TimeUnit.MINUTES);
+            tx.success();
+        }
+    }
+
+    @After
+    public void stopDatabase() {
+        db.shutdown();
+    }
+
+    @Test
+    public void appliesAPatchLikeAReloadOfTheChangedDocument() throws Exception {
+        String patch = "H id <uuid:1> .\nTX .\n" + rows("D", DELETIONS) + rows("A", ADDITIONS) +
+                // added then deleted in the same patch, the deletion wins
+                "A <http://example.org/a> <http://example.org/age> \"42\" .\n" +
+                "D <http://example.org/a> <http://example.org/age> \"42\" .\nTC .\n";
+        importRDF(BASE);
+        Map<String, Object> results = call("CALL semantics.importRDFPatch('" + file(patch) + "', true, true, 2)");
+        assertEquals(results.toString(), "OK", results.get("terminationStatus"));
+        assertEquals(9L, results.get("triplesLoaded"));
+        String patched = graph(db);
+        assertEquals(reloaded(EXPECTED), patched);
+    }
+
+    @Test
+    public void expandsThePrefixedNamesOfAPatch() throws Exception {
+        String patch = "PA ex: <http://example.org/> .\n" +
+                "PA rdf <http://www.w3.org/1999/02/22-rdf-syntax-ns#> .\n" +
+                "D ex:a ex:tag \"x\" .\n" +
+                "D ex:a rdf:type ex:Person .\n" +
+                "D ex:a ex:knows ex:b .\n" +
+                "D <http://example.org/b> ex:name \"B\"^^<http://www.w3.org/2001/XMLSchema#string> .\n" +
+                "A ex:a rdf:type ex:Employee.\n" +
+                "A ex:a ex:knows <http://example.org/c> .\n" +
+                "A ex:c ex:name \"C\" .\n";
+        importRDF(BASE);
+        Map<String, Object> results = call("CALL semantics.importRDFPatch('" + file(patch) + "', true, true, 2)");
+        assertEquals(results.toString(), "OK", results.get("terminationStatus"));
+        String patched = graph(db);
+        assertEquals(reloaded(EXPECTED), patched);
+    }
+
+    @Test
+    public void refusesPrefixedNamesOfUndeclaredPrefixes() throws Exception {
+        importRDF(BASE);
+        String patch = "PA ex: <http://example.org/> .\nPD ex: .\nD ex:a ex:tag \"x\" .\n";
+        Map<String, Object> results = call("CALL semantics.importRDFPatch('" + file(patch) + "', true, true, 2)");
+        assertEquals("KO", results.get("terminationStatus"));
+        assertTrue(String.valueOf(results.get("extraInfo")),
+                String.valueOf(results.get("extraInfo")).contains("Undeclared prefix 'ex'"));
+        String patched = graph(db);
+        assertEquals(reloaded(BASE), patched);
+    }
+
+    @Test
+    public void appliesDeletionsThenAdditions() throws Exception {
+        importRDF(BASE);
+        Map<String, Object> results = call("CALL semantics.importRDFDelta('" + file(DELETIONS) + "', '" +
+                file(ADDITIONS) + "', 'N-Triples', true, true, 2)");
+        assertEquals(results.toString(), "OK", results.get("terminationStatus"));
+        String patched = graph(db);
+        assertEquals(reloaded(EXPECTED), patched);
+    }
+
+    @Test
+    public void ignoresDeletionsOfStatementsNotInTheGraph() throws Exception {
+        importRDF(BASE);
+        String missing = "<http://example.org/z> <http://example.org/name> \"Z\" .\n" +
+                "<http://example.org/a> <http://example.org/tag> \"z\" .\n" +
+                "<http://example.org/a> <http://example.org/knows> <http://example.org/z> .\n";
+        Map<String, Object> results = call("CALL semantics.importRDFDelta('" + file(missing) + "', null, " +
+                "'N-Triples', true, true, 2)");
+        assertEquals(results.toString(), "OK", results.get("terminationStatus"));
+        String patched = graph(db);
+        assertEquals(reloaded(BASE), patched);
+    }
+
+    @Test
+    public void refusesAbortedPatchTransactions() throws Exception {
+        importRDF(BASE);
+        Map<String, Object> results = call("CALL semantics.importRDFPatch('" +
+                file("TX .\n" + rows("D", DELETIONS) + "TA .\n") + "', true, true, 100)");
+        assertEquals("KO", results.get("terminationStatus"));
+        String patched = graph(db);
+        assertEquals(reloaded(BASE), patched);
+    }
+
+    /**
+     * @return the graph of the document imported on its own, replacing the graph in the database
+     */
+    private String reloaded(String document) throws Exception {
+        db.execute("MATCH (n) DETACH DELETE n").close();
+        importRDF(document);
+        return graph(db);
+    }
+
+    private void importRDF(String document) throws Exception {
+        Map<String, Object> results = call("CALL semantics.importRDF('" + file(document) +
+                "', 'N-Triples', true, true, 100)");
+        assertEquals(results.toString(), "OK", results.get("terminationStatus"));
+    }
+
+    /**
+     * @return the resources, sorted, with their labels, properties and relationships, blank nodes by their
+     * properties as their ids change from an import to the next
+     */
+    static String graph(GraphDatabaseService db) {
+        List<String> resources = new ArrayList<>();
+        try (Transaction tx = db.beginTx()) {
+            for (Node node : db.getAllNodes()) {
+                if (node.hasLabel(Label.label("NamespacePrefixDefinition"))) {
+                    continue;
+                }
+                List<String> labels = new ArrayList<>();
+                node.getLabels().forEach(label -> labels.add(label.name()));
+                Collections.sort(labels);
+                List<String> rels = new ArrayList<>();
+                for (Relationship rel : node.getRelationships(Direction.OUTGOING)) {
+                    rels.add(rel.getType().name() + "->" + name(rel.getEndNode()));
+                }
+                Collections.sort(rels);
+                resources.add(name(node) + " " + labels + " " + rels);
+            }
+            tx.success();
+        }
+        Collections.sort(resources);
+        return String.join("\n", resources);
+    }
+
+    private static String name(Node node) {
+        String uri = (String) node.getProperty("uri", "");
+        if (uri.startsWith("http://example.org/")) {
+            return uri + properties(node);
+        }
+        return "_:" + properties(node);
+    }
+
+    private static Map<String, String> properties(Node node) {
+        Map<String, String> properties = new TreeMap<>();
+        for (Map.Entry<String, Object> property : node.getAllProperties().entrySet()) {
+            if (!property.getKey().equals("uri")) {
+                Object value = property.getValue();
+                properties.put(property.getKey(), value instanceof Object[] ?
+                        Arrays.toString((Object[]) value) : String.valueOf(value));
+            }
+        }
+        return properties;
+    }
+
+    private Map<String, Object> call(String cypher) {
+        return db.execute(cypher).next();
+    }
+
+    private String file(String contents) throws Exception {
+        File file = folder.newFile();
+        Files.write(file.toPath(), contents.getBytes(StandardCharsets.UTF_8));
+        return file.toURI().toString();
+    }
+
+    private static String rows(String code, String statements) {
+        StringBuilder rows = new StringBuilder();
+        for (String statement : statements.split("\n")) {
+            rows.append(code).append(' ').append(statement).append('\n');
+        }
+        return rows.toString();
+    }
+}
@@ -0,0 +1,123 @@
+package semantics;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.neo4j.graphdb.GraphDatabaseService;
+import org.neo4j.graphdb.Transaction;
+import org.neo4j.graphdb.event.TransactionData;
+import org.neo4j.graphdb.event.TransactionEventHandler;
+import org.neo4j.kernel.impl.proc.Procedures;
+import org.neo4j.kernel.internal.GraphDatabaseAPI;
+import org.neo4j.test.TestGraphDatabaseFactory;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Map;
+import java.util.concurrent.CyclicBarrier;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+
+public class ShardedImportTest {
+
+    private static final int RESOURCES = 2000;
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private GraphDatabaseService db;
+
+    @Before
+    public void startDatabase() throws Exception {
+        db = new TestGraphDatabaseFactory().newImpermanentDatabase();
+        ((GraphDatabaseAPI) db).getDependencyResolver().resolveDependency(Procedures.class)
+                .registerProcedure(RDFImport.class);
+        db.execute("CREATE INDEX ON :Resource(uri)").close();
+        try (Transaction tx = db.beginTx()) {
+            db.schema().awaitIndexesOnline(1, TimeUnit.MINUTES);
+            tx.success();
+        }
+    }
+
+    @After
+    public void stopDatabase() {
+        db.shutdown();
+    }
+
+    /**
+     * Each shard is one batch of thousands of resources, whose transaction waits at commit for the transaction of
+     * the other shard: the barrier only trips when both are written at the same time.
+     */
+    @Test
+    public void commitsTheShardsInParallel() throws Exception {
+        File directory = folder.newFolder();
+        writeShard(new File(directory, "a.nt"), "a", 0);
+        writeShard(new File(directory, "b.nt"), "b", 0);
+        CyclicBarrier bothWriting = new CyclicBarrier(2);
+        AtomicInteger parallelCommits = new AtomicInteger();
+        TransactionEventHandler<Object> barrier = new TransactionEventHandler.Adapter<Object>() {
+            @Override
+            public Object beforeCommit(TransactionData data) throws Exception {
+                if (data.createdRelationships().iterator().hasNext()) {
+                    bothWriting.await(20, TimeUnit.SECONDS);
+                    parallelCommits.incrementAndGet();
+                }
+                return null;
+            }
+        };
+        db.registerTransactionEventHandler(barrier);
+        try {
+            importDirectory(directory, 100000);
+        } finally {
+            db.unregisterTransactionEventHandler(barrier);
+        }
+        assertEquals(2, parallelCommits.get());
+        assertEquals(2L * RESOURCES, count("MATCH (n:Resource) RETURN count(n) AS c"));
+        assertEquals(2L * (RESOURCES - 1), count("MATCH (:Resource)-[r]->(:Resource) RETURN count(r) AS c"));
+    }
+
+    @Test
+    public void createsTheResourcesTheShardsShareOnce() throws Exception {
+        File directory = folder.newFolder();
+        for (int shard = 0; shard < 8; shard++) {
+            // every shard links its own resources to the resources of the shard before it, in batches of 100
+            writeShard(new File(directory, shard + ".nt"), "shared", shard * RESOURCES / 8);
+        }
+        importDirectory(directory, 100);
+        assertEquals((long) RESOURCES + RESOURCES * 7 / 8, count("MATCH (n:Resource) RETURN count(n) AS c"));
+        assertEquals(0L, count("MATCH (n:Resource) WITH n.uri AS uri, count(*) AS nodes WHERE nodes > 1 " +
+                "RETURN count(uri) AS c"));
+    }
+
+    private void importDirectory(File directory, long commitSize) {
+        db.execute("CALL semantics.importRDFDirectory('" + directory.getAbsolutePath() + "', '*.nt', 'N-Triples', " +
+                "4, true, true, " + commitSize + ")").forEachRemaining(results ->
+                assertEquals(results.toString(), "OK", results.get("terminationStatus")));
+    }
+
+    /**
+     * A chain of resources, each typed and linked to the next.
+     */
+    private static void writeShard(File file, String name, int first) throws Exception {
+        StringBuilder statements = new StringBuilder();
+        for (int i = first; i < first + RESOURCES; i++) {
+            String subject = "<http://example.org/" + name + "/r" + i + ">";
+            statements.append(subject).append(" <http://www.w3.org/1999/02/22-rdf-syntax-ns#type> ")
+                    .append("<http://example.org/Thing> .\n");
+            if (i + 1 < first + RESOURCES) {
+                statements.append(subject).append(" <http://example.org/next> <http://example.org/").append(name)
+                        .append("/r").append(i + 1).append("> .\n");
+            }
+        }
+        Files.write(file.toPath(), statements.toString().getBytes(StandardCharsets.UTF_8));
+    }
+
+    private long count(String query) {
+        return (Long) db.execute(query).next().get("c");
+    }
+}
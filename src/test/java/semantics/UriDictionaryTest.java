@@ -0,0 +1,57 @@
+package semantics;
+
+import org.junit.Test;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+public class UriDictionaryTest {
+
+    @Test
+    public void mapsUrisToNodeIds() {
+        UriDictionary dictionary = new UriDictionary();
+        Map<String, Long> expected = new HashMap<>();
+        for (long i = 0; i < 200000; i++) {
+            String uri = "http://example.org/resource/" + i + (i % 3 == 0 ? "/\u00e9" : "");
+            dictionary.put(uri, i * 7);
+            expected.put(uri, i * 7);
+        }
+        // "Aa" and "BB" have the same String hash code
+        dictionary.put("http://example.org/Aa", 1L);
+        dictionary.put("http://example.org/BB", 2L);
+        expected.put("http://example.org/Aa", 1L);
+        expected.put("http://example.org/BB", 2L);
+
+        assertEquals(expected.size(), dictionary.size());
+        expected.forEach((uri, id) -> assertEquals(id, dictionary.get(uri)));
+        assertNull(dictionary.get("http://example.org/resource/200000"));
+        assertNull(dictionary.get(""));
+    }
+
+    @Test
+    public void replacesTheIdOfAUriAlreadyThere() {
+        UriDictionary dictionary = new UriDictionary();
+        dictionary.put("http://example.org/a", 1L);
+        dictionary.put("http://example.org/a", 2L);
+        assertEquals(1, dictionary.size());
+        assertEquals(Long.valueOf(2L), dictionary.get("http://example.org/a"));
+    }
+
+    @Test
+    public void storesUrisLongerThanAPage() {
+        UriDictionary dictionary = new UriDictionary();
+        StringBuilder longUri = new StringBuilder("http://example.org/");
+        for (int i = 0; i < (1 << 20); i++) {
+            longUri.append('x');
+        }
+        dictionary.put("http://example.org/a", 1L);
+        dictionary.put(longUri.toString(), 2L);
+        dictionary.put("http://example.org/b", 3L);
+        assertEquals(Long.valueOf(1L), dictionary.get("http://example.org/a"));
+        assertEquals(Long.valueOf(2L), dictionary.get(longUri.toString()));
+        assertEquals(Long.valueOf(3L), dictionary.get("http://example.org/b"));
+    }
+}
@@ -0,0 +1,47 @@
+package semantics;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class UriNodeCacheTest {
+
+    @Test
+    public void evictsTheLeastRecentlyUsedUri() {
+        UriNodeCache cache = new UriNodeCache(1);
+        cache.put("http://example.org/a", 1);
+        assertEquals(Long.valueOf(1), cache.get("http://example.org/a"));
+        cache.put("http://example.org/b", 2);
+        assertNull(cache.get("http://example.org/a"));
+        assertEquals(Long.valueOf(2), cache.get("http://example.org/b"));
+        assertEquals(2, cache.getHits());
+        assertEquals(1, cache.getMisses());
+    }
+
+    @Test
+    public void keepsAtMostItsSizeAcrossSegments() {
+        UriNodeCache cache = new UriNodeCache(100);
+        for (int i = 0; i < 1000; i++) {
+            cache.put("http://example.org/r" + i, i);
+        }
+        int cached = 0;
+        for (int i = 0; i < 1000; i++) {
+            if (cache.get("http://example.org/r" + i) != null) {
+                cached++;
+            }
+        }
+        assertTrue(String.valueOf(cached), cached > 0 && cached <= 100);
+    }
+
+    @Test
+    public void cachesNothingWhenDisabled() {
+        UriNodeCache cache = new UriNodeCache(0);
+        cache.put("http://example.org/a", 1);
+        assertFalse(cache.isEnabled());
+        assertNull(cache.get("http://example.org/a"));
+        assertEquals(0, cache.getMisses());
+    }
+}
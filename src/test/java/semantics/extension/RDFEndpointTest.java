@@ -0,0 +1,123 @@
+package semantics.extension;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.neo4j.graphdb.GraphDatabaseService;
+import org.neo4j.graphdb.Transaction;
+import org.neo4j.harness.ServerControls;
+import org.neo4j.harness.TestServerBuilders;
+import org.neo4j.kernel.impl.proc.Procedures;
+import org.neo4j.kernel.internal.GraphDatabaseAPI;
+import org.openrdf.model.IRI;
+import org.openrdf.model.Model;
+import org.openrdf.model.Statement;
+import org.openrdf.model.ValueFactory;
+import org.openrdf.model.impl.SimpleValueFactory;
+import org.openrdf.model.vocabulary.RDF;
+import org.openrdf.rio.RDFFormat;
+import org.openrdf.rio.Rio;
+import semantics.RDFImport;
+
+import java.io.File;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.URLEncoder;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class RDFEndpointTest {
+
+    private static final String QUADS = "" +
+            "<http://example.org/a> <http://example.org/name> \"A1\" <http://example.org/g1> .\n" +
+            "<http://example.org/a> <http://example.org/name> \"A2\" <http://example.org/g2> .\n" +
+            "<http://example.org/a> <http://www.w3.org/1999/02/22-rdf-syntax-ns#type> <http://example.org/Thing> " +
+            "<http://example.org/g2> .\n" +
+            "<http://example.org/a> <http://example.org/knows> <http://example.org/b> <http://example.org/g1> .\n";
+
+    private static final ValueFactory VALUES = SimpleValueFactory.getInstance();
+    private static final IRI A = VALUES.createIRI("http://example.org/a");
+    private static final IRI NAME = VALUES.createIRI("http://example.org/name");
+    private static final IRI G1 = VALUES.createIRI("http://example.org/g1");
+    private static final IRI G2 = VALUES.createIRI("http://example.org/g2");
+
+    private ServerControls server;
+    private GraphDatabaseService db;
+
+    @Before
+    public void startServer() throws Exception {
+        server = TestServerBuilders.newInProcessBuilder()
+                .withExtension("/rdf", RDFEndpoint.class)
+                .newServer();
+        db = server.graph();
+        ((GraphDatabaseAPI) db).getDependencyResolver().resolveDependency(Procedures.class)
+                .registerProcedure(RDFImport.class);
+        db.execute("CREATE INDEX ON :Resource(uri)").close();
+        try (Transaction tx = db.beginTx()) {
+            db.schema().awaitIndexesOnline(1, TimeUnit.MINUTES);
+            tx.success();
+        }
+        File document = File.createTempFile("quads", ".nq");
+        document.deleteOnExit();
+        Files.write(document.toPath(), QUADS.getBytes(StandardCharsets.UTF_8));
+        db.execute("CALL semantics.importRDF('" + document.toURI() + "', 'N-Quads', true, true, 100, " +
+                "{namedGraphs: true})").resultAsString();
+    }
+
+    @After
+    public void stopServer() {
+        server.close();
+    }
+
+    @Test
+    public void exportsEachNamedGraphAsTheContextOfItsStatements() throws Exception {
+        Model model = cypherOnImportedRDF("MATCH (n:Resource {uri: 'http://example.org/a'}) " +
+                "OPTIONAL MATCH (n)-[r]->() RETURN n, r");
+        assertExportsBothGraphs(model);
+        assertTrue(model.contains(A, VALUES.createIRI("http://example.org/knows"),
+                VALUES.createIRI("http://example.org/b"), G1));
+    }
+
+    @Test
+    public void describesTheNodeOfTheUriInEachNamedGraph() throws Exception {
+        HttpURLConnection connection = (HttpURLConnection) server.httpURI()
+                .resolve("rdf/describe/uri?nodeuri=" + URLEncoder.encode(A.stringValue(), "UTF-8")).toURL()
+                .openConnection();
+        connection.setRequestProperty("Accept", "application/x-trig");
+        try (InputStream response = connection.getInputStream()) {
+            assertExportsBothGraphs(Rio.parse(response, "", RDFFormat.TRIG));
+        }
+    }
+
+    private static void assertExportsBothGraphs(Model model) {
+        assertTrue(model.toString(), model.contains(A, NAME, VALUES.createLiteral("A1"), G1));
+        assertTrue(model.toString(), model.contains(A, NAME, VALUES.createLiteral("A2"), G2));
+        assertTrue(model.toString(), model.contains(A, RDF.TYPE, VALUES.createIRI("http://example.org/Thing"), G2));
+        assertFalse(model.toString(), model.contains(null, null, null, (IRI) null));
+        for (Statement statement : model) {
+            assertFalse(statement.toString(), statement.getPredicate().stringValue().endsWith("graph"));
+            assertFalse(statement.toString(), statement.getObject().stringValue().contains("Graph_"));
+        }
+        assertEquals(model.toString(), 1, model.filter(A, RDF.TYPE, null).size());
+    }
+
+    private Model cypherOnImportedRDF(String query) throws Exception {
+        HttpURLConnection connection = (HttpURLConnection) server.httpURI().resolve("rdf/cypheronrdf").toURL()
+                .openConnection();
+        connection.setRequestMethod("POST");
+        connection.setRequestProperty("Accept", "application/x-trig");
+        connection.setDoOutput(true);
+        try (OutputStream body = connection.getOutputStream()) {
+            body.write(query.getBytes(StandardCharsets.UTF_8));
+        }
+        try (InputStream response = connection.getInputStream()) {
+            return Rio.parse(response, "", RDFFormat.TRIG);
+        }
+    }
+}
@@ -0,0 +1,83 @@
+package semantics.extension;
+
+import org.codehaus.jackson.JsonNode;
+import org.codehaus.jackson.map.ObjectMapper;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.neo4j.graphdb.GraphDatabaseService;
+import org.neo4j.harness.ServerControls;
+import org.neo4j.harness.TestServerBuilders;
+import org.neo4j.kernel.impl.proc.Procedures;
+import org.neo4j.kernel.internal.GraphDatabaseAPI;
+import semantics.LiteOntologyImporter;
+
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Set;
+
+import static org.junit.Assert.assertEquals;
+
+public class SemanticsSCOExpansionEndpointTest {
+
+    private ServerControls server;
+    private GraphDatabaseService db;
+
+    @Before
+    public void startServer() throws Exception {
+        server = TestServerBuilders.newInProcessBuilder()
+                .withExtension("/rdf", SemanticsSCOExpansionEndpoint.class)
+                .newServer();
+        db = server.graph();
+        ((GraphDatabaseAPI) db).getDependencyResolver().resolveDependency(Procedures.class)
+                .registerProcedure(LiteOntologyImporter.class);
+        db.execute("CREATE (animal:Category {catName: 'Animal'}), (mammal:Category {catName: 'Mammal'}), " +
+                "(dog:Category {catName: 'Dog'}), (mammal)-[:SCO]->(animal), (dog)-[:SCO]->(mammal), " +
+                "(:Animal {name: 'a'}), (:Mammal {name: 'm'}), (:Dog {name: 'd'}), (:Cat {name: 'c'})").close();
+    }
+
+    @After
+    public void stopServer() {
+        server.close();
+    }
+
+    @Test
+    public void expandsWithTheIndexUntilTheHierarchyChanges() throws Exception {
+        assertEquals(names("a", "m", "d"), animals());
+        db.execute("CALL semantics.indexHierarchy('Category', 'SCO')").close();
+        assertEquals(names("a", "m", "d"), animals());
+
+        db.execute("MATCH (mammal:Category {catName: 'Mammal'}) " +
+                "CREATE (:Category {catName: 'Cat'})-[:SCO]->(mammal)").close();
+        assertEquals(names("a", "m", "d", "c"), animals());
+        db.execute("CALL semantics.indexHierarchy('Category', 'SCO')").close();
+        assertEquals(names("a", "m", "d", "c"), animals());
+    }
+
+    private Set<String> animals() throws Exception {
+        HttpURLConnection connection = (HttpURLConnection) server.httpURI().resolve("rdf/semanticypher").toURL()
+                .openConnection();
+        connection.setRequestMethod("POST");
+        connection.setDoOutput(true);
+        try (OutputStream body = connection.getOutputStream()) {
+            body.write("MATCH (n:Animal) RETURN n.name AS name".getBytes(StandardCharsets.UTF_8));
+        }
+        Set<String> names = new HashSet<>();
+        try (InputStream response = connection.getInputStream()) {
+            JsonNode json = new ObjectMapper().readTree(response);
+            assertEquals(json.toString(), 0, json.get("errors").size());
+            for (JsonNode row : json.get("results").get(0).get("data")) {
+                names.add(row.get("row").get(0).getTextValue());
+            }
+        }
+        return names;
+    }
+
+    private static Set<String> names(String... names) {
+        return new HashSet<>(Arrays.asList(names));
+    }
+}